@@ -7,7 +7,7 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 
-@FeignClient(name = "emotion-service", url = "http://localhost:1239")
+@FeignClient(name = "emotion-service", url = "${services.emotion.url:http://localhost:1239}")
 public interface EmotionServiceClient {
     @PostMapping("/api/v1/emotions/analyze")
     EmotionAnalysisResponse analyze(@RequestBody EmotionAnalysisRequest request);
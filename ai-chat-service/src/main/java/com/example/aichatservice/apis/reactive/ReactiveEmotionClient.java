@@ -0,0 +1,31 @@
+package com.example.aichatservice.apis.reactive;
+
+import com.example.aichatservice.dto.EmotionAnalysisResponse;
+import com.example.aichatservice.resilience.ReactiveResilience;
+import com.example.dto.AI.EmotionAnalysisRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * emotion-analysis-service 的非阻塞客户端，对应 {@link com.example.aichatservice.apis.EmotionServiceClient}。
+ */
+public class ReactiveEmotionClient {
+
+    public static final String NAME = "emotion-service";
+
+    private final WebClient webClient;
+    private final ReactiveResilience resilience;
+
+    public ReactiveEmotionClient(WebClient webClient, ReactiveResilience resilience) {
+        this.webClient = webClient;
+        this.resilience = resilience;
+    }
+
+    public Mono<EmotionAnalysisResponse> analyze(EmotionAnalysisRequest request) {
+        return resilience.guard(NAME, webClient.post()
+                .uri("/api/v1/emotions/analyze")
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(EmotionAnalysisResponse.class));
+    }
+}
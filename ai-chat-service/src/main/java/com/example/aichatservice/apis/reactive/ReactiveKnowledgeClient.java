@@ -0,0 +1,38 @@
+package com.example.aichatservice.apis.reactive;
+
+import com.example.aichatservice.resilience.ReactiveResilience;
+import com.example.dto.AI.KnowledgeSearchRequest;
+import com.example.dto.AI.KnowledgeSearchResult;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * knowledge-service 的非阻塞客户端，对应 {@link com.example.apis.KnowledgeServiceClient}。
+ */
+public class ReactiveKnowledgeClient {
+
+    public static final String NAME = "knowledge-service";
+
+    private static final ParameterizedTypeReference<List<KnowledgeSearchResult>> RESULT_LIST = new ParameterizedTypeReference<>() {
+    };
+
+    private final WebClient webClient;
+    private final ReactiveResilience resilience;
+
+    public ReactiveKnowledgeClient(WebClient webClient, ReactiveResilience resilience) {
+        this.webClient = webClient;
+        this.resilience = resilience;
+    }
+
+    public Mono<List<KnowledgeSearchResult>> searchKnowledge(Long kbId, KnowledgeSearchRequest request, String userId) {
+        return resilience.guard(NAME, webClient.post()
+                .uri("/api/v1/knowledge-bases/{kbId}/search", kbId)
+                .header("X-User-Id", userId)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(RESULT_LIST));
+    }
+}
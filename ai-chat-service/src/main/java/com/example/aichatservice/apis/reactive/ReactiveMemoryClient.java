@@ -0,0 +1,46 @@
+package com.example.aichatservice.apis.reactive;
+
+import com.example.aichatservice.resilience.ReactiveResilience;
+import com.example.dto.AI.InsightResponse;
+import com.example.dto.AI.SearchMemoryRequest;
+import com.example.dto.AI.SearchMemoryResponse;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * memory-service 的非阻塞客户端，接口与 {@link com.example.apis.MemoryServiceClient} 的读接口一一对应。
+ * 记忆写回仍由 {@link com.example.aichatservice.memory.MemoryWriteBehindQueue} 在后台批量完成。
+ */
+public class ReactiveMemoryClient {
+
+    public static final String NAME = "memory-service";
+
+    private static final ParameterizedTypeReference<List<SearchMemoryResponse>> MEMORY_LIST = new ParameterizedTypeReference<>() {
+    };
+
+    private final WebClient webClient;
+    private final ReactiveResilience resilience;
+
+    public ReactiveMemoryClient(WebClient webClient, ReactiveResilience resilience) {
+        this.webClient = webClient;
+        this.resilience = resilience;
+    }
+
+    public Mono<List<SearchMemoryResponse>> searchMemory(String userId, String personaId, SearchMemoryRequest request) {
+        return resilience.guard(NAME, webClient.post()
+                .uri("/api/v1/memory/{userId}/{personaId}/search", userId, personaId)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(MEMORY_LIST));
+    }
+
+    public Mono<InsightResponse> getInsights(String userId, String personaId) {
+        return resilience.guard(NAME, webClient.get()
+                .uri("/api/v1/memory/{userId}/{personaId}/insights", userId, personaId)
+                .retrieve()
+                .bodyToMono(InsightResponse.class));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.aichatservice.apis.reactive;
+
+import com.example.aichatservice.resilience.ReactiveResilience;
+import com.example.dto.AI.BatchVisionAnalysisRequest;
+import com.example.dto.AI.BatchVisionAnalysisResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * vision-analysis-service 的非阻塞客户端，对应 {@link com.example.apis.VisionServiceClient#analyzeBatch}。
+ */
+public class ReactiveVisionClient {
+
+    public static final String NAME = "vision-service";
+
+    private final WebClient webClient;
+    private final ReactiveResilience resilience;
+
+    public ReactiveVisionClient(WebClient webClient, ReactiveResilience resilience) {
+        this.webClient = webClient;
+        this.resilience = resilience;
+    }
+
+    public Mono<BatchVisionAnalysisResponse> analyzeBatch(BatchVisionAnalysisRequest request) {
+        return resilience.guard(NAME, webClient.post()
+                .uri("/api/v1/vision/analyze/batch")
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(BatchVisionAnalysisResponse.class));
+    }
+}
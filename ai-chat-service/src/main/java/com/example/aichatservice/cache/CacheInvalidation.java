@@ -0,0 +1,41 @@
+package com.example.aichatservice.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * 缓存失效事件。
+ * 某个实例修改了人设或用户设置后写入一条记录，其它实例定时拉取并淘汰各自的本地缓存。
+ * 记录本身只需要短暂保留，过期由 createdAt 上的 TTL 索引负责清理。
+ */
+@Document(collection = "cache_invalidations")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidation {
+
+    @Id
+    private String id;
+
+    /**
+     * 缓存名称，见 {@link PersonaCacheConfig}。
+     */
+    private String cacheName;
+
+    /**
+     * 需要淘汰的缓存 key。
+     */
+    private String cacheKey;
+
+    /**
+     * 发出该事件的实例ID，实例会跳过自己发出的事件。
+     */
+    private String origin;
+
+    private Instant createdAt;
+}
@@ -0,0 +1,28 @@
+package com.example.aichatservice.cache;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 人设与用户设置的进程内缓存配置。
+ * <p>
+ * 缓存本身由 Spring Boot 根据 {@code spring.cache.caffeine.spec} 自动创建（容量上限 + TTL + recordStats），
+ * 命中/未命中/淘汰指标会自动注册到 actuator 的 {@code cache.*} 指标下。
+ * 定时任务用于拉取其它实例广播的失效事件，见 {@link PersonaCacheInvalidator}。
+ */
+@Configuration
+@EnableCaching
+@EnableScheduling
+public class PersonaCacheConfig {
+
+    /**
+     * 人设缓存，key 为人设ID。
+     */
+    public static final String PERSONAS = "personas";
+
+    /**
+     * 用户默认人设缓存，key 为用户ID。
+     */
+    public static final String USER_DEFAULT_PERSONA = "userDefaultPersona";
+}
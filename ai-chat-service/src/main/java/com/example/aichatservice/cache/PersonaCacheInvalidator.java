@@ -0,0 +1,113 @@
+package com.example.aichatservice.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 人设缓存失效器。
+ * <p>
+ * 写操作完成后调用本类淘汰本地缓存，并向 {@code cache_invalidations} 集合写入失效事件；
+ * 每个实例定时拉取其它实例发出的事件并淘汰对应的本地缓存，从而在多实例部署下保持读取正确。
+ * 拉取时会回看一小段时间窗口以容忍实例间的时钟偏差，重复淘汰是幂等的。
+ * 人设缓存被淘汰时还会在本实例内发布 {@link PersonaChangedEvent}。
+ */
+@Slf4j
+@Component
+public class PersonaCacheInvalidator {
+
+    private final CacheManager cacheManager;
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration retention;
+    private final Duration clockSkew;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private volatile Instant lastPolledAt = Instant.now();
+
+    public PersonaCacheInvalidator(CacheManager cacheManager,
+                                   MongoTemplate mongoTemplate,
+                                   ApplicationEventPublisher eventPublisher,
+                                   @Value("${companion.cache.invalidation.retention:PT1H}") Duration retention,
+                                   @Value("${companion.cache.invalidation.clock-skew:PT5S}") Duration clockSkew) {
+        this.cacheManager = cacheManager;
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.retention = retention;
+        this.clockSkew = clockSkew;
+    }
+
+    @PostConstruct
+    void ensureTtlIndex() {
+        mongoTemplate.indexOps(CacheInvalidation.class)
+                .ensureIndex(new Index().on("createdAt", Sort.Direction.ASC).expire(retention));
+    }
+
+    /**
+     * 淘汰指定人设的缓存，并通知其它实例。
+     */
+    public void invalidatePersona(String personaId) {
+        invalidate(PersonaCacheConfig.PERSONAS, personaId);
+    }
+
+    /**
+     * 淘汰指定用户默认人设的缓存，并通知其它实例。
+     */
+    public void invalidateUserSettings(String userId) {
+        invalidate(PersonaCacheConfig.USER_DEFAULT_PERSONA, userId);
+    }
+
+    private void invalidate(String cacheName, String key) {
+        evictLocally(cacheName, key);
+        try {
+            mongoTemplate.insert(new CacheInvalidation(null, cacheName, key, instanceId, Instant.now()));
+        } catch (Exception e) {
+            // 广播失败时其它实例最迟在 TTL 到期后读到新值，不影响本次写操作
+            log.warn("【缓存失效】广播失效事件失败 [{}:{}]，其它实例将等待缓存过期", cacheName, key, e);
+        }
+    }
+
+    /**
+     * 定时拉取其它实例发出的失效事件。
+     */
+    @Scheduled(fixedDelayString = "${companion.cache.invalidation.poll-interval-ms:1000}")
+    public void pollRemoteInvalidations() {
+        Instant pollStartedAt = Instant.now();
+        Query query = Query.query(Criteria.where("createdAt").gt(lastPolledAt.minus(clockSkew))
+                        .and("origin").ne(instanceId))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        try {
+            List<CacheInvalidation> events = mongoTemplate.find(query, CacheInvalidation.class);
+            events.forEach(event -> evictLocally(event.getCacheName(), event.getCacheKey()));
+            lastPolledAt = pollStartedAt;
+        } catch (Exception e) {
+            log.warn("【缓存失效】拉取失效事件失败，将在下次轮询时重试", e);
+        }
+    }
+
+    private void evictLocally(String cacheName, String key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(key);
+            log.debug("【缓存失效】已淘汰本地缓存 [{}:{}]", cacheName, key);
+        }
+        if (PersonaCacheConfig.PERSONAS.equals(cacheName)) {
+            eventPublisher.publishEvent(new PersonaChangedEvent(key));
+        }
+    }
+}
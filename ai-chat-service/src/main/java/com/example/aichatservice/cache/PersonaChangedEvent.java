@@ -0,0 +1,10 @@
+package com.example.aichatservice.cache;
+
+/**
+ * 人设发生变更（新建/更新/删除/模型ID变更）时在本实例内发布的事件。
+ * 无论变更来自本实例还是由其它实例广播过来，都会发布一次，依赖人设内容的本地派生数据可以监听它自行失效。
+ *
+ * @param personaId 发生变更的人设ID
+ */
+public record PersonaChangedEvent(String personaId) {
+}
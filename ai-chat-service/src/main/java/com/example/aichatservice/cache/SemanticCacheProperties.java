@@ -0,0 +1,66 @@
+package com.example.aichatservice.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 评论语义缓存配置，前缀 {@code companion.semantic-cache}。默认关闭，需要显式开启。
+ * <pre>
+ * companion:
+ *   semantic-cache:
+ *     enabled: true
+ *     similarity-threshold: 0.92
+ *     max-partitions: 10000      # 人格 × 场景 × 情绪 × 字数限制 × micro_step × 表情策略 的组合数上限
+ *     max-entries-per-partition: 50
+ *     ttl: PT6H
+ *     disabled-personas:         # 按人格关闭
+ *       - 64f0c...
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "companion.semantic-cache")
+public class SemanticCacheProperties {
+
+    /**
+     * 全局开关，默认关闭。
+     */
+    private boolean enabled = false;
+
+    /**
+     * 帖子向量的余弦相似度达到该阈值才视为命中。
+     */
+    private double similarityThreshold = 0.92;
+
+    /**
+     * 分区（人格 × 场景 × 情绪 × 字数限制 × micro_step × 表情策略）数量上限，超出后按 LRU 淘汰整个分区。
+     */
+    private long maxPartitions = 10_000;
+
+    /**
+     * 每个分区保留的评论条数上限，超出后丢弃最早的一条。
+     */
+    private int maxEntriesPerPartition = 50;
+
+    /**
+     * 单条缓存评论的存活时间。
+     */
+    private Duration ttl = Duration.ofHours(6);
+
+    /**
+     * 关闭语义缓存的人格ID。
+     */
+    private Set<String> disabledPersonas = new HashSet<>();
+
+    /**
+     * 判断指定人格是否启用语义缓存。
+     */
+    public boolean isEnabledFor(String personaId) {
+        return enabled && !disabledPersonas.contains(personaId);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.aichatservice.cache;
+
+import com.example.aichatservice.prompt.CommentPromptBuilder;
+import com.example.dto.post.CommentReq;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+/**
+ * 评论语义缓存。
+ * <p>
+ * 信息流中大量帖子高度相似（"今天好累"、"加油"），同一人格面对它们时会反复进行完整的模型生成。
+ * 这里将帖子文本向量化，在「人格 × 场景 × 情绪 × 字数限制 × micro_step × 表情策略」分区内查找相似度超过阈值的历史评论并直接复用，
+ * 分区覆盖了 User Prompt 中除帖子和昵称以外的全部请求参数。
+ * 缓存的评论中用户昵称会被替换为占位符，命中时再换成当前用户的昵称，避免原样照搬。
+ * <p>
+ * 只有不依赖用户个人上下文的请求才会参与缓存：启用记忆的人格、带图片的帖子、
+ * 以及检索到用户长期洞察或记忆的请求都会被跳过，由调用方通过 {@code personalized} 参数告知。
+ * 指定了可引用细节的请求、以及昵称缺失或过短（替换时会误伤评论中的普通词语）的请求同样不参与缓存。
+ */
+@Slf4j
+@Component
+public class SemanticCommentCache {
+
+    private static final String NAME_PLACEHOLDER = "\u0000name\u0000";
+
+    /**
+     * 昵称至少这么长才做占位符替换，更短的昵称很容易是评论中普通词语的一部分。
+     */
+    private static final int MIN_NAME_LENGTH = 2;
+
+    private final EmbeddingModel embeddingModel;
+    private final SemanticCacheProperties properties;
+    private final Cache<String, Deque<Entry>> partitions;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter skipped;
+
+    private record Entry(float[] embedding, String comment, Instant createdAt) {
+    }
+
+    /**
+     * 一次缓存查询的结果。未命中时可以用它把新生成的评论写回缓存，向量不必重新计算。
+     *
+     * @param partition 分区key，为 null 表示本次请求不参与缓存
+     * @param embedding 帖子向量（已归一化），向量化失败时为 null
+     * @param userName  当前用户昵称
+     * @param comment   命中的评论，未命中时为 null
+     */
+    public record Lookup(String partition, float[] embedding, String userName, String comment) {
+
+        public Optional<String> hit() {
+            return Optional.ofNullable(comment);
+        }
+    }
+
+    public SemanticCommentCache(EmbeddingModel embeddingModel, SemanticCacheProperties properties, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.properties = properties;
+        this.partitions = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxPartitions())
+                .expireAfterAccess(properties.getTtl())
+                .build();
+        this.hits = meterRegistry.counter("companion.semantic_cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("companion.semantic_cache.requests", "result", "miss");
+        this.skipped = meterRegistry.counter("companion.semantic_cache.requests", "result", "skipped");
+        meterRegistry.gauge("companion.semantic_cache.partitions", partitions, Cache::estimatedSize);
+    }
+
+    /**
+     * 查找与帖子语义相近的历史评论。
+     *
+     * @param personaId     人格ID
+     * @param memoryEnabled 人格是否启用了记忆
+     * @param personalized  本次请求是否带有用户专属上下文（图片、长期洞察、记忆、对话记录等）
+     * @param scenario      场景
+     * @param emotion       情绪
+     * @param maxLength     字数限制
+     * @param req           评论请求，提供帖子文本、昵称以及进入 User Prompt 的其它参数
+     * @param precomputed   {@link #embed} 的结果，为 null 时在这里计算
+     */
+    public Lookup lookup(String personaId, boolean memoryEnabled, boolean personalized,
+                         String scenario, String emotion, int maxLength, CommentReq req, float[] precomputed) {
+        String post = req.postContent();
+        String userName = req.userName() == null ? null : req.userName().strip();
+        if (personaId == null || !properties.isEnabledFor(personaId)) {
+            return new Lookup(null, null, userName, null);
+        }
+        if (memoryEnabled || personalized || !StringUtils.hasText(post)
+                || StringUtils.hasText(req.specificDetail()) || !isTemplatableName(userName)) {
+            skipped.increment();
+            return new Lookup(null, null, userName, null);
+        }
+
+        String partition = personaId + '|' + scenario + '|' + emotion + '|' + maxLength
+                + '|' + CommentPromptBuilder.nvl(req.microStep(), "") + '|' + CommentPromptBuilder.nvl(req.emojiPolicy(), "");
+        float[] embedding;
+        try {
+            embedding = precomputed != null ? precomputed : normalize(embeddingModel.embed(post));
+        } catch (Exception e) {
+            log.warn("【语义缓存】帖子向量化失败，本次跳过缓存", e);
+            skipped.increment();
+            return new Lookup(null, null, userName, null);
+        }
+
+        Deque<Entry> entries = partitions.getIfPresent(partition);
+        Entry best = null;
+        double bestScore = properties.getSimilarityThreshold();
+        if (entries != null) {
+            Instant oldest = Instant.now().minus(properties.getTtl());
+            synchronized (entries) {
+                entries.removeIf(entry -> entry.createdAt().isBefore(oldest));
+                for (Entry entry : entries) {
+                    double score = dot(embedding, entry.embedding());
+                    if (score >= bestScore) {
+                        best = entry;
+                        bestScore = score;
+                    }
+                }
+            }
+        }
+
+        if (best == null) {
+            misses.increment();
+            return new Lookup(partition, embedding, userName, null);
+        }
+        hits.increment();
+        log.info("【语义缓存】命中分区 '{}'，相似度 {}", partition, String.format("%.3f", bestScore));
+        return new Lookup(partition, embedding, userName, best.comment().replace(NAME_PLACEHOLDER, userName));
+    }
+
+    /**
+     * 提前计算帖子向量，供预取使用。人格未启用缓存、启用了记忆或帖子为空时不会参与缓存，直接返回 null；
+     * 向量化失败也返回 null，查询时会再尝试一次。
+     */
+    public float[] embed(String personaId, boolean memoryEnabled, String post) {
+        if (personaId == null || !properties.isEnabledFor(personaId) || memoryEnabled || !StringUtils.hasText(post)) {
+            return null;
+        }
+        try {
+            return normalize(embeddingModel.embed(post));
+        } catch (Exception e) {
+            log.warn("【语义缓存】预取时帖子向量化失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 将新生成的评论写入缓存。查询时未参与缓存或向量化失败的请求会被忽略。
+     */
+    public void put(Lookup lookup, String comment) {
+        if (lookup.partition() == null || lookup.embedding() == null || !StringUtils.hasText(comment)) {
+            return;
+        }
+        String template = comment.replace(lookup.userName(), NAME_PLACEHOLDER);
+        Deque<Entry> entries = partitions.get(lookup.partition(), key -> new ArrayDeque<>());
+        synchronized (entries) {
+            entries.addLast(new Entry(lookup.embedding(), template, Instant.now()));
+            while (entries.size() > properties.getMaxEntriesPerPartition()) {
+                entries.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * 人设变更后其历史评论不再代表当前风格，丢弃该人格的全部分区。
+     */
+    @EventListener
+    public void onPersonaChanged(PersonaChangedEvent event) {
+        String prefix = event.personaId() + '|';
+        partitions.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * 昵称（已去除首尾空白）能否安全地替换为占位符：缺失时 Prompt 中使用的是默认称呼，过短的昵称则会误伤评论中的普通词语。
+     */
+    private static boolean isTemplatableName(String userName) {
+        return userName != null
+                && userName.length() >= MIN_NAME_LENGTH
+                && !CommentPromptBuilder.DEFAULT_USER_NAME.equals(userName);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
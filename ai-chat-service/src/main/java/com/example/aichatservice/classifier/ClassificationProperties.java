@@ -0,0 +1,58 @@
+package com.example.aichatservice.classifier;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 帖子分类（情绪 + 场景）的模式配置，前缀 {@code companion.classification}。
+ * <pre>
+ * companion:
+ *   classification:
+ *     mode: separate            # 全局默认模式
+ *     persona-modes:            # 按人格覆盖
+ *       64f0c...: joint
+ *     shadow-sample-rate: 0.05  # 抽样对比两种模式的标签一致率
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "companion.classification")
+public class ClassificationProperties {
+
+    public enum Mode {
+        /**
+         * 情绪分析服务 + 场景分类器，两次调用。
+         */
+        SEPARATE,
+        /**
+         * 一次结构化大模型调用同时给出情绪和场景。
+         */
+        JOINT
+    }
+
+    /**
+     * 全局默认的分类模式。
+     */
+    private Mode mode = Mode.SEPARATE;
+
+    /**
+     * 按人格ID覆盖分类模式。
+     */
+    private Map<String, Mode> personaModes = new HashMap<>();
+
+    /**
+     * 抽样比例 [0, 1]：被抽中的请求会在后台再按另一种模式分类一次，用于统计两种模式的标签一致率。
+     */
+    private double shadowSampleRate = 0.0;
+
+    /**
+     * 解析指定人格最终使用的分类模式。
+     */
+    public Mode resolveMode(String personaId) {
+        return personaId == null ? mode : personaModes.getOrDefault(personaId, mode);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.aichatservice.classifier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+/**
+ * 评论流程实际使用的场景分类器：本地模型优先，大模型兜底。
+ * <p>
+ * 本地分类器的置信度达到 {@code companion.scenario.confidence-threshold} 时直接采用其结果，
+ * 否则再调用 {@link LlmScenarioClassifier}。{@code companion.scenario.mode} 可以强制只用其中一种：
+ * <ul>
+ *     <li>{@code hybrid}（默认）：本地优先，低置信度时回退到大模型</li>
+ *     <li>{@code local}：只使用本地模型</li>
+ *     <li>{@code llm}：只使用大模型（即原有行为）</li>
+ * </ul>
+ */
+@Component
+@Primary
+@Slf4j
+public class HybridScenarioClassifier implements ScenarioClassifier {
+
+    private final LocalScenarioClassifier localClassifier;
+    private final LlmScenarioClassifier llmClassifier;
+    private final MeterRegistry meterRegistry;
+    private final String mode;
+    private final double confidenceThreshold;
+
+    public HybridScenarioClassifier(LocalScenarioClassifier localClassifier,
+                                    LlmScenarioClassifier llmClassifier,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${companion.scenario.mode:hybrid}") String mode,
+                                    @Value("${companion.scenario.confidence-threshold:0.6}") double confidenceThreshold) {
+        this.localClassifier = localClassifier;
+        this.llmClassifier = llmClassifier;
+        this.meterRegistry = meterRegistry;
+        this.mode = mode;
+        this.confidenceThreshold = confidenceThreshold;
+        log.info("【场景分类】分类模式: {}, 本地模型置信度阈值: {}", mode, confidenceThreshold);
+    }
+
+    @Override
+    public ScenarioPrediction classify(String postContent, String imageDescription, String emotion) {
+        ScenarioPrediction prediction;
+        if ("llm".equalsIgnoreCase(mode)) {
+            prediction = llmClassifier.classify(postContent, imageDescription, emotion);
+        } else {
+            prediction = localClassifier.classify(postContent, imageDescription, emotion);
+            if (!"local".equalsIgnoreCase(mode) && prediction.confidence() < confidenceThreshold) {
+                log.info("【场景分类】本地模型置信度 {} 低于阈值 {}（预测: {}），回退到大模型。",
+                        String.format("%.2f", prediction.confidence()), confidenceThreshold, prediction.scenario());
+                prediction = llmClassifier.classify(postContent, imageDescription, emotion);
+            } else {
+                log.info("【场景分类】本地模型判定场景: {}, 置信度: {}", prediction.scenario(), String.format("%.2f", prediction.confidence()));
+            }
+        }
+        meterRegistry.counter("companion.scenario.classifications", "source", prediction.source()).increment();
+        return prediction;
+    }
+}
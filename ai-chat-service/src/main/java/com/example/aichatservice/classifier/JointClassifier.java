@@ -0,0 +1,111 @@
+package com.example.aichatservice.classifier;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Set;
+
+/**
+ * 联合分类器：用一次结构化输出的大模型调用，同时给出帖子的情绪、置信度和场景。
+ * <p>
+ * 与“情绪分析服务 + 场景分类”的两步方案相比，省去了一次网络往返和一次推理。
+ * 模型返回的标签会被校验，不在预定义集合内的值会被替换为默认值。
+ */
+@Component
+@Slf4j
+public class JointClassifier {
+
+    public static final String DEFAULT_EMOTION = "NEUTRAL";
+    private static final Set<String> EMOTIONS = Set.of("JOY", "SADNESS", "ANGER", "SURPRISE", "FEAR", "NEUTRAL");
+
+    private final ChatClient chat;
+
+    public JointClassifier(@Qualifier("companionChatClient") ChatClient chat) {
+        this.chat = chat;
+    }
+
+    /**
+     * 内部DTO，用于接收联合分类LLM调用的JSON结果。
+     */
+    @Data
+    private static class JointClassificationResult {
+        @JsonProperty("emotion")
+        private String emotion;
+        @JsonProperty("confidence")
+        private Float confidence;
+        @JsonProperty("scenario")
+        private String scenario;
+    }
+
+    /**
+     * 对帖子进行联合分类。调用失败时返回 NEUTRAL + neutral_reply。
+     */
+    public PostClassification classify(String postContent, String imageDescription) {
+        try {
+            log.info("【联合分类】开始以单次调用分析情绪与场景...");
+            JointClassificationResult result = chat.prompt()
+                    .user(buildJointPrompt(postContent, imageDescription))
+                    .call()
+                    .entity(JointClassificationResult.class);
+            if (result != null) {
+                String emotion = StringUtils.hasText(result.getEmotion()) ? result.getEmotion().toUpperCase() : DEFAULT_EMOTION;
+                if (!EMOTIONS.contains(emotion)) {
+                    log.warn("【联合分类】模型返回了未知情绪 '{}'，使用默认情绪 {}。", emotion, DEFAULT_EMOTION);
+                    emotion = DEFAULT_EMOTION;
+                }
+                String scenario = result.getScenario();
+                if (!ScenarioClassifier.SCENARIOS.contains(scenario)) {
+                    log.warn("【联合分类】模型返回了未知场景 '{}'，使用默认场景 {}。", scenario, ScenarioClassifier.DEFAULT_SCENARIO);
+                    scenario = ScenarioClassifier.DEFAULT_SCENARIO;
+                } else {
+                    LlmScenarioClassifier.recordTrainingSample(scenario, emotion, postContent, imageDescription);
+                }
+                log.info("【联合分类】分析完成，情绪: {}, 置信度: {}, 场景: {}", emotion, result.getConfidence(), scenario);
+                return new PostClassification(emotion, result.getConfidence(), scenario, "joint");
+            }
+        } catch (Exception e) {
+            log.error("【联合分类】调用LLM进行联合分类失败！将使用默认情绪与场景。", e);
+        }
+        return new PostClassification(DEFAULT_EMOTION, null, ScenarioClassifier.DEFAULT_SCENARIO, "joint");
+    }
+
+    private String buildJointPrompt(String postContent, String imageDescription) {
+        String text = postContent == null ? "" : postContent;
+        String context = "帖子文本: " + text.substring(0, Math.min(text.length(), 500));
+        if (StringUtils.hasText(imageDescription)) {
+            context += "\n图片内容: " + imageDescription;
+        }
+        return """
+                你是一个顶级心理学家和社交情商专家。请阅读下面的社交帖子，同时完成两项判断：
+                
+                1. 帖子表达的最主要的核心情绪，从以下标签中选择一个：
+                ["JOY", "SADNESS", "ANGER", "SURPRISE", "FEAR", "NEUTRAL"]
+                
+                2. 回复这条帖子最适合的社交场景，从以下标签中选择一个：
+                ["celebrate", "comfort", "encourage", "gentle_reminder", "neutral_reply"]
+                - "celebrate": 用于分享好消息、成就、喜悦的时刻。
+                - "comfort": 用于表达悲伤、失落、遇到困难需要安慰的时刻。
+                - "encourage": 用于表达迷茫、缺乏动力、需要鼓励的时刻。
+                - "gentle_reminder": 用于提醒注意事项或表达担忧的场景。
+                - "neutral_reply": 用于中性的日常分享、提问或陈述。
+                
+                你的输出必须严格遵循以下JSON格式，不要添加任何解释：
+                {
+                  "emotion": "选择的情绪标签",
+                  "confidence": 0.95,
+                  "scenario": "选择的场景标签"
+                }
+                'confidence' 是你对情绪判断的置信度，范围在0.0到1.0之间。
+                
+                待分析的上下文如下：
+                ---
+                %s
+                ---
+                """.formatted(context);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.aichatservice.classifier;
+
+import com.example.logging.LogPayload;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * 基于大模型的场景分类器。
+ * <p>
+ * 这是原先评论流程中独立的“场景推理”LLM调用，现在只作为本地分类器置信度不足时的兜底。
+ * 每一次成功的判定都会以 TSV 格式写入 {@code scenario.training} 日志，作为重新训练本地模型的训练数据。
+ * 该日志默认关闭，启用 {@code scenario-training} profile 后写入独立的文件（见 logback-spring.xml），不进入应用主日志。
+ */
+@Component
+@Slf4j
+public class LlmScenarioClassifier implements ScenarioClassifier {
+
+    /**
+     * 训练数据日志，每行格式：{@code 场景 \t 情绪 \t 帖子文本 \t 图片描述}。
+     */
+    private static final Logger TRAINING_LOG = LoggerFactory.getLogger("scenario.training");
+
+    /**
+     * 训练样本中每段文本保留的字符数，与本地模型特征抽取使用的长度一致。
+     */
+    private static final int TRAINING_MAX_CHARS = 500;
+
+    private final ChatClient chat;
+
+    public LlmScenarioClassifier(@Qualifier("companionChatClient") ChatClient chat) {
+        this.chat = chat;
+    }
+
+    /**
+     * 内部DTO，用于接收场景推理LLM调用的JSON结果。
+     */
+    @Data
+    private static class ScenarioInferenceResult {
+        @JsonProperty("scenario")
+        private String scenario;
+    }
+
+    @Override
+    public ScenarioPrediction classify(String postContent, String imageDescription, String emotion) {
+        try {
+            log.info("【场景分类-LLM】开始进行场景推理...");
+            String inferencePrompt = buildScenarioInferencePrompt(postContent, imageDescription, emotion);
+            ScenarioInferenceResult result = chat.prompt()
+                    .user(inferencePrompt)
+                    .call()
+                    .entity(ScenarioInferenceResult.class);
+            if (result != null && StringUtils.hasText(result.getScenario())) {
+                log.info("【场景分类-LLM】场景推理成功，结果: {}", result.getScenario());
+                if (SCENARIOS.contains(result.getScenario())) {
+                    recordTrainingSample(result.getScenario(), emotion, postContent, imageDescription);
+                }
+                return new ScenarioPrediction(result.getScenario(), 1.0, "llm");
+            }
+        } catch (Exception e) {
+            log.error("【场景分类-LLM】场景推理失败！将使用默认场景 '{}'。", DEFAULT_SCENARIO, e);
+        }
+        return ScenarioPrediction.fallback();
+    }
+
+    /**
+     * 记录一条大模型给出的场景判定，作为本地模型的训练样本。帖子文本和图片描述会屏蔽邮箱、手机号、身份证号。
+     */
+    static void recordTrainingSample(String scenario, String emotion, String postContent, String imageDescription) {
+        if (!TRAINING_LOG.isInfoEnabled()) {
+            return;
+        }
+        TRAINING_LOG.info("{}\t{}\t{}\t{}", scenario, emotion,
+                LogPayload.redact(oneLine(postContent), TRAINING_MAX_CHARS),
+                LogPayload.redact(oneLine(imageDescription), TRAINING_MAX_CHARS));
+    }
+
+    /**
+     * 构建用于场景推理的专属Prompt。
+     */
+    private String buildScenarioInferencePrompt(String postContent, String imageDescription, String emotion) {
+        String context = "帖子文本: " + postContent;
+        if (StringUtils.hasText(imageDescription)) {
+            context += "\n图片内容: " + imageDescription;
+        }
+        context += "\n分析出的情绪: " + emotion;
+
+        return """
+                你是一个顶级的社交情商专家。你的任务是根据下面提供的上下文信息，判断这段对话最适合哪一个社交场景。
+                请从以下几个预定义的场景标签中选择一个最合适的：
+                ["celebrate", "comfort", "encourage", "gentle_reminder", "neutral_reply"]
+                
+                - "celebrate": 用于分享好消息、成就、喜悦的时刻。
+                - "comfort": 用于表达悲伤、失落、遇到困难需要安慰的时刻。
+                - "encourage": 用于表达迷茫、缺乏动力、需要鼓励的时刻。
+                - "gentle_reminder": 用于提醒注意事项或表达担忧的场景。
+                - "neutral_reply": 用于中性的日常分享、提问或陈述。
+                
+                你的输出必须严格遵循以下JSON格式，不要添加任何解释：
+                {
+                  "scenario": "选择的场景标签"
+                }
+                
+                待分析的上下文如下：
+                ---
+                %s
+                ---
+                """.formatted(context);
+    }
+
+    private static String oneLine(String text) {
+        return text == null ? "" : text.replaceAll("[\\t\\r\\n]+", " ");
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.aichatservice.classifier;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 进程内的场景分类器：基于字符 n-gram 与情绪先验的多分类线性模型 (softmax)。
+ * <p>
+ * 模型文件为 TSV 格式，每行 {@code 特征名 \t 场景标签 \t 权重}，以 {@code #} 开头的行为注释。
+ * 仓库内置的是一份人工种子权重，可以用 benchmarks 模块中的 {@code ScenarioModelTrainer} 基于线上记录的大模型判定结果重新训练后，
+ * 通过 {@code companion.scenario.model-location} 指向新的模型文件。
+ * 整个推理过程只有哈希查找和一次 softmax，耗时在微秒级。
+ */
+@Component
+@Slf4j
+public class LocalScenarioClassifier implements ScenarioClassifier {
+
+    /**
+     * 特征名 -> 每个场景的权重（下标与 {@link #SCENARIOS} 对应）。
+     */
+    private final Map<String, double[]> weights;
+
+    public LocalScenarioClassifier(
+            @Value("${companion.scenario.model-location:classpath:classifier/scenario-model.tsv}") Resource modelResource) throws IOException {
+        this.weights = loadModel(modelResource);
+        log.info("【场景分类-本地】已从 '{}' 加载场景分类模型，特征数: {}", modelResource.getDescription(), weights.size());
+    }
+
+    @Override
+    public ScenarioPrediction classify(String postContent, String imageDescription, String emotion) {
+        double[] scores = new double[SCENARIOS.size()];
+        for (String feature : ScenarioFeatures.extract(postContent, imageDescription, emotion)) {
+            double[] w = weights.get(feature);
+            if (w != null) {
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] += w[i];
+                }
+            }
+        }
+        return toPrediction(scores);
+    }
+
+    /**
+     * 对打分做 softmax，取概率最高的场景及其概率作为置信度。
+     */
+    private static ScenarioPrediction toPrediction(double[] scores) {
+        int best = 0;
+        double max = scores[0];
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > max) {
+                max = scores[i];
+                best = i;
+            }
+        }
+        double sum = 0;
+        for (double score : scores) {
+            sum += Math.exp(score - max);
+        }
+        return new ScenarioPrediction(SCENARIOS.get(best), 1.0 / sum, "local");
+    }
+
+    static Map<String, double[]> loadModel(Resource resource) throws IOException {
+        Map<String, double[]> model = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                if (parts.length != 3) {
+                    log.warn("【场景分类-本地】忽略格式错误的模型行: '{}'", line);
+                    continue;
+                }
+                int label = SCENARIOS.indexOf(parts[1].trim());
+                if (label < 0) {
+                    log.warn("【场景分类-本地】忽略未知场景标签的模型行: '{}'", line);
+                    continue;
+                }
+                model.computeIfAbsent(parts[0].trim(), k -> new double[SCENARIOS.size()])[label] += Double.parseDouble(parts[2].trim());
+            }
+        }
+        return model;
+    }
+
+    /**
+     * 供离线训练器复用：将模型按 TSV 格式输出的行。
+     */
+    public static List<String> toLines(Map<String, double[]> model) {
+        return model.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .flatMap(e -> {
+                    double[] w = e.getValue();
+                    return IntStream.range(0, w.length)
+                            .filter(i -> Math.abs(w[i]) >= 1e-3)
+                            .mapToObj(i -> e.getKey() + "\t" + SCENARIOS.get(i) + "\t" + String.format(Locale.ROOT, "%.4f", w[i]));
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.aichatservice.classifier;
+
+/**
+ * 一条帖子的分类结果：情绪 + 场景。
+ *
+ * @param emotion    大写的情绪标签，如 "JOY"
+ * @param confidence 情绪判断的置信度，未知时为 null
+ * @param scenario   场景标签，如 "celebrate"
+ * @param source     结果来源："separate" 表示情绪服务 + 场景分类器两步得出，"joint" 表示单次联合分类
+ */
+public record PostClassification(String emotion, Float confidence, String scenario, String source) {
+}
@@ -0,0 +1,32 @@
+package com.example.aichatservice.classifier;
+
+import java.util.List;
+
+/**
+ * 社交场景分类器。
+ * <p>
+ * 根据帖子文本、图片描述和情绪，判断评论最适合使用哪一个场景模板。
+ * 场景标签与人格的 commentTemplates 中的 Key 一一对应。
+ */
+public interface ScenarioClassifier {
+
+    /**
+     * 所有预定义的场景标签。
+     */
+    List<String> SCENARIOS = List.of("celebrate", "comfort", "encourage", "gentle_reminder", "neutral_reply");
+
+    /**
+     * 默认场景，在任何分类失败时使用。
+     */
+    String DEFAULT_SCENARIO = "neutral_reply";
+
+    /**
+     * 对一条帖子进行场景分类。
+     *
+     * @param postContent      帖子文本
+     * @param imageDescription 图片描述，可以为空字符串
+     * @param emotion          已分析出的情绪标签，如 "JOY"
+     * @return 分类结果，永不为 null
+     */
+    ScenarioPrediction classify(String postContent, String imageDescription, String emotion);
+}
@@ -0,0 +1,56 @@
+package com.example.aichatservice.classifier;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 场景分类的特征抽取。
+ * <p>
+ * 进程内模型与离线训练器共用这一份逻辑，保证训练与推理看到的特征完全一致：
+ * <ul>
+ *     <li>{@code bias}：偏置项</li>
+ *     <li>{@code emo:<情绪>}：情绪先验</li>
+ *     <li>{@code ng:<片段>}：文本的 2~3 字符 n-gram（中文没有天然分词，字符 n-gram 足以覆盖关键词）</li>
+ * </ul>
+ */
+public final class ScenarioFeatures {
+
+    static final String BIAS = "bias";
+    private static final int MAX_TEXT_LENGTH = 500;
+    private static final int MIN_GRAM = 2;
+    private static final int MAX_GRAM = 3;
+
+    private ScenarioFeatures() {
+    }
+
+    /**
+     * 抽取一条样本的全部特征名。
+     */
+    public static List<String> extract(String postContent, String imageDescription, String emotion) {
+        String text = normalize(postContent) + " " + normalize(imageDescription);
+        if (text.length() > MAX_TEXT_LENGTH) {
+            text = text.substring(0, MAX_TEXT_LENGTH);
+        }
+
+        List<String> features = new ArrayList<>(text.length() * (MAX_GRAM - MIN_GRAM + 1) + 2);
+        features.add(BIAS);
+        if (StringUtils.hasText(emotion)) {
+            features.add("emo:" + emotion.toUpperCase());
+        }
+        for (int n = MIN_GRAM; n <= MAX_GRAM; n++) {
+            for (int i = 0; i + n <= text.length(); i++) {
+                String gram = text.substring(i, i + n);
+                if (gram.indexOf(' ') < 0) {
+                    features.add("ng:" + gram);
+                }
+            }
+        }
+        return features;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase().replaceAll("\\s+", " ").trim();
+    }
+}
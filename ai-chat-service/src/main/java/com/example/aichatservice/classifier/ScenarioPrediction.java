@@ -0,0 +1,15 @@
+package com.example.aichatservice.classifier;
+
+/**
+ * 一次场景分类的结果。
+ *
+ * @param scenario   场景标签
+ * @param confidence 置信度，范围 [0, 1]
+ * @param source     结果来源，"local" 表示进程内模型，"llm" 表示大模型，"fallback" 表示兜底
+ */
+public record ScenarioPrediction(String scenario, double confidence, String source) {
+
+    public static ScenarioPrediction fallback() {
+        return new ScenarioPrediction(ScenarioClassifier.DEFAULT_SCENARIO, 0.0, "fallback");
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.aichatservice.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 评论生成流水线的并发执行器配置。
+ * <p>
+ * 上下文组装阶段（视觉、情绪、洞察、记忆、知识库）全部是阻塞的远程调用，
+ * 这里为它们提供一个基于虚拟线程的执行器，使这些调用可以并行发出，而不会占用平台线程。
+ */
+@Configuration
+public class CompanionExecutorConfig {
+
+    /**
+     * 每个任务一个虚拟线程的执行器，专用于评论生成时的下游并发调用。
+     *
+     * @return 虚拟线程执行器，应用关闭时自动关闭
+     */
+    @Bean(name = "companionContextExecutor", destroyMethod = "shutdown")
+    public ExecutorService companionContextExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
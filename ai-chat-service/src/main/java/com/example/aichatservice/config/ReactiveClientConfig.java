@@ -0,0 +1,57 @@
+package com.example.aichatservice.config;
+
+import com.example.aichatservice.apis.reactive.ReactiveEmotionClient;
+import com.example.aichatservice.apis.reactive.ReactiveKnowledgeClient;
+import com.example.aichatservice.apis.reactive.ReactiveMemoryClient;
+import com.example.aichatservice.apis.reactive.ReactiveVisionClient;
+import com.example.aichatservice.resilience.ReactiveResilience;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * 响应式评论引擎（{@code companion.engine=reactive}）使用的 WebClient 下游客户端。
+ * <p>
+ * 下游地址与 Feign 客户端共用 {@code services.*.url} 配置；熔断器与舱壁复用 resilience4j 的同名实例。
+ */
+@Configuration
+@ConditionalOnProperty(name = "companion.engine", havingValue = "reactive")
+public class ReactiveClientConfig {
+
+    @Bean
+    public ReactiveResilience reactiveResilience(ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry,
+                                                 ObjectProvider<BulkheadRegistry> bulkheadRegistry) {
+        return new ReactiveResilience(
+                circuitBreakerRegistry.getIfAvailable(CircuitBreakerRegistry::ofDefaults),
+                bulkheadRegistry.getIfAvailable(BulkheadRegistry::ofDefaults));
+    }
+
+    @Bean
+    public ReactiveMemoryClient reactiveMemoryClient(WebClient.Builder builder, ReactiveResilience resilience,
+                                                     @Value("${services.memory.url:http://localhost:1236}") String baseUrl) {
+        return new ReactiveMemoryClient(builder.clone().baseUrl(baseUrl).build(), resilience);
+    }
+
+    @Bean
+    public ReactiveKnowledgeClient reactiveKnowledgeClient(WebClient.Builder builder, ReactiveResilience resilience,
+                                                           @Value("${services.knowledge.url:http://localhost:1237}") String baseUrl) {
+        return new ReactiveKnowledgeClient(builder.clone().baseUrl(baseUrl).build(), resilience);
+    }
+
+    @Bean
+    public ReactiveEmotionClient reactiveEmotionClient(WebClient.Builder builder, ReactiveResilience resilience,
+                                                       @Value("${services.emotion.url:http://localhost:1239}") String baseUrl) {
+        return new ReactiveEmotionClient(builder.clone().baseUrl(baseUrl).build(), resilience);
+    }
+
+    @Bean
+    public ReactiveVisionClient reactiveVisionClient(WebClient.Builder builder, ReactiveResilience resilience,
+                                                     @Value("${services.vision.url:http://localhost:1242}") String baseUrl) {
+        return new ReactiveVisionClient(builder.clone().baseUrl(baseUrl).build(), resilience);
+    }
+}
@@ -6,9 +6,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
 
@@ -21,20 +26,71 @@ public class CompanionController {
     // ✨ 依赖注入的是接口，而不是具体的实现类
     private final CompanionService companionService;
 
+    /**
+     * 是否允许客户端通过 {@code X-Companion-Timeline: true} 请求头获取 {@code Server-Timing} 阶段时间线。
+     * 默认关闭，避免对外暴露内部调用结构。
+     */
+    @Value("${companion.observability.timeline-header-enabled:false}")
+    private boolean timelineHeaderEnabled;
 
+    /**
+     * 评论生成接口。
+     * 返回 Mono：阻塞引擎下在请求线程上同步完成；{@code companion.engine=reactive} 时请求线程立即释放，
+     * 评论就绪后再异步写回响应。
+     */
     @PostMapping("/comment")
-    public String makeWarmComment(
+    public Mono<ResponseEntity<String>> makeWarmComment(
             @RequestBody CommentReq req,
             @RequestParam(name = "personaId", required = false) String personaId, // personaId 保持可选
-            @RequestHeader("X-User-Id") String userId) { // ✨ 从请求头获取用户ID
-        log.info("接收到用户 '{}' 的评论生成请求, personaId: '{}'", userId, req.userName());
-
-        try {
-            // ✨ 将 userId 传递给 Service 层
-            return companionService.generateComment(req, personaId, userId);
-        } catch (Exception e) {
-            log.error("为用户 '{}' 生成评论时发生未知错误", userId, e);
-            return "抱歉，我的大脑好像出了一点小问题，稍后再试试吧！";
-        }
+            @RequestHeader("X-User-Id") String userId, // ✨ 从请求头获取用户ID
+            @RequestHeader(name = "X-Companion-Timeline", defaultValue = "false") boolean timelineRequested) {
+        log.info("接收到用户 '{}' 的评论生成请求, personaId: '{}'", userId, personaId);
+
+        // ✨ 将 userId 传递给 Service 层
+        return companionService.generateCommentAsync(req, personaId, userId)
+                .map(result -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (timelineHeaderEnabled && timelineRequested) {
+                        // ✨ 调试用：以 Server-Timing 格式返回各阶段耗时
+                        response.header("Server-Timing", result.timeline().serverTiming());
+                    }
+                    return response.body(result.comment());
+                })
+                .onErrorResume(e -> {
+                    log.error("为用户 '{}' 生成评论时发生未知错误", userId, e);
+                    return Mono.just(ResponseEntity.ok("抱歉，我的大脑好像出了一点小问题，稍后再试试吧！"));
+                });
+    }
+
+    /**
+     * 预热接口：用户打开帖子时由客户端调用，请求体与随后的评论请求相同。
+     * 服务端在后台提前组装评论所需的上下文，稍后同一用户对该帖子的评论请求可以直接使用；接口立即返回 202。
+     */
+    @PostMapping("/warm")
+    public ResponseEntity<Void> warmComment(
+            @RequestBody CommentReq req,
+            @RequestParam(name = "personaId", required = false) String personaId,
+            @RequestHeader("X-User-Id") String userId) {
+        log.debug("接收到用户 '{}' 的预热请求, personaId: '{}'", userId, personaId);
+        companionService.prefetch(req, personaId, userId);
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * 流式评论生成接口 (SSE)。
+     * 上下文组装完成后，模型输出的每一段文本都会立即推送给客户端，而不必等待整条评论生成完毕。
+     */
+    @PostMapping(value = "/comment/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> streamWarmComment(
+            @RequestBody CommentReq req,
+            @RequestParam(name = "personaId", required = false) String personaId,
+            @RequestHeader("X-User-Id") String userId) {
+        log.info("接收到用户 '{}' 的流式评论生成请求, personaId: '{}'", userId, personaId);
+
+        return companionService.streamComment(req, personaId, userId)
+                .onErrorResume(e -> {
+                    log.error("为用户 '{}' 流式生成评论时发生未知错误", userId, e);
+                    return Flux.just("抱歉，我的大脑好像出了一点小问题，稍后再试试吧！");
+                });
     }
 }
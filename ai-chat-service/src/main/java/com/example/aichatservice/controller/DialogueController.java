@@ -1,13 +1,18 @@
 package com.example.aichatservice.controller;
 
+import com.example.aichatservice.dto.dialogue.DialogueJobResponse;
 import com.example.aichatservice.dto.dialogue.DialogueRequest;
 import com.example.aichatservice.dto.dialogue.DialogueResponse;
+import com.example.aichatservice.service.DialogueJobService;
 import com.example.aichatservice.service.DialogueService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 /**
  * 多人格对话功能的API控制器。
@@ -19,6 +24,7 @@ import org.springframework.web.bind.annotation.*;
 public class DialogueController {
 
     private final DialogueService dialogueService;
+    private final DialogueJobService dialogueJobService;
 
     /**
      * 启动一次多个人格之间的对话。
@@ -38,4 +44,97 @@ public class DialogueController {
         log.info("【API入口】用户 '{}' 的人格对话请求处理完成。", userId);
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * 以 SSE 流式进行一次多个人格之间的对话。
+     * 每位人格发言完成后立即推送一条 {@code event: turn}，所有轮次结束后推送 {@code event: summary}；
+     * 客户端断开连接即取消对话，剩余的轮次与总结不会再调用模型。
+     *
+     * @param request 包含对话主题、参与者ID列表和轮次的请求体
+     * @param userId  发起对话的用户ID，从请求头获取
+     * @return 发言与总结事件流
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamDialogue(
+            @Valid @RequestBody DialogueRequest request,
+            @RequestHeader("X-User-Id") String userId) {
+
+        log.info("【API入口】收到用户 '{}' 流式人格对话的请求...", userId);
+        return dialogueService.streamDialogue(request, userId)
+                .map(event -> ServerSentEvent.builder(event.data()).event(event.type()).build())
+                .onErrorResume(e -> {
+                    log.error("用户 '{}' 的流式人格对话发生错误", userId, e);
+                    return Flux.just(ServerSentEvent.builder((Object) "抱歉，对话中途出了一点小问题，稍后再试试吧！")
+                            .event("error")
+                            .build());
+                });
+    }
+
+    /**
+     * 以异步任务的方式启动一次多个人格之间的对话，立即返回任务ID。
+     * 对话在后台执行，每位人格的发言完成后即持久化，服务实例重启或崩溃后会从最后一条发言继续。
+     * 每个用户同时进行中的任务数有上限，超出时返回 429。
+     *
+     * @param request 包含对话主题、参与者ID列表和轮次的请求体
+     * @param userId  发起对话的用户ID，从请求头获取
+     * @return 新任务的状态
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<DialogueJobResponse> submitDialogueJob(
+            @Valid @RequestBody DialogueRequest request,
+            @RequestHeader("X-User-Id") String userId) {
+
+        log.info("【API入口】收到用户 '{}' 提交人格对话任务的请求...", userId);
+        return ResponseEntity.accepted().body(dialogueJobService.submit(request, userId));
+    }
+
+    /**
+     * 轮询对话任务的状态与新的发言。
+     *
+     * @param jobId     任务ID
+     * @param afterTurn 客户端已收到的最后一条发言的序号，只返回之后的发言
+     * @param userId    当前用户ID，从请求头获取
+     * @return 任务状态、新的发言，以及完成后的总结
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<DialogueJobResponse> getDialogueJob(
+            @PathVariable String jobId,
+            @RequestParam(defaultValue = "0") int afterTurn,
+            @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(dialogueJobService.getJob(jobId, userId, afterTurn));
+    }
+
+    /**
+     * 以 SSE 订阅对话任务：先补发 {@code afterTurn} 之后的发言，之后的事件与 {@code /stream} 接口相同。
+     * 断开连接不会取消任务，重新订阅时带上已收到的最后一条发言序号即可继续。
+     *
+     * @param jobId     任务ID
+     * @param afterTurn 客户端已收到的最后一条发言的序号
+     * @param userId    当前用户ID，从请求头获取
+     * @return 发言、总结与用量事件流
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> subscribeDialogueJob(
+            @PathVariable String jobId,
+            @RequestParam(defaultValue = "0") int afterTurn,
+            @RequestHeader("X-User-Id") String userId) {
+        return dialogueJobService.subscribe(jobId, userId, afterTurn)
+                .map(event -> ServerSentEvent.builder(event.data()).event(event.type()).build());
+    }
+
+    /**
+     * 取消对话任务，已完成的发言保留。
+     *
+     * @param jobId  任务ID
+     * @param userId 当前用户ID，从请求头获取
+     * @return 取消后的任务状态
+     */
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<DialogueJobResponse> cancelDialogueJob(
+            @PathVariable String jobId,
+            @RequestHeader("X-User-Id") String userId) {
+
+        log.info("【API入口】用户 '{}' 取消人格对话任务 {}", userId, jobId);
+        return ResponseEntity.ok(dialogueJobService.cancel(jobId, userId));
+    }
 }
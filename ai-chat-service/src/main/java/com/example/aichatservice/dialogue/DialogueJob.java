@@ -0,0 +1,83 @@
+package com.example.aichatservice.dialogue;
+
+import com.example.aichatservice.dto.dialogue.DialogueRequest;
+import com.example.aichatservice.dto.dialogue.DialogueTokenUsage;
+import com.example.aichatservice.dto.dialogue.DialogueTurn;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 异步多人格对话任务，映射到 MongoDB 中的 "dialogue_jobs" 集合。
+ * <p>
+ * 每位人格发言完成时立即追加到 {@code turns}，执行实例崩溃后，其它实例从最后一条已完成的发言继续，
+ * 已完成的发言不会重新调用模型。执行实例通过定时刷新 {@code heartbeatAt} 持有任务的租约。
+ * 结束的任务由 {@code finishedAt} 上的 TTL 索引清理。
+ */
+@Document(collection = "dialogue_jobs")
+@Data
+@NoArgsConstructor
+public class DialogueJob {
+
+    @Id
+    private String id;
+
+    /**
+     * 提交任务的用户ID。
+     */
+    private String userId;
+
+    /**
+     * 任务占用的执行槽位，取值 [0, 每个用户的任务数上限)。(userId, slot) 在 RUNNING 任务中唯一，
+     * 任务结束后槽位自动释放。
+     */
+    private Integer slot;
+
+    /**
+     * 原始的对话请求，接管任务时按它继续执行。
+     */
+    private DialogueRequest request;
+
+    private DialogueJobStatus status;
+
+    /**
+     * 已完成的发言，按发言顺序。
+     */
+    private List<DialogueTurn> turns = new ArrayList<>();
+
+    /**
+     * 对话总结，完成后才有值。
+     */
+    private String summary;
+
+    /**
+     * 对话的提示词 token 用量，完成后才有值。续跑的任务只统计最后一次执行。
+     */
+    private DialogueTokenUsage tokenUsage;
+
+    /**
+     * 失败原因。
+     */
+    private String error;
+
+    /**
+     * 当前执行该任务的实例ID。
+     */
+    private String owner;
+
+    /**
+     * 执行实例最近一次心跳的时间，超过租约时长未更新即视为实例已崩溃。
+     */
+    private Instant heartbeatAt;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+
+    private Instant finishedAt;
+}
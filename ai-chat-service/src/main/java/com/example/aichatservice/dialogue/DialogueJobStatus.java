@@ -0,0 +1,31 @@
+package com.example.aichatservice.dialogue;
+
+/**
+ * 对话任务的状态。
+ */
+public enum DialogueJobStatus {
+
+    /**
+     * 正在某个实例上执行；执行实例崩溃、租约过期后会被其它实例接管并从最后一轮继续。
+     */
+    RUNNING,
+
+    /**
+     * 所有轮次与总结都已完成。
+     */
+    COMPLETED,
+
+    /**
+     * 执行出错，不再重试。
+     */
+    FAILED,
+
+    /**
+     * 已被用户取消。
+     */
+    CANCELLED;
+
+    public boolean isTerminal() {
+        return this != RUNNING;
+    }
+}
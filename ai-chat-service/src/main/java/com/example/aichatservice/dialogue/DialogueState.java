@@ -0,0 +1,192 @@
+package com.example.aichatservice.dialogue;
+
+import com.example.aichatservice.dto.dialogue.DialogueTokenUsage;
+import com.example.aichatservice.prompt.TokenEstimator;
+import com.example.concurrency.LlmPriority;
+import com.example.logging.LogSampling;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一场多人格对话的增量状态：滚动摘要 + 最近 K 条原文发言。
+ * <p>
+ * 每轮发言和最终总结都只发送“主题 + 滚动摘要 + 尚未压缩的发言”，而不是完整的对话记录，
+ * 提示词长度不再随轮数增长。发言追加后，超出最近 K 条的旧发言在后台合并进摘要；
+ * 合并完成之前这些发言仍以原文出现在提示词中，因此压缩不会阻塞下一轮发言，也不会丢失内容。
+ * 压缩失败时发言保持原文，下一次追加时重试。
+ * <p>
+ * 同时累计这场对话的提示词 token 数（本地估算），并给出发送完整对话记录时的对照值。
+ * 对话线程与按回合并发的发言线程、后台压缩线程会同时访问，所有状态都在锁内读写。
+ */
+@Slf4j
+public class DialogueState {
+
+    private final String topicEntry;
+    private final String topic;
+    private final int recentTurns;
+    private final DialogueSummarizer summarizer;
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 完整的对话记录（第一条为主题），只用于响应，不再进入提示词
+    private final List<String> transcript = new ArrayList<>();
+    // 尚未合并进摘要的发言，按发言顺序
+    private final Deque<String> unsummarized = new ArrayDeque<>();
+    private String rollingSummary = "";
+    private boolean compressing;
+
+    private long transcriptTokens;
+    private long turnPromptTokens;
+    private long compressionTokens;
+    private long summaryTokens;
+    private long fullTranscriptTokens;
+
+    public DialogueState(String topic, DialogueStateProperties properties, DialogueSummarizer summarizer,
+                         Executor executor) {
+        this.topic = topic;
+        this.topicEntry = "--- 对话主题 ---\n" + topic;
+        this.recentTurns = properties.getRecentTurns();
+        this.summarizer = summarizer;
+        this.executor = executor;
+        this.transcript.add(topicEntry);
+        this.transcriptTokens = TokenEstimator.estimate(topicEntry);
+    }
+
+    /**
+     * 追加一条已格式化的发言，必要时在后台发起一次摘要压缩。
+     */
+    public void append(String formattedTurn) {
+        lock.lock();
+        try {
+            transcript.add(formattedTurn);
+            unsummarized.addLast(formattedTurn);
+            transcriptTokens += TokenEstimator.estimate(formattedTurn);
+            maybeCompress();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前发给模型的对话内容：主题、滚动摘要（如有）与尚未压缩的发言。
+     */
+    public String content() {
+        lock.lock();
+        try {
+            StringBuilder content = new StringBuilder(topicEntry);
+            if (!rollingSummary.isEmpty()) {
+                content.append("\n\n--- 之前的对话摘要 ---\n").append(rollingSummary);
+            }
+            for (String turn : unsummarized) {
+                content.append("\n\n").append(turn);
+            }
+            return content.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一轮发言实际发送的对话内容。
+     */
+    public void recordTurnPrompt(String content) {
+        lock.lock();
+        try {
+            turnPromptTokens += TokenEstimator.estimate(content);
+            fullTranscriptTokens += transcriptTokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录最终总结的提示词，{@code content} 为其中对话内容的部分。
+     */
+    public void recordSummaryPrompt(String prompt, String content) {
+        lock.lock();
+        try {
+            int promptTokens = TokenEstimator.estimate(prompt);
+            summaryTokens += promptTokens;
+            fullTranscriptTokens += promptTokens - TokenEstimator.estimate(content) + transcriptTokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已追加的发言数（不含主题）。
+     */
+    public int turnCount() {
+        lock.lock();
+        try {
+            return transcript.size() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 完整的对话记录，第一条为主题。
+     */
+    public List<String> transcript() {
+        lock.lock();
+        try {
+            return List.copyOf(transcript);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public DialogueTokenUsage usage() {
+        lock.lock();
+        try {
+            return new DialogueTokenUsage(turnPromptTokens, compressionTokens, summaryTokens,
+                    turnPromptTokens + compressionTokens + summaryTokens, fullTranscriptTokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 尚未压缩的发言超过 K 条且没有进行中的压缩时，把多出的最早几条交给后台合并。调用方必须持有锁。
+     */
+    private void maybeCompress() {
+        if (recentTurns <= 0 || compressing || unsummarized.size() <= recentTurns) {
+            return;
+        }
+        List<String> folding = new ArrayList<>(unsummarized).subList(0, unsummarized.size() - recentTurns);
+        String previousSummary = rollingSummary;
+        compressing = true;
+        // 压缩调用沿用对话的优先级和日志上下文
+        CompletableFuture.supplyAsync(LogSampling.propagate(LlmPriority.propagate(
+                        () -> summarizer.compress(topic, previousSummary, folding))), executor)
+                .whenComplete((compression, error) -> onCompressed(folding, compression, error));
+    }
+
+    private void onCompressed(List<String> folded, DialogueSummarizer.Compression compression, Throwable error) {
+        lock.lock();
+        try {
+            compressing = false;
+            if (error != null || compression.summary() == null || compression.summary().isBlank()) {
+                log.warn("【人格对话-摘要】滚动摘要压缩失败，{} 条发言暂时保持原文", folded.size(), error);
+            } else {
+                rollingSummary = compression.summary().trim();
+                compressionTokens += compression.promptTokens();
+                for (int i = 0; i < folded.size(); i++) {
+                    unsummarized.removeFirst();
+                }
+                // 压缩期间又有新的发言超出窗口
+                maybeCompress();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.aichatservice.dialogue;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 多人格对话状态配置，前缀 {@code companion.dialogue.state}。
+ * <pre>
+ * companion:
+ *   dialogue:
+ *     state:
+ *       recent-turns: 4         # 原文保留的最近发言数，更早的发言压缩进滚动摘要；0 表示不压缩
+ *       summary-max-chars: 400  # 滚动摘要的字数上限
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "companion.dialogue.state")
+public class DialogueStateProperties {
+
+    /**
+     * 每轮提示词中原文保留的最近发言数。小于等于 0 时不做压缩，每轮都发送完整的对话记录。
+     */
+    private int recentTurns = 4;
+
+    /**
+     * 滚动摘要的字数上限，写进压缩提示词里约束模型输出。
+     */
+    private int summaryMaxChars = 400;
+}
@@ -0,0 +1,55 @@
+package com.example.aichatservice.dialogue;
+
+import com.example.aichatservice.prompt.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 把多人格对话中移出“最近发言”窗口的发言合并进滚动摘要。
+ * 每次只发送旧摘要和新移出的几条发言，提示词长度与对话已进行的轮数无关。
+ */
+@Slf4j
+@Component
+public class DialogueSummarizer {
+
+    private final ChatClient chatClient;
+    private final DialogueStateProperties properties;
+
+    public DialogueSummarizer(ChatClient chatClient, DialogueStateProperties properties) {
+        this.chatClient = chatClient;
+        this.properties = properties;
+    }
+
+    /**
+     * @param topic           对话主题
+     * @param previousSummary 已有的滚动摘要，第一次压缩时为空串
+     * @param turns           要合并进摘要的发言（已格式化，按发言顺序）
+     * @return 新的摘要以及本次压缩的提示词 token 数（本地估算）
+     */
+    public Compression compress(String topic, String previousSummary, List<String> turns) {
+        String prompt = """
+        你是一个多人格对话的记录员。请把“已有摘要”和“新增发言”合并成一份新的摘要：
+        保留每位人格的核心观点、立场的变化以及尚未达成一致的问题，去掉寒暄和重复内容。
+        摘要不超过 %d 字，只输出摘要本身。
+
+        对话主题：%s
+
+        已有摘要：
+        %s
+
+        新增发言：
+        %s
+        """.formatted(properties.getSummaryMaxChars(), topic,
+                previousSummary.isEmpty() ? "（无）" : previousSummary, String.join("\n\n", turns));
+        String summary = chatClient.prompt().user(prompt).call().content();
+        log.debug("【人格对话-摘要】已将 {} 条发言合并进滚动摘要，摘要长度 {} 字", turns.size(),
+                summary == null ? 0 : summary.length());
+        return new Compression(summary, TokenEstimator.estimate(prompt));
+    }
+
+    public record Compression(String summary, int promptTokens) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.aichatservice.dto.dialogue;
+
+/**
+ * 流式多人格对话推送给客户端的事件：每位人格发言完成时推送一条 {@code turn}，全部结束后推送一条 {@code summary}，
+ * 最后推送一条 {@code usage} 报告这场对话的 token 用量；订阅异步任务时，任务失败或被取消会以一条 {@code error} 结束。
+ *
+ * @param type    事件类型，同时作为 SSE 的 event 名称
+ * @param turn    {@code turn} 事件的发言，其余事件为 null
+ * @param summary {@code summary} 事件的总结，其余事件为 null
+ * @param usage   {@code usage} 事件的 token 用量，其余事件为 null
+ * @param message {@code error} 事件的说明，其余事件为 null
+ */
+public record DialogueEvent(String type, DialogueTurn turn, String summary, DialogueTokenUsage usage, String message) {
+
+    public static final String TURN = "turn";
+    public static final String SUMMARY = "summary";
+    public static final String USAGE = "usage";
+    public static final String ERROR = "error";
+
+    public static DialogueEvent turn(DialogueTurn turn) {
+        return new DialogueEvent(TURN, turn, null, null, null);
+    }
+
+    public static DialogueEvent summary(String summary) {
+        return new DialogueEvent(SUMMARY, null, summary, null, null);
+    }
+
+    public static DialogueEvent usage(DialogueTokenUsage usage) {
+        return new DialogueEvent(USAGE, null, null, usage, null);
+    }
+
+    public static DialogueEvent error(String message) {
+        return new DialogueEvent(ERROR, null, null, null, message);
+    }
+
+    /**
+     * SSE 的 data 部分：发言本身、总结文本、token 用量或错误说明。
+     */
+    public Object data() {
+        return switch (type) {
+            case TURN -> turn;
+            case USAGE -> usage;
+            case ERROR -> message;
+            default -> summary;
+        };
+    }
+}
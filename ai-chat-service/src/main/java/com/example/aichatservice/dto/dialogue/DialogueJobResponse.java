@@ -0,0 +1,55 @@
+package com.example.aichatservice.dto.dialogue;
+
+import com.example.aichatservice.dialogue.DialogueJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 异步多人格对话任务的查询结果 DTO。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DialogueJobResponse {
+
+    private String jobId;
+
+    private DialogueJobStatus status;
+
+    private String topic;
+
+    /**
+     * 整场对话的发言总数。
+     */
+    private int totalTurns;
+
+    /**
+     * 已完成的发言总数。
+     */
+    private int completedTurns;
+
+    /**
+     * 本次查询返回的发言：序号大于请求中 {@code afterTurn} 的已完成发言。
+     */
+    private List<DialogueTurn> turns;
+
+    /**
+     * 对话总结，任务完成后才有值。
+     */
+    private String summary;
+
+    private DialogueTokenUsage tokenUsage;
+
+    /**
+     * 失败原因，只在任务失败时有值。
+     */
+    private String error;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+}
@@ -0,0 +1,24 @@
+package com.example.aichatservice.dto.dialogue;
+
+/**
+ * 多人格对话的执行方式。
+ */
+public enum DialogueMode {
+
+    /**
+     * 逐轮完整调用评论生成，每一轮都重新进行情绪、场景分类与检索。未指定时的默认方式。
+     */
+    SEQUENTIAL,
+
+    /**
+     * 流水线：每个人格的洞察、记忆、知识库只在对话开始时检索一次并在后续轮次复用；
+     * 下一轮的情绪与场景分类在本轮生成的同时进行，分类看到的对话历史比生成时少最新的一条发言。
+     */
+    PIPELINED,
+
+    /**
+     * 按回合并发：同一回合内所有人格同时发言，都只看到上一回合结束时的对话历史，
+     * 本回合的发言按参与者顺序追加。检索复用方式与 {@link #PIPELINED} 相同。
+     */
+    ROUND_PARALLEL
+}
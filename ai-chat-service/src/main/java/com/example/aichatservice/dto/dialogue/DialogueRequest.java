@@ -33,4 +33,9 @@ public class DialogueRequest {
     @Min(value = 1, message = "最大轮次至少为1")
     @Max(value = 5, message = "为防止滥用，最大轮次不能超过5")
     private Integer maxTurns;
+
+    /**
+     * 对话的执行方式，默认为逐轮完整生成；流水线与按回合并发需要显式指定。
+     */
+    private DialogueMode mode = DialogueMode.SEQUENTIAL;
 }
\ No newline at end of file
@@ -24,4 +24,9 @@ public class DialogueResponse {
      * 对整场对话的最终总结。
      */
     private String summary;
+
+    /**
+     * 这场对话的提示词 token 用量（本地估算）。
+     */
+    private DialogueTokenUsage tokenUsage;
 }
\ No newline at end of file
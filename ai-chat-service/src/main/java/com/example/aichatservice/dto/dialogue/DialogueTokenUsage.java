@@ -0,0 +1,39 @@
+package com.example.aichatservice.dto.dialogue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一场多人格对话中由对话记录产生的提示词 token 数（本地估算，不含人格提示词、记忆与知识库等固定部分）。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DialogueTokenUsage {
+
+    /**
+     * 各轮发言请求中对话记录部分（主题、滚动摘要、最近发言）的 token 数之和。
+     */
+    private long turnPromptTokens;
+
+    /**
+     * 滚动摘要压缩调用的提示词 token 数之和。
+     */
+    private long compressionTokens;
+
+    /**
+     * 最终总结调用的提示词 token 数。
+     */
+    private long summaryTokens;
+
+    /**
+     * 以上三项之和。
+     */
+    private long totalTokens;
+
+    /**
+     * 对照值：如果每轮发言和最终总结都发送完整对话记录，同样这场对话需要的 token 数。
+     */
+    private long fullTranscriptTokens;
+}
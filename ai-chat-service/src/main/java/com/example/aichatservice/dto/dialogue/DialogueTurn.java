@@ -0,0 +1,39 @@
+package com.example.aichatservice.dto.dialogue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 多人格对话中一位人格的一次发言。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DialogueTurn {
+
+    /**
+     * 发言序号，从 1 开始。
+     */
+    private int index;
+
+    /**
+     * 所在回合，从 1 开始（每位参与者各发言一次为一个回合）。
+     */
+    private int round;
+
+    /**
+     * 发言人格的ID。
+     */
+    private String personaId;
+
+    /**
+     * 发言人格的名称。
+     */
+    private String personaName;
+
+    /**
+     * 发言内容。
+     */
+    private String content;
+}
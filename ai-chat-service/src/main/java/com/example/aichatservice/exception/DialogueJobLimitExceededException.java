@@ -0,0 +1,11 @@
+package com.example.aichatservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS) // 用户同时执行的对话任务过多，响应状态码为 429
+public class DialogueJobLimitExceededException extends RuntimeException {
+    public DialogueJobLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.aichatservice.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND) // 任务不存在或不属于当前用户时，HTTP响应状态码为 404
+public class DialogueJobNotFoundException extends RuntimeException {
+    public DialogueJobNotFoundException(String message) {
+        super(message);
+    }
+}
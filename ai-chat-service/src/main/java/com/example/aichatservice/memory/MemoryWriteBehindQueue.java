@@ -0,0 +1,334 @@
+package com.example.aichatservice.memory;
+
+import com.example.apis.MemoryServiceClient;
+import com.example.concurrency.LlmPriority;
+import com.example.dto.AI.BatchAddMemoryRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 记忆写回队列（write-behind）。
+ * <p>
+ * 评论生成完成后只需把互动内容放入本队列即可返回，不会等待记忆服务。队列按「用户 × 人格」聚合，
+ * 由定时任务批量调用记忆服务的批量写入接口。
+ * <ul>
+ *     <li>内存中最多暂存 {@code max-pending} 条，超出后放入同样有上限的溢出队列，由刷新任务落盘；
+ *     请求线程只做内存操作，永不阻塞，溢出队列也满时丢弃并计数；</li>
+ *     <li>批量写入失败（记忆服务不可用）时整批落盘，之后每次成功刷新后回放磁盘中的数据；</li>
+ *     <li>每一批在切分时就生成幂等键 {@code batchId}，重试和回放都沿用同一个键。读超时等情况下记忆服务可能已经写入，
+ *     重复提交的批次由记忆服务丢弃；</li>
+ *     <li>回放中的文件（{@code .replaying}）在全部发送成功后才删除，回放中途失败时改写为剩余部分，
+ *     进程在回放期间崩溃也不会丢失数据，重启后整份重放；</li>
+ *     <li>落盘文件与回放中的文件合计有大小上限，超出后丢弃并计数，保证故障期间不会无限占用磁盘。</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class MemoryWriteBehindQueue {
+
+    /**
+     * 落盘文件中的一行：属于同一用户-人格对的一批记忆，条数不超过 {@code max-batch-size}，对应一次批量写入请求。
+     */
+    record SpilledBatch(String batchId, String userId, String personaId, List<String> contents) {
+    }
+
+    private record Key(String userId, String personaId) {
+    }
+
+    private final MemoryServiceClient memoryServiceClient;
+    private final ObjectMapper objectMapper;
+    private final int maxPending;
+    private final int maxBatchSize;
+    private final Path spillFile;
+    private final Path replayingFile;
+    private final long maxSpillBytes;
+
+    private final Map<Key, List<String>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // 内存队列写满后的互动，等待刷新任务落盘
+    private final BlockingQueue<SpilledBatch> overflow;
+    private final ReentrantLock spillLock = new ReentrantLock();
+
+    private final Counter enqueued;
+    private final Counter flushed;
+    private final Counter spilled;
+    private final Counter dropped;
+
+    public MemoryWriteBehindQueue(MemoryServiceClient memoryServiceClient,
+                                  ObjectMapper objectMapper,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${companion.memory.write-behind.max-pending:10000}") int maxPending,
+                                  @Value("${companion.memory.write-behind.max-batch-size:50}") int maxBatchSize,
+                                  @Value("${companion.memory.write-behind.spill-file:./data/memory-spill.jsonl}") Path spillFile,
+                                  @Value("${companion.memory.write-behind.max-spill-bytes:104857600}") long maxSpillBytes) {
+        this.memoryServiceClient = memoryServiceClient;
+        this.objectMapper = objectMapper;
+        this.maxPending = maxPending;
+        this.maxBatchSize = maxBatchSize;
+        this.spillFile = spillFile;
+        this.replayingFile = spillFile.resolveSibling(spillFile.getFileName() + ".replaying");
+        this.maxSpillBytes = maxSpillBytes;
+        this.overflow = new ArrayBlockingQueue<>(maxPending);
+        this.enqueued = meterRegistry.counter("companion.memory.write_behind", "event", "enqueued");
+        this.flushed = meterRegistry.counter("companion.memory.write_behind", "event", "flushed");
+        this.spilled = meterRegistry.counter("companion.memory.write_behind", "event", "spilled");
+        this.dropped = meterRegistry.counter("companion.memory.write_behind", "event", "dropped");
+        meterRegistry.gauge("companion.memory.write_behind.pending", pendingCount);
+        meterRegistry.gauge("companion.memory.write_behind.overflow", overflow, BlockingQueue::size);
+    }
+
+    /**
+     * 将一次互动放入写回队列，立即返回。
+     *
+     * @param userId    用户ID
+     * @param personaId 人格ID
+     * @param content   需要记住的文本
+     */
+    public void enqueue(String userId, String personaId, String content) {
+        enqueued.increment();
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            if (overflow.offer(new SpilledBatch(null, userId, personaId, List.of(content)))) {
+                log.warn("【记忆写回】内存队列已满 ({} 条)，[用户:{}, 人格:{}] 的互动将在下次刷新时落盘", maxPending, userId, personaId);
+            } else {
+                dropped.increment();
+                log.error("【记忆写回】内存队列与溢出队列均已满，丢弃 [用户:{}, 人格:{}] 的一条互动", userId, personaId);
+            }
+            return;
+        }
+        pending.compute(new Key(userId, personaId), (key, contents) -> {
+            List<String> list = contents != null ? contents : new ArrayList<>();
+            list.add(content);
+            return list;
+        });
+    }
+
+    /**
+     * 定时刷新：先把溢出队列落盘，再按用户-人格对批量写入记忆服务；全部成功后再尝试回放落盘数据。
+     */
+    @Scheduled(fixedDelayString = "${companion.memory.write-behind.flush-interval-ms:2000}")
+    public void flush() {
+        spillOverflow();
+
+        boolean allSucceeded = true;
+        for (Key key : pending.keySet()) {
+            List<String> contents = pending.remove(key);
+            if (contents == null) {
+                continue;
+            }
+            pendingCount.addAndGet(-contents.size());
+            List<SpilledBatch> unsent = sendAll(chunk(key, contents));
+            if (!unsent.isEmpty()) {
+                spill(unsent);
+                allSucceeded = false;
+            }
+        }
+        if (allSucceeded) {
+            replaySpill();
+        }
+    }
+
+    /**
+     * 应用关闭时把内存中的数据尽量写出，写不出去的落盘，下次启动后回放。
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("【记忆写回】应用关闭，正在刷新内存队列中的 {} 条互动...", pendingCount.get());
+        flush();
+    }
+
+    /**
+     * 把一个用户-人格对的记忆切分成若干批，每批分配幂等键。
+     */
+    private List<SpilledBatch> chunk(Key key, List<String> contents) {
+        List<SpilledBatch> batches = new ArrayList<>();
+        for (int from = 0; from < contents.size(); from += maxBatchSize) {
+            List<String> chunk = new ArrayList<>(contents.subList(from, Math.min(from + maxBatchSize, contents.size())));
+            batches.add(new SpilledBatch(UUID.randomUUID().toString(), key.userId(), key.personaId(), chunk));
+        }
+        return batches;
+    }
+
+    /**
+     * 依次发送若干批记忆，遇到失败立即停止。
+     *
+     * @return 未发送成功的批次（从失败的那一批开始）；全部成功时返回空列表
+     */
+    private List<SpilledBatch> sendAll(List<SpilledBatch> batches) {
+        for (int i = 0; i < batches.size(); i++) {
+            SpilledBatch batch = batches.get(i);
+            try {
+                // 写回不影响当前评论，记忆服务上的向量化按后台优先级排队
+                LlmPriority.BACKGROUND.run(() -> memoryServiceClient.addMemories(
+                        batch.userId(), batch.personaId(), new BatchAddMemoryRequest(batch.contents(), batch.batchId())));
+                flushed.increment(batch.contents().size());
+                log.debug("【记忆写回】[用户:{}, 人格:{}] 已批量写入 {} 条记忆", batch.userId(), batch.personaId(), batch.contents().size());
+            } catch (Exception e) {
+                List<SpilledBatch> unsent = batches.subList(i, batches.size());
+                log.warn("【记忆写回】[用户:{}, 人格:{}] 批量写入失败，剩余 {} 批将落盘等待重试",
+                        batch.userId(), batch.personaId(), unsent.size(), e);
+                return new ArrayList<>(unsent);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * 把溢出队列中的互动按用户-人格对合并、切分后落盘。
+     */
+    private void spillOverflow() {
+        List<SpilledBatch> drained = new ArrayList<>();
+        overflow.drainTo(drained);
+        if (drained.isEmpty()) {
+            return;
+        }
+        Map<Key, List<String>> grouped = new LinkedHashMap<>();
+        for (SpilledBatch batch : drained) {
+            grouped.computeIfAbsent(new Key(batch.userId(), batch.personaId()), key -> new ArrayList<>())
+                    .addAll(batch.contents());
+        }
+        List<SpilledBatch> batches = new ArrayList<>();
+        grouped.forEach((key, contents) -> batches.addAll(chunk(key, contents)));
+        spill(batches);
+    }
+
+    /**
+     * 以 JSON Lines 的形式追加到落盘文件，落盘文件与回放中的文件合计超出大小上限时丢弃。
+     */
+    private void spill(List<SpilledBatch> batches) {
+        spillLock.lock();
+        try {
+            long size = sizeOf(spillFile) + sizeOf(replayingFile);
+            if (spillFile.getParent() != null) {
+                Files.createDirectories(spillFile.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (SpilledBatch batch : batches) {
+                    String line = objectMapper.writeValueAsString(batch);
+                    long lineBytes = line.getBytes(StandardCharsets.UTF_8).length + 1L;
+                    if (size + lineBytes > maxSpillBytes) {
+                        dropped.increment(batch.contents().size());
+                        log.error("【记忆写回】落盘文件已达上限 {} 字节，丢弃 [用户:{}, 人格:{}] 的 {} 条记忆",
+                                maxSpillBytes, batch.userId(), batch.personaId(), batch.contents().size());
+                        continue;
+                    }
+                    writer.write(line);
+                    writer.newLine();
+                    size += lineBytes;
+                    spilled.increment(batch.contents().size());
+                }
+            }
+        } catch (IOException e) {
+            int lost = batches.stream().mapToInt(batch -> batch.contents().size()).sum();
+            dropped.increment(lost);
+            log.error("【记忆写回】写入落盘文件 {} 失败，丢弃 {} 条记忆", spillFile, lost, e);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 回放落盘数据。
+     * <p>
+     * 没有回放中的文件时，先把落盘文件改名为 {@code .replaying}，回放期间新落盘的数据写入新的落盘文件；
+     * 已有回放中的文件（上次回放中途失败或进程崩溃）时继续回放它。文件在全部批次发送成功后才删除，
+     * 中途失败时原子地改写为剩余的批次。重复发送的批次由记忆服务按 {@code batchId} 去重。
+     */
+    private void replaySpill() {
+        List<String> lines;
+        spillLock.lock();
+        try {
+            if (!Files.exists(replayingFile)) {
+                if (!Files.exists(spillFile)) {
+                    return;
+                }
+                Files.move(spillFile, replayingFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            lines = Files.readAllLines(replayingFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error("【记忆写回】读取落盘文件 {} 失败，稍后重试", replayingFile, e);
+            return;
+        } finally {
+            spillLock.unlock();
+        }
+
+        List<SpilledBatch> batches = new ArrayList<>();
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                SpilledBatch batch = objectMapper.readValue(line, SpilledBatch.class);
+                if (batch.batchId() != null) {
+                    batches.add(batch);
+                } else {
+                    // 旧版本写入的行没有幂等键，按批大小切分后补上
+                    batches.addAll(chunk(new Key(batch.userId(), batch.personaId()), batch.contents()));
+                }
+            } catch (IOException e) {
+                log.error("【记忆写回】落盘文件中存在无法解析的行，已跳过: {}", line, e);
+            }
+        }
+        log.info("【记忆写回】开始回放落盘数据，共 {} 批", batches.size());
+
+        List<SpilledBatch> remaining = sendAll(batches);
+        spillLock.lock();
+        try {
+            if (remaining.isEmpty()) {
+                Files.delete(replayingFile);
+                log.info("【记忆写回】落盘数据回放完成");
+            } else {
+                rewriteReplaying(remaining);
+            }
+        } catch (IOException e) {
+            // 文件保持原样，下次回放时整份重放，重复的批次由记忆服务去重
+            log.error("【记忆写回】更新回放文件 {} 失败，下次将整份重放", replayingFile, e);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 把回放文件原子地替换为尚未发送成功的批次。调用方必须持有 {@link #spillLock}。
+     */
+    private void rewriteReplaying(List<SpilledBatch> remaining) throws IOException {
+        Path temp = replayingFile.resolveSibling(replayingFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (SpilledBatch batch : remaining) {
+                writer.write(objectMapper.writeValueAsString(batch));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, replayingFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.warn("【记忆写回】回放中途失败，剩余 {} 批保留在 {} 中等待下次回放", remaining.size(), replayingFile);
+    }
+
+    private static long sizeOf(Path path) throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+}
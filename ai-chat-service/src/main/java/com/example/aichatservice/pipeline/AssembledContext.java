@@ -0,0 +1,24 @@
+package com.example.aichatservice.pipeline;
+
+import com.example.aichatservice.classifier.PostClassification;
+
+/**
+ * 上下文组装阶段（视觉、分类、检索）的产物，即调用模型生成评论之前需要的全部下游结果。
+ * 既可以在评论请求中即时组装，也可以在用户打开帖子时提前预取。
+ *
+ * @param vision         视觉分析结果
+ * @param classification 情绪与场景分类结果
+ * @param retrieval      洞察、记忆、知识库检索结果
+ * @param embedding      预取时为语义缓存提前计算的帖子向量（已归一化），未计算时为 null
+ * @param degraded       是否有阶段超时或失败而使用了兜底值
+ */
+public record AssembledContext(VisionResult vision,
+                               PostClassification classification,
+                               RetrievalResult retrieval,
+                               float[] embedding,
+                               boolean degraded) {
+
+    public AssembledContext withEmbedding(float[] embedding) {
+        return new AssembledContext(vision, classification, retrieval, embedding, degraded);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.aichatservice.pipeline;
+
+import com.example.aichatservice.classifier.PostClassification;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 评论流水线中可合并的下游调用：情绪分析、场景分类、联合分类与视觉分析。
+ * 这些调用的结果只取决于帖子本身（文本、图片、情绪），与用户和人格无关，
+ * 同一条帖子并发到达的评论请求只需要一次真正的调用。两个评论引擎共用同一组合并器。
+ */
+@Component
+public class CallCoalescer {
+
+    private final SingleFlight<String, String> emotion;
+    private final SingleFlight<ScenarioKey, String> scenario;
+    private final SingleFlight<JointKey, PostClassification> joint;
+    private final SingleFlight<List<String>, VisionResult> vision;
+
+    public CallCoalescer(MeterRegistry meterRegistry) {
+        this.emotion = new SingleFlight<>("emotion", meterRegistry);
+        this.scenario = new SingleFlight<>("scenario", meterRegistry);
+        this.joint = new SingleFlight<>("joint", meterRegistry);
+        this.vision = new SingleFlight<>("vision", meterRegistry);
+    }
+
+    /**
+     * 情绪分析，以帖子文本为 key。
+     */
+    public SingleFlight<String, String> emotion() {
+        return emotion;
+    }
+
+    /**
+     * 场景分类，以帖子文本、图片描述和情绪为 key。
+     */
+    public SingleFlight<ScenarioKey, String> scenario() {
+        return scenario;
+    }
+
+    /**
+     * 联合分类，以帖子文本和图片描述为 key。
+     */
+    public SingleFlight<JointKey, PostClassification> joint() {
+        return joint;
+    }
+
+    /**
+     * 批量视觉分析，以图片 URL 列表（含顺序）为 key。
+     */
+    public SingleFlight<List<String>, VisionResult> vision() {
+        return vision;
+    }
+
+    /**
+     * 帖子文本作为 key；ConcurrentHashMap 不接受 null，空帖子统一为空串。
+     */
+    public static String postKey(String postContent) {
+        return postContent == null ? "" : postContent;
+    }
+
+    public record ScenarioKey(String postContent, String imageDescription, String emotion) {
+    }
+
+    public record JointKey(String postContent, String imageDescription) {
+    }
+}
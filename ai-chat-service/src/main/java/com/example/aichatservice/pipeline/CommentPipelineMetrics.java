@@ -0,0 +1,49 @@
+package com.example.aichatservice.pipeline;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将评论请求的阶段时间线发布为 Micrometer 指标。
+ * <ul>
+ *     <li>{@code companion.comment.stage}：每个阶段的耗时直方图，标签 stage / persona_type / outcome</li>
+ *     <li>{@code companion.comment.duration}：整个请求的耗时直方图，标签 persona_type / outcome（success / error）</li>
+ * </ul>
+ * 直方图开启了百分位桶，可以在 Prometheus 中按阶段聚合 p99，找出线上请求的关键路径。
+ */
+@Component
+public class CommentPipelineMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public CommentPipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 发布一次请求的时间线。每个请求只应调用一次，通常在请求结束时调用。
+     */
+    public void publish(StageTimeline timeline) {
+        String personaType = timeline.personaType();
+        for (StageTimeline.Entry entry : timeline.entries()) {
+            Timer.builder("companion.comment.stage")
+                    .description("评论生成流水线各阶段的耗时")
+                    .tag("stage", entry.stage().tag())
+                    .tag("persona_type", personaType)
+                    .tag("outcome", entry.outcome().tag())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(entry.nanos(), TimeUnit.NANOSECONDS);
+        }
+        Timer.builder("companion.comment.duration")
+                .description("评论生成请求的总耗时")
+                .tag("persona_type", personaType)
+                .tag("outcome", timeline.isFailed() ? "error" : "success")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(timeline.elapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.aichatservice.pipeline;
+
+/**
+ * 一次评论生成的结果：评论文本及本次请求的阶段时间线。
+ *
+ * @param comment  生成的评论
+ * @param timeline 各阶段耗时，用于调试响应头
+ */
+public record CommentResult(String comment, StageTimeline timeline) {
+}
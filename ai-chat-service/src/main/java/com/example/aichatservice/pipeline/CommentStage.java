@@ -0,0 +1,50 @@
+package com.example.aichatservice.pipeline;
+
+/**
+ * 评论生成流水线的阶段。
+ * <pre>
+ * VISION ──┐
+ *          ├─> SCENARIO ──┐
+ * EMOTION ─┘              ├─> GENERATION ─> MEMORY_WRITE
+ * RETRIEVAL ──────────────┘
+ *   ├ INSIGHTS
+ *   ├ MEMORY
+ *   └ KNOWLEDGE
+ * </pre>
+ * 场景分类同时依赖视觉描述和情绪；检索与分类互不依赖，其中洞察、记忆、知识库三路检索并发执行；
+ * 生成阶段等待所有上游阶段完成，生成后再将本次互动写回记忆。
+ */
+public enum CommentStage {
+
+    VISION("vision", "视觉分析"),
+    EMOTION("emotion", "情绪分析"),
+    SCENARIO("scenario", "场景分类"),
+    INSIGHTS("insights", "长期洞察"),
+    MEMORY("memory", "记忆检索"),
+    KNOWLEDGE("knowledge", "知识库检索"),
+    RETRIEVAL("retrieval", "上下文检索"),
+    GENERATION("generation", "模型生成"),
+    MEMORY_WRITE("memory_write", "记忆写回");
+
+    private final String tag;
+    private final String label;
+
+    CommentStage(String tag, String label) {
+        this.tag = tag;
+        this.label = label;
+    }
+
+    /**
+     * 用于日志和指标标签的小写名称。
+     */
+    public String tag() {
+        return tag;
+    }
+
+    /**
+     * 用于中文日志的阶段名称。
+     */
+    public String label() {
+        return label;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.aichatservice.pipeline;
+
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.prompt.CompiledPersonaPrompt;
+import org.springframework.ai.zhipuai.ZhiPuAiChatOptions;
+
+/**
+ * 一次评论生成中只取决于「人设 × 用户」、与帖子无关的部分：人设本身、编译好的场景模板、模型调用选项，
+ * 以及可选的用户长期洞察。单条评论请求每次现场解析；多人格对话在开始时为每位参与者解析一次，
+ * 之后每一轮发言直接复用，不再重复查询人设、查表编译和调用洞察服务。
+ *
+ * @param persona         使用的人设
+ * @param prompt          人设的场景 × 情绪模板查找表
+ * @param chatOptions     模型调用选项（人设有专属微调模型时指定该模型）
+ * @param insightsContext 预先检索的 "[用户长期关注点]" 上下文片段；为 null 时由检索阶段按请求检索
+ */
+public record PersonaContext(Persona persona,
+                             CompiledPersonaPrompt prompt,
+                             ZhiPuAiChatOptions chatOptions,
+                             String insightsContext) {
+
+    public String id() {
+        return persona.getId();
+    }
+
+    public String name() {
+        return persona.getName();
+    }
+
+    public boolean hasInsights() {
+        return insightsContext != null;
+    }
+}
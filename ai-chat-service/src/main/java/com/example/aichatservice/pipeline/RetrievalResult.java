@@ -0,0 +1,14 @@
+package com.example.aichatservice.pipeline;
+
+/**
+ * 检索阶段的产物：长期洞察、记忆、知识库三段上下文，每段都可能为空字符串。
+ */
+public record RetrievalResult(String insightsContext, String memoryContext, String knowledgeContext) {
+
+    /**
+     * 洞察与记忆都是针对当前用户的上下文。
+     */
+    public boolean isPersonalized() {
+        return !insightsContext.isEmpty() || !memoryContext.isEmpty();
+    }
+}
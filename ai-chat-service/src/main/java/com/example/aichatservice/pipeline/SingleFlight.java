@@ -0,0 +1,112 @@
+package com.example.aichatservice.pipeline;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同的并发下游调用（single-flight）：同一个 key 同时只有一次真正的调用在进行，
+ * 期间到达的相同请求直接等待并共享这次调用的结果（包括异常）。调用结束后 key 立即移除，不做任何缓存。
+ * <p>
+ * 热门帖子在几秒内会收到大量针对同一人格、同一内容的评论请求，情绪、场景和视觉分析的输入完全相同，
+ * 合并后这些请求只消耗一次下游调用。指标 {@code companion.coalescing.calls} 按 {@code result=leader|shared}
+ * 计数，shared / (leader + shared) 即合并率。
+ *
+ * @param <K> 调用的输入，必须正确实现 equals/hashCode
+ * @param <V> 调用的结果
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter shared;
+
+    public SingleFlight(String call, MeterRegistry meterRegistry) {
+        this.leaders = Counter.builder("companion.coalescing.calls")
+                .description("可合并的下游调用次数，leader 为真正发出的调用，shared 为共享结果的调用")
+                .tags("call", call, "result", "leader")
+                .register(meterRegistry);
+        this.shared = Counter.builder("companion.coalescing.calls")
+                .description("可合并的下游调用次数，leader 为真正发出的调用，shared 为共享结果的调用")
+                .tags("call", call, "result", "shared")
+                .register(meterRegistry);
+        Gauge.builder("companion.coalescing.in_flight", inFlight, Map::size)
+                .description("正在进行中、可被合并的下游调用数")
+                .tag("call", call)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 阻塞版本：第一个到达的请求在当前线程上执行 {@code call}，其余相同请求阻塞等待其结果。
+     * 等待方的截止时间由调用方自己控制（例如外层 CompletableFuture 的 orTimeout）。
+     */
+    public V call(K key, Supplier<V> call) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            shared.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+        leaders.increment();
+        V result = null;
+        Throwable failure = null;
+        try {
+            result = call.get();
+            return result;
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            // 无论以何种方式结束都要完成 future，否则 join() 中的等待方会永远挂起
+            if (failure != null) {
+                mine.completeExceptionally(failure);
+            } else {
+                mine.complete(result);
+            }
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 响应式版本：第一个订阅者触发 {@code call}，调用一旦发出就会执行到底，
+     * 即使发起它的请求超时或取消，其他等待同一结果的请求仍能拿到结果。
+     */
+    public Mono<V> mono(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+            if (existing != null) {
+                shared.increment();
+                return Mono.fromFuture(existing, true);
+            }
+            leaders.increment();
+            // defer：call 同步抛出的异常也转成错误信号，保证 mine 一定会完成
+            Mono.defer(call).toFuture().whenComplete((result, error) -> {
+                inFlight.remove(key, mine);
+                if (error != null) {
+                    mine.completeExceptionally(error);
+                } else {
+                    mine.complete(result);
+                }
+            });
+            return Mono.fromFuture(mine, true);
+        });
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.aichatservice.pipeline;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次评论请求的各阶段耗时与结果。
+ * <p>
+ * 各阶段在不同的虚拟线程上完成，因此写入是同步的；每个阶段只记录一次，重复记录以首次为准。
+ * 未执行的阶段（如没有图片时的视觉阶段）不会出现在时间线中。
+ */
+public final class StageTimeline {
+
+    /**
+     * 阶段的结果，作为指标的 outcome 标签。
+     */
+    public enum Outcome {
+        SUCCESS,
+        /**
+         * 超过截止时间，已使用兜底值继续流程。
+         */
+        TIMEOUT,
+        ERROR,
+        /**
+         * 语义缓存命中，没有调用模型。
+         */
+        CACHE_HIT,
+        /**
+         * 使用了预取好的上下文，耗时只包含等待预取完成的时间。
+         */
+        PREFETCHED;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 时间线中的一条记录。
+     */
+    public record Entry(CommentStage stage, long nanos, Outcome outcome) {
+    }
+
+    public static final String UNKNOWN_PERSONA_TYPE = "unknown";
+
+    private final long startNanos = System.nanoTime();
+    private final Map<CommentStage, Entry> entries = new EnumMap<>(CommentStage.class);
+    private volatile String personaType = UNKNOWN_PERSONA_TYPE;
+    private volatile boolean failed;
+
+    /**
+     * 记录一个成功完成的阶段。
+     *
+     * @param stage      阶段
+     * @param stageStart 阶段开始时的 {@link System#nanoTime()}
+     */
+    public void record(CommentStage stage, long stageStart) {
+        record(stage, stageStart, Outcome.SUCCESS);
+    }
+
+    /**
+     * 记录某个阶段的耗时与结果。
+     *
+     * @param stage      阶段
+     * @param stageStart 阶段开始时的 {@link System#nanoTime()}
+     * @param outcome    阶段结果
+     */
+    public void record(CommentStage stage, long stageStart, Outcome outcome) {
+        long elapsed = System.nanoTime() - stageStart;
+        synchronized (entries) {
+            entries.putIfAbsent(stage, new Entry(stage, elapsed, outcome));
+        }
+    }
+
+    /**
+     * 按阶段顺序返回已记录的条目快照。
+     */
+    public List<Entry> entries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries.values());
+        }
+    }
+
+    /**
+     * 从请求开始到现在的总耗时（纳秒）。
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public String personaType() {
+        return personaType;
+    }
+
+    /**
+     * 人格解析完成后设置人格类型，用作指标的 persona_type 标签。
+     */
+    public void personaType(String personaType) {
+        this.personaType = personaType;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * 标记整个请求以异常结束。
+     */
+    public void markFailed() {
+        this.failed = true;
+    }
+
+    /**
+     * 是否有阶段超时或失败，即组装出的上下文中有使用兜底值的部分。
+     */
+    public boolean isDegraded() {
+        return entries().stream()
+                .anyMatch(entry -> entry.outcome() == Outcome.TIMEOUT || entry.outcome() == Outcome.ERROR);
+    }
+
+    /**
+     * 形如 "vision=120ms, emotion=35ms, memory=5000ms(timeout), generation=1450ms, total=1690ms" 的摘要。
+     */
+    public String summary() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Entry entry : entries()) {
+            String item = entry.stage().tag() + "=" + TimeUnit.NANOSECONDS.toMillis(entry.nanos()) + "ms";
+            joiner.add(entry.outcome() == Outcome.SUCCESS ? item : item + "(" + entry.outcome().tag() + ")");
+        }
+        joiner.add("total=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos()) + "ms");
+        return joiner.toString();
+    }
+
+    /**
+     * 以 W3C {@code Server-Timing} 响应头的格式输出时间线，浏览器开发者工具可以直接展示，例如
+     * {@code vision;dur=120.4, memory;desc="timeout";dur=5000.1, total;dur=1690.2}。
+     */
+    public String serverTiming() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Entry entry : entries()) {
+            StringBuilder metric = new StringBuilder(entry.stage().tag());
+            if (entry.outcome() != Outcome.SUCCESS) {
+                metric.append(";desc=\"").append(entry.outcome().tag()).append('"');
+            }
+            joiner.add(metric.append(";dur=").append(toMillis(entry.nanos())).toString());
+        }
+        joiner.add("total;dur=" + toMillis(elapsedNanos()));
+        return joiner.toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+}
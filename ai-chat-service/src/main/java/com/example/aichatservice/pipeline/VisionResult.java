@@ -0,0 +1,32 @@
+package com.example.aichatservice.pipeline;
+
+import com.example.aichatservice.prompt.CommentPromptBuilder;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 视觉阶段的产物，同一份图片描述同时供场景分类和 User Prompt 使用。
+ *
+ * @param description    合并后的图片描述纯文本，多张图片时每行一张（"图N：..."），没有图片时为空字符串
+ * @param contextSection 拼接进 User Prompt 的 "[图片内容]" 上下文片段
+ */
+public record VisionResult(String description, String contextSection) {
+
+    public static final VisionResult EMPTY = new VisionResult("", "");
+
+    /**
+     * 由按图片顺序排列的描述构建视觉阶段结果。
+     */
+    public static VisionResult of(List<String> descriptions) {
+        if (descriptions == null || descriptions.isEmpty()) {
+            return EMPTY;
+        }
+        return new VisionResult(String.join("\n", descriptions),
+                CommentPromptBuilder.section("图片内容", descriptions, Function.identity()));
+    }
+
+    public boolean isEmpty() {
+        return description.isEmpty();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.aichatservice.prefetch;
+
+import com.example.aichatservice.pipeline.AssembledContext;
+import com.example.dto.post.CommentReq;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 按用户保存的上下文预取结果。
+ * <p>
+ * 用户打开帖子时客户端调用预热接口，评论引擎立即开始视觉、情绪、场景、检索以及语义缓存向量化，
+ * 结果（进行中的 future）以「用户 × 人格 × 帖子」为 key 放入这里。用户随后发表评论时，
+ * 评论请求取走对应的结果，不必再在关键路径上等待这些下游调用；预取尚未完成时直接等待它，而不是重新发起，
+ * 但最多等待 {@code max-wait}，超时后由评论请求现场组装上下文。
+ * <p>
+ * 每个预取结果最多被使用一次。以下情况记为浪费：存活时间内没有被使用（过期或被淘汰），
+ * 或者预取过程中有阶段超时、失败——这样的结果不会交给评论请求，评论请求会重新组装上下文。
+ * <ul>
+ *     <li>{@code companion.prefetch.requests{result=started|duplicate}}：预热请求，duplicate 表示同一帖子已在预取中；</li>
+ *     <li>{@code companion.prefetch.lookups{result=hit|pending|miss}}：评论请求查找预取结果，pending 表示命中但仍需等待预取完成，
+ *     命中率为 (hit + pending) / 全部；</li>
+ *     <li>{@code companion.prefetch.wasted{reason=expired|degraded|slow}}：被丢弃的预取结果，slow 表示评论请求等待超过 max-wait。</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class ContextPrefetchCache {
+
+    /**
+     * 预取结果的 key。视觉、分类、检索都只取决于用户、人格与帖子内容（文本和图片）。
+     */
+    public record Key(String userId, String personaId, String postContent, List<String> imageUrls) {
+
+        public static Key of(String userId, String personaId, CommentReq req) {
+            return new Key(userId, personaId,
+                    req.postContent() == null ? "" : req.postContent(),
+                    req.imageUrls() == null ? List.of() : List.copyOf(req.imageUrls()));
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<AssembledContext> future;
+        private volatile boolean consumed;
+
+        private Entry(CompletableFuture<AssembledContext> future) {
+            this.future = future;
+        }
+    }
+
+    private final PrefetchProperties properties;
+    private final Cache<Key, Entry> entries;
+    private final Counter started;
+    private final Counter duplicates;
+    private final Counter hits;
+    private final Counter pendingHits;
+    private final Counter misses;
+    private final Counter expired;
+    private final Counter degraded;
+    private final Counter slow;
+
+    public ContextPrefetchCache(PrefetchProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxEntries())
+                .expireAfterWrite(properties.getTtl())
+                .removalListener(this::onRemoval)
+                .build();
+        this.started = meterRegistry.counter("companion.prefetch.requests", "result", "started");
+        this.duplicates = meterRegistry.counter("companion.prefetch.requests", "result", "duplicate");
+        this.hits = meterRegistry.counter("companion.prefetch.lookups", "result", "hit");
+        this.pendingHits = meterRegistry.counter("companion.prefetch.lookups", "result", "pending");
+        this.misses = meterRegistry.counter("companion.prefetch.lookups", "result", "miss");
+        this.expired = meterRegistry.counter("companion.prefetch.wasted", "reason", "expired");
+        this.degraded = meterRegistry.counter("companion.prefetch.wasted", "reason", "degraded");
+        this.slow = meterRegistry.counter("companion.prefetch.wasted", "reason", "slow");
+        meterRegistry.gauge("companion.prefetch.entries", entries, Cache::estimatedSize);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 为指定 key 发起预取。同一 key 已有未被使用的预取结果时不会重复发起。
+     *
+     * @param loader 发起组装并返回其 future，必须是非阻塞的
+     * @return 是否真正发起了新的预取
+     */
+    public boolean start(Key key, Supplier<CompletableFuture<AssembledContext>> loader) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        boolean[] created = {false};
+        Entry entry = entries.asMap().computeIfAbsent(key, k -> {
+            created[0] = true;
+            return new Entry(new CompletableFuture<>());
+        });
+        if (!created[0]) {
+            duplicates.increment();
+            return false;
+        }
+        started.increment();
+        // loader 在 computeIfAbsent 之外执行，避免在持有 map 分段锁时发起下游调用
+        CompletableFuture<AssembledContext> loading;
+        try {
+            loading = loader.get();
+        } catch (RuntimeException e) {
+            // 同步抛出时也要完成 future 并移除条目，否则取走它的评论请求会一直等待
+            entries.asMap().remove(key, entry);
+            entry.future.completeExceptionally(e);
+            log.warn("【上下文预取】用户 '{}' 的预取未能发起: {}", key.userId(), e.getMessage());
+            return false;
+        }
+        loading.whenComplete((context, error) -> {
+            if (error == null && !context.degraded()) {
+                entry.future.complete(context);
+                return;
+            }
+            // 兜底值拼出的上下文不交给评论请求：移除条目，已经在等待它的请求以失败结束，改为现场组装
+            entries.asMap().remove(key, entry);
+            degraded.increment();
+            log.debug("【上下文预取】用户 '{}' 的预取存在超时或失败的阶段，结果已丢弃", key.userId());
+            entry.future.completeExceptionally(error != null ? error
+                    : new IllegalStateException("预取存在超时或失败的阶段，结果已丢弃"));
+        });
+        return true;
+    }
+
+    /**
+     * 取走指定 key 的预取结果。
+     *
+     * @return 预取结果的 future（可能尚未完成，最多再等待 {@code max-wait}，超时以 TimeoutException 结束；
+     * 预取失败或存在超时、失败的阶段时以异常结束）；没有可用的预取结果时返回 null
+     */
+    public CompletableFuture<AssembledContext> take(Key key) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.asMap().remove(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.consumed = true;
+        if (entry.future.isDone()) {
+            hits.increment();
+            return entry.future;
+        }
+        pendingHits.increment();
+        // copy：超时只结束本次等待，已在等待同一预取的其它调用方不受影响
+        return entry.future.copy()
+                .orTimeout(properties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((context, error) -> {
+                    if (error instanceof TimeoutException) {
+                        slow.increment();
+                    }
+                });
+    }
+
+    private void onRemoval(Key key, Entry entry, RemovalCause cause) {
+        if (entry != null && !entry.consumed && cause.wasEvicted()) {
+            expired.increment();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.aichatservice.prefetch;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 上下文预取配置，前缀 {@code companion.prefetch}。
+ * <pre>
+ * companion:
+ *   prefetch:
+ *     enabled: true
+ *     ttl: PT1M          # 预取结果的存活时间，超时未被评论请求使用即视为浪费
+ *     max-entries: 10000
+ *     max-wait: PT3S     # 评论请求等待未完成预取的最长时间
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "companion.prefetch")
+public class PrefetchProperties {
+
+    /**
+     * 全局开关。关闭后预热接口直接返回，评论请求也不再查找预取结果。
+     */
+    private boolean enabled = true;
+
+    /**
+     * 预取结果从发起预取开始的存活时间。记忆和洞察会随互动变化，不宜保留太久。
+     */
+    private Duration ttl = Duration.ofMinutes(1);
+
+    /**
+     * 同时保留的预取结果数量上限，超出后按 LRU 淘汰。
+     */
+    private long maxEntries = 10_000;
+
+    /**
+     * 评论请求取到尚未完成的预取时最多等待多久；超时后放弃预取结果，改为现场组装上下文。
+     */
+    private Duration maxWait = Duration.ofSeconds(3);
+}
@@ -0,0 +1,69 @@
+package com.example.aichatservice.prompt;
+
+import com.example.dto.post.CommentReq;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * 评论生成的 User Prompt 与各段上下文的拼装。
+ * 纯函数、无状态，评论流水线和基准测试共用同一份实现。
+ */
+public final class CommentPromptBuilder {
+
+    /**
+     * 请求没有提供用户昵称时 Prompt 中使用的称呼。
+     */
+    public static final String DEFAULT_USER_NAME = "朋友";
+
+    private CommentPromptBuilder() {
+    }
+
+    /**
+     * 拼装最终的 User Prompt。
+     *
+     * @param req     评论请求
+     * @param context 已拼接好的上下文（图片、洞察、记忆、知识），可以为空
+     */
+    public static String userPrompt(CommentReq req, String context) {
+        return """
+                %s
+                
+                [用户昵称] %s
+                [帖子内容] %s
+                [可引用细节（若能抽取）] %s
+                [建议的 micro_step 候选] %s
+                [表情策略] %s
+                """.formatted(
+                StringUtils.hasText(context) ? "[上下文信息]:\n" + context : "[上下文信息]: 无",
+                nvl(req.userName(), DEFAULT_USER_NAME),
+                nvl(req.postContent(), ""),
+                nvl(req.specificDetail(), "（从帖子自动抽取）"),
+                nvl(req.microStep(), "深呼吸一分钟 / 喝水 / 列出一件能做的小事"),
+                nvl(req.emojiPolicy(), "最多 1 个")
+        );
+    }
+
+    /**
+     * 拼装一段列表形式的上下文，例如 "\n[相关记忆]:\n- a\n- b\n"；列表为空时返回空字符串。
+     *
+     * @param title 段落标题，如 "相关记忆"
+     * @param items 条目
+     * @param text  从条目中取出文本的函数
+     */
+    public static <T> String section(String title, Collection<T> items, Function<T, String> text) {
+        if (items == null || items.isEmpty()) {
+            return "";
+        }
+        StringBuilder section = new StringBuilder("\n[").append(title).append("]:\n");
+        for (T item : items) {
+            section.append("- ").append(text.apply(item)).append("\n");
+        }
+        return section.toString();
+    }
+
+    public static String nvl(String v, String def) {
+        return (v != null && !v.isBlank()) ? v : def;
+    }
+}
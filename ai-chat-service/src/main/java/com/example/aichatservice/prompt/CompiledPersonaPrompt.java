@@ -0,0 +1,162 @@
+package com.example.aichatservice.prompt;
+
+import com.example.aichatservice.entity.Persona;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 编译后的人设系统提示词。
+ * <p>
+ * 人设的 {@code commentTemplates} 在编译时被展开成一张不可变的「场景 × 情绪」查找表，
+ * 表中每一项都已经拼好了除字数限制以外的完整 System Prompt，请求时只需查表并拼上字数限制。
+ * 默认字数限制下的完整提示词也已预先生成，这种情况下查表不产生任何新对象。
+ * <p>
+ * 查找规则与原先的模板查找保持一致：
+ * <ol>
+ *     <li>场景下是情绪Map时，优先取与情绪精确匹配的模板，其次取该场景的 "default" 模板；</li>
+ *     <li>场景下是字符串时，直接使用该模板；</li>
+ *     <li>以上都没有有效内容时，使用系统级兜底模板。</li>
+ * </ol>
+ */
+public final class CompiledPersonaPrompt {
+
+    public static final int DEFAULT_MAX_LENGTH = 160;
+
+    static final String FALLBACK_TEMPLATE = "请根据你的角色和上下文信息，生成一条自然的、有共鸣的评论。";
+
+    private static final String DEFAULT_TEMPLATE_KEY = "default";
+
+    private static final String GUIDELINES = """
+            - 你的回答必须自然、真诚，严格符合你的角色设定。
+            - 评论要针对帖子内容，不要空洞。
+            - 长度严格遵守下面的字数限制。
+            - 直接输出评论文本，不要包含任何额外的解释或标记。
+            """;
+
+    /**
+     * System Prompt 中字数限制之前的部分。
+     */
+    private static final String PREFIX_FORMAT = """
+            [你的身份]
+            你的名字是：%s
+            你的角色定位是：%s
+            你的语气和风格：%s
+            
+            [你的任务]
+            你正在为一个社交帖子生成评论。请严格扮演你的角色，并使用下面提供的【专属场景模板】作为你说话的核心思路。
+            你可以对模板进行润色和扩展，但必须保留其核心含义和风格。
+            
+            【专属场景模板】: %s
+            
+            [评论规则]
+            %s
+            评论长度严格限制在\s""";
+
+    private static final String SUFFIX = " 字以内。\n";
+
+    /**
+     * 一条已选定的模板及其对应的 System Prompt。
+     *
+     * @param template 选中的话术模板
+     * @param prefix   字数限制之前的提示词
+     * @param prompt   使用默认字数限制的完整提示词
+     */
+    public record Selection(String template, String prefix, String prompt) {
+
+        /**
+         * 按指定的字数限制生成完整提示词；等于默认值时直接复用预生成的结果。
+         */
+        public String prompt(int maxLength) {
+            return maxLength == DEFAULT_MAX_LENGTH ? prompt : prefix + maxLength + SUFFIX;
+        }
+    }
+
+    private record ScenarioEntry(Map<String, Selection> byEmotion, Selection defaultSelection) {
+    }
+
+    private final String personaId;
+    private final Map<String, ScenarioEntry> scenarios;
+    private final Selection fallback;
+
+    private CompiledPersonaPrompt(String personaId, Map<String, ScenarioEntry> scenarios, Selection fallback) {
+        this.personaId = personaId;
+        this.scenarios = scenarios;
+        this.fallback = fallback;
+    }
+
+    /**
+     * 将人设编译成查找表。
+     */
+    public static CompiledPersonaPrompt compile(Persona persona) {
+        String identity = persona.getTone() + "；" + persona.getStyle();
+        Map<String, Selection> byTemplate = new HashMap<>();
+        Selection fallback = select(persona, identity, FALLBACK_TEMPLATE, byTemplate);
+
+        Map<String, ScenarioEntry> scenarios = new HashMap<>();
+        Map<String, Object> templates = persona.getCommentTemplates();
+        if (templates != null) {
+            templates.forEach((scenario, value) -> {
+                if (!StringUtils.hasText(scenario)) {
+                    return;
+                }
+                if (value instanceof Map<?, ?> emotionMap) {
+                    Object defaultTemplate = emotionMap.get(DEFAULT_TEMPLATE_KEY);
+                    Selection defaultSelection = isText(defaultTemplate)
+                            ? select(persona, identity, (String) defaultTemplate, byTemplate)
+                            : fallback;
+                    Map<String, Selection> byEmotion = new HashMap<>();
+                    emotionMap.forEach((emotion, template) -> {
+                        if (emotion instanceof String key && StringUtils.hasText(key) && isText(template)) {
+                            byEmotion.put(key, select(persona, identity, (String) template, byTemplate));
+                        }
+                    });
+                    scenarios.put(scenario, new ScenarioEntry(Map.copyOf(byEmotion), defaultSelection));
+                } else if (isText(value)) {
+                    scenarios.put(scenario, new ScenarioEntry(Map.of(), select(persona, identity, (String) value, byTemplate)));
+                }
+            });
+        }
+        return new CompiledPersonaPrompt(persona.getId(), Map.copyOf(scenarios), fallback);
+    }
+
+    /**
+     * 根据场景和情绪查找最匹配的模板。
+     *
+     * @param scenario 场景，如 "comfort", "celebrate"
+     * @param emotion  情绪，如 "SADNESS", "JOY"
+     * @return 选中的模板及其提示词，永不为 null
+     */
+    public Selection select(String scenario, String emotion) {
+        ScenarioEntry entry = scenario != null ? scenarios.get(scenario) : null;
+        if (entry == null) {
+            return fallback;
+        }
+        if (emotion != null) {
+            Selection specific = entry.byEmotion().get(emotion);
+            if (specific != null) {
+                return specific;
+            }
+        }
+        return entry.defaultSelection();
+    }
+
+    public String personaId() {
+        return personaId;
+    }
+
+    /**
+     * 同一个模板文本在多个场景/情绪下复用时，只生成一份提示词。
+     */
+    private static Selection select(Persona persona, String identity, String template, Map<String, Selection> byTemplate) {
+        return byTemplate.computeIfAbsent(template, t -> {
+            String prefix = PREFIX_FORMAT.formatted(persona.getName(), persona.getRole(), identity, t, GUIDELINES);
+            return new Selection(t, prefix, prefix + DEFAULT_MAX_LENGTH + SUFFIX);
+        });
+    }
+
+    private static boolean isText(Object value) {
+        return value instanceof String text && StringUtils.hasText(text);
+    }
+}
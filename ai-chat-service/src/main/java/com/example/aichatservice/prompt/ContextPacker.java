@@ -0,0 +1,174 @@
+package com.example.aichatservice.prompt;
+
+import com.example.dto.AI.KnowledgeSearchResult;
+import com.example.dto.AI.SearchMemoryResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 上下文打包：在拼入 Prompt 之前，按 token 预算挑选记忆与知识片段。
+ * <p>
+ * 每段上下文独立执行以下步骤：
+ * <ol>
+ *     <li>打分：置顶记忆优先；其余按「相关性 × (1 - w) + 时效性 × w」排序，没有创建时间的条目只看相关性；</li>
+ *     <li>去重：与已选条目的字符二元组 Jaccard 相似度超过阈值的条目视为重复并丢弃；</li>
+ *     <li>装箱：按分数从高到低贪心放入，放不下的条目跳过，继续尝试后面更短的条目。</li>
+ * </ol>
+ * 被丢弃内容的估算 token 数记录在 {@code companion.context.tokens.saved} 指标中。
+ */
+@Slf4j
+@Component
+public class ContextPacker {
+
+    static final String MEMORY_SECTION = "相关记忆";
+    static final String KNOWLEDGE_SECTION = "相关专业知识";
+
+    private final ContextPackingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 待打包的一条上下文。
+     */
+    record Candidate(String text, double relevance, OffsetDateTime createdAt, boolean pinned) {
+    }
+
+    public ContextPacker(ContextPackingProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 打包记忆检索结果，返回 "[相关记忆]" 段落；没有可用内容时返回空字符串。
+     */
+    public String packMemories(List<SearchMemoryResponse> memories) {
+        List<Candidate> candidates = new ArrayList<>(memories.size());
+        for (SearchMemoryResponse m : memories) {
+            candidates.add(new Candidate(m.getContent(), m.getDistance(), m.getCreateTime(), m.isPinned()));
+        }
+        return pack(MEMORY_SECTION, candidates, properties.getMemoryTokenBudget());
+    }
+
+    /**
+     * 打包知识库检索结果，返回 "[相关专业知识]" 段落；没有可用内容时返回空字符串。
+     */
+    public String packKnowledge(List<KnowledgeSearchResult> chunks) {
+        List<Candidate> candidates = new ArrayList<>(chunks.size());
+        for (KnowledgeSearchResult k : chunks) {
+            candidates.add(new Candidate(k.getContent(), k.getDistance(), null, false));
+        }
+        return pack(KNOWLEDGE_SECTION, candidates, properties.getKnowledgeTokenBudget());
+    }
+
+    String pack(String section, List<Candidate> candidates, int budget) {
+        if (!properties.isEnabled()) {
+            return CommentPromptBuilder.section(section, candidates, Candidate::text);
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+        List<Candidate> ranked = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            if (StringUtils.hasText(candidate.text())) {
+                ranked.add(candidate);
+            }
+        }
+        ranked.sort(Comparator.comparing(Candidate::pinned).reversed()
+                .thenComparing(Comparator.comparingDouble((Candidate c) -> score(c, now)).reversed()));
+
+        List<Candidate> selected = new ArrayList<>();
+        List<Set<Integer>> selectedShingles = new ArrayList<>();
+        int usedTokens = 0;
+        int savedTokens = 0;
+        int duplicates = 0;
+        int overBudget = 0;
+        for (Candidate candidate : ranked) {
+            // 每条内容在段落中占用 "- " 前缀和换行
+            int tokens = TokenEstimator.estimate(candidate.text()) + 1;
+            Set<Integer> shingles = shingles(candidate.text());
+            if (isDuplicate(shingles, selectedShingles)) {
+                duplicates++;
+                savedTokens += tokens;
+                continue;
+            }
+            if (usedTokens + tokens > budget) {
+                overBudget++;
+                savedTokens += tokens;
+                continue;
+            }
+            selected.add(candidate);
+            selectedShingles.add(shingles);
+            usedTokens += tokens;
+        }
+
+        meterRegistry.summary("companion.context.tokens.packed", "section", section).record(usedTokens);
+        if (savedTokens > 0) {
+            meterRegistry.counter("companion.context.tokens.saved", "section", section).increment(savedTokens);
+            log.info("【上下文打包】[{}] 保留 {} 条 (约 {} tokens)，去重丢弃 {} 条，超出预算丢弃 {} 条，节省约 {} tokens",
+                    section, selected.size(), usedTokens, duplicates, overBudget, savedTokens);
+        }
+        return CommentPromptBuilder.section(section, selected, Candidate::text);
+    }
+
+    private double score(Candidate candidate, OffsetDateTime now) {
+        if (candidate.createdAt() == null) {
+            return candidate.relevance();
+        }
+        double ageSeconds = Math.max(0, Duration.between(candidate.createdAt(), now).toSeconds());
+        double halfLifeSeconds = Math.max(1, properties.getRecencyHalfLife().toSeconds());
+        double recency = Math.pow(0.5, ageSeconds / halfLifeSeconds);
+        double weight = properties.getRecencyWeight();
+        return candidate.relevance() * (1 - weight) + recency * weight;
+    }
+
+    private boolean isDuplicate(Set<Integer> shingles, List<Set<Integer>> selected) {
+        for (Set<Integer> other : selected) {
+            if (jaccard(shingles, other) >= properties.getDuplicateThreshold()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 字符二元组集合（忽略空白），两个字符压缩到一个 int 中。
+     */
+    static Set<Integer> shingles(String text) {
+        Set<Integer> shingles = new HashSet<>();
+        char prev = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (prev != 0) {
+                shingles.add((prev << 16) | c);
+            }
+            prev = c;
+        }
+        return shingles;
+    }
+
+    static double jaccard(Set<Integer> a, Set<Integer> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        Set<Integer> smaller = a.size() <= b.size() ? a : b;
+        Set<Integer> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (Integer shingle : smaller) {
+            if (larger.contains(shingle)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+}
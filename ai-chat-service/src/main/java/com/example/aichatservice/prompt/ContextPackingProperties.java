@@ -0,0 +1,56 @@
+package com.example.aichatservice.prompt;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 上下文打包配置，前缀 {@code companion.context.packing}。
+ * <pre>
+ * companion:
+ *   context:
+ *     packing:
+ *       memory-token-budget: 400
+ *       knowledge-token-budget: 600
+ *       recency-weight: 0.2
+ *       recency-half-life: P30D
+ *       duplicate-threshold: 0.8
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "companion.context.packing")
+public class ContextPackingProperties {
+
+    /**
+     * 关闭后退回到原样拼接全部检索结果。
+     */
+    private boolean enabled = true;
+
+    /**
+     * "[相关记忆]" 段的 token 预算。
+     */
+    private int memoryTokenBudget = 400;
+
+    /**
+     * "[相关专业知识]" 段的 token 预算。
+     */
+    private int knowledgeTokenBudget = 600;
+
+    /**
+     * 时效性在排序分数中的权重 [0, 1]，其余为相关性。只对带有创建时间的条目生效。
+     */
+    private double recencyWeight = 0.2;
+
+    /**
+     * 时效性分数的半衰期：创建时间每过去一个半衰期，时效性分数减半。
+     */
+    private Duration recencyHalfLife = Duration.ofDays(30);
+
+    /**
+     * 两条内容的字符二元组 Jaccard 相似度达到该阈值时视为重复，只保留分数更高的一条。
+     */
+    private double duplicateThreshold = 0.8;
+}
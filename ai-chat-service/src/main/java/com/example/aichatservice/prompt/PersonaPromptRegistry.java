@@ -0,0 +1,78 @@
+package com.example.aichatservice.prompt;
+
+import com.example.aichatservice.cache.PersonaChangedEvent;
+import com.example.aichatservice.entity.Persona;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * 人设提示词的编译结果注册表。
+ * <p>
+ * 每个人设只在第一次使用时编译一次，人设发生变更（包括其它实例上的变更）后丢弃旧的编译结果。
+ * 编译结果记录了来源人设的版本（{@code updatedAt}）：请求手里的人设与缓存的版本不一致时重新编译，
+ * 且只有不比缓存旧的版本才会写回。变更事件之后仍持有旧人设的请求即使把旧模板编译进来，
+ * 也只会返回给同一版本的请求，下一个携带新版本的请求就会覆盖它。
+ * 注册表容量有上限，超出后按 Caffeine 的淘汰策略丢弃不常用的人设。
+ */
+@Slf4j
+@Component
+public class PersonaPromptRegistry {
+
+    /**
+     * 一条编译结果及其来源。
+     *
+     * @param source  编译时使用的人设对象，同一个缓存实例直接命中
+     * @param version 编译时人设的 updatedAt，可能为 null
+     * @param prompt  编译结果
+     */
+    private record Entry(Persona source, Instant version, CompiledPersonaPrompt prompt) {
+
+        boolean matches(Persona persona) {
+            return source == persona || (version != null && version.equals(persona.getUpdatedAt()));
+        }
+
+        boolean isNewerThan(Persona persona) {
+            return version != null && (persona.getUpdatedAt() == null || version.isAfter(persona.getUpdatedAt()));
+        }
+    }
+
+    private final Cache<String, Entry> compiled;
+
+    public PersonaPromptRegistry(@Value("${companion.prompt.registry-max-size:10000}") long maxSize) {
+        this.compiled = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * 获取人设的编译结果，不存在或版本不一致时立即编译。没有ID的临时人设不做缓存。
+     */
+    public CompiledPersonaPrompt get(Persona persona) {
+        if (persona.getId() == null) {
+            return CompiledPersonaPrompt.compile(persona);
+        }
+        Entry cached = compiled.getIfPresent(persona.getId());
+        if (cached != null && cached.matches(persona)) {
+            return cached.prompt();
+        }
+        log.debug("【模板编译】正在编译人格 '{}' (ID: {}) 的场景模板", persona.getName(), persona.getId());
+        Entry fresh = new Entry(persona, persona.getUpdatedAt(), CompiledPersonaPrompt.compile(persona));
+        // 只保留较新的版本：并发编译时以 updatedAt 更晚的为准，旧人设的编译结果只给当前请求使用
+        compiled.asMap().merge(persona.getId(), fresh,
+                (existing, candidate) -> existing.isNewerThan(persona) ? existing : candidate);
+        return fresh.prompt();
+    }
+
+    @EventListener
+    public void onPersonaChanged(PersonaChangedEvent event) {
+        if (compiled.asMap().remove(event.personaId()) != null) {
+            log.debug("【模板编译】人格 {} 已变更，丢弃其编译结果", event.personaId());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.aichatservice.prompt;
+
+/**
+ * 本地 token 数估算器，用于上下文打包时的预算控制，不依赖模型的分词器。
+ * <p>
+ * 估算规则偏保守（宁可高估）：中日韩文字及全角符号每个字符按 1 个 token 计，
+ * 其余字符按每 4 个字符 1 个 token 计。只做一次字符遍历，不产生任何对象。
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int wide = 0;
+        int narrow = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x2E80) {
+                wide++;
+            } else {
+                narrow++;
+            }
+        }
+        return wide + (narrow + 3) / 4;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.aichatservice.resilience;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * 为 WebClient 调用套上与 Feign 客户端同名的熔断器和舱壁。
+ * <p>
+ * 熔断器/舱壁实例名与 Feign 客户端名一致（如 {@code memory-service}），因此 application.yaml 中
+ * {@code resilience4j.*.instances} 的配置对两种实现同样生效，指标也汇总在同一个实例下。
+ * 响应式舱壁不会排队等待许可，满了就直接拒绝，被拒绝的调用抛出
+ * {@link io.github.resilience4j.bulkhead.BulkheadFullException}，可用 {@link Rejections#isRejected} 判断。
+ */
+public class ReactiveResilience {
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+
+    public ReactiveResilience(CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
+    }
+
+    /**
+     * @param name 熔断器/舱壁实例名，与下游服务的 Feign 客户端名相同
+     * @param call 尚未订阅的下游调用
+     */
+    public <T> Mono<T> guard(String name, Mono<T> call) {
+        return call
+                .transformDeferred(BulkheadOperator.of(bulkheadRegistry.bulkhead(name)))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreakerRegistry.circuitBreaker(name)));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.aichatservice.resilience;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+
+/**
+ * 判断下游调用是否被熔断器或舱壁直接拒绝（请求根本没有发出）。
+ * Feign 的熔断集成会把这类异常包装在 NoFallbackAvailableException 中，因此需要沿着 cause 链查找。
+ */
+public final class Rejections {
+
+    private Rejections() {
+    }
+
+    public static boolean isRejected(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof CallNotPermittedException || t instanceof BulkheadFullException) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.aichatservice.resilience;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 下游 Feign 客户端的熔断器与舱壁指标。
+ * <p>
+ * 熔断/舱壁本身由 spring-cloud-circuitbreaker-resilience4j 按 Feign 客户端名分组创建（见 application.yaml 中的
+ * {@code resilience4j.*} 配置），这里把它们的状态导出到 actuator：
+ * <ul>
+ *     <li>{@code resilience4j.circuitbreaker.state} / {@code resilience4j.circuitbreaker.not.permitted.calls}：熔断器状态与被拒绝次数；</li>
+ *     <li>{@code resilience4j.bulkhead.available.concurrent.calls}：舱壁剩余并发数；</li>
+ *     <li>{@code companion.downstream.rejected}：按熔断器/舱壁名与原因统计的拒绝次数。</li>
+ * </ul>
+ */
+@Configuration
+public class ResilienceMetricsConfig {
+
+    @Bean
+    public MeterBinder circuitBreakerMetrics(ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry) {
+        return registry -> circuitBreakerRegistry.ifAvailable(cbRegistry -> {
+            TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(cbRegistry).bindTo(registry);
+            cbRegistry.getAllCircuitBreakers().forEach(cb -> countRejections(registry, cb));
+            cbRegistry.getEventPublisher().onEntryAdded(event -> countRejections(registry, event.getAddedEntry()));
+        });
+    }
+
+    @Bean
+    public MeterBinder bulkheadMetrics(ObjectProvider<BulkheadRegistry> bulkheadRegistry) {
+        return registry -> bulkheadRegistry.ifAvailable(bhRegistry -> {
+            TaggedBulkheadMetrics.ofBulkheadRegistry(bhRegistry).bindTo(registry);
+            bhRegistry.getAllBulkheads().forEach(bh -> countRejections(registry, bh));
+            bhRegistry.getEventPublisher().onEntryAdded(event -> countRejections(registry, event.getAddedEntry()));
+        });
+    }
+
+    private static void countRejections(MeterRegistry registry, CircuitBreaker circuitBreaker) {
+        circuitBreaker.getEventPublisher().onCallNotPermitted(event ->
+                registry.counter("companion.downstream.rejected", "name", circuitBreaker.getName(), "reason", "circuit_open").increment());
+    }
+
+    private static void countRejections(MeterRegistry registry, Bulkhead bulkhead) {
+        bulkhead.getEventPublisher().onCallRejected(event ->
+                registry.counter("companion.downstream.rejected", "name", bulkhead.getName(), "reason", "bulkhead_full").increment());
+    }
+}
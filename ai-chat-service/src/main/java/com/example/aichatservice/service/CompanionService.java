@@ -1,6 +1,15 @@
 package com.example.aichatservice.service;
 
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.pipeline.AssembledContext;
+import com.example.aichatservice.pipeline.CommentResult;
+import com.example.aichatservice.pipeline.PersonaContext;
+import com.example.aichatservice.pipeline.RetrievalResult;
 import com.example.dto.post.CommentReq;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 陪伴式评论生成服务的接口定义。
@@ -18,5 +27,89 @@ public interface CompanionService {
      * @param personaId 用户希望使用的AI人设的唯一ID。如果为null或空，则使用系统默认人设。
      * @return 生成的评论文本字符串。
      */
-    String generateComment(CommentReq req, String personaId, String userId);
+    default String generateComment(CommentReq req, String personaId, String userId) {
+        return generateCommentWithTimeline(req, personaId, userId).comment();
+    }
+
+    /**
+     * 与 {@link #generateComment} 相同，但同时返回本次请求的阶段时间线，供调试响应头使用。
+     *
+     * @param req       包含帖子内容、用户名等信息的评论请求对象。
+     * @param personaId 用户希望使用的AI人设的唯一ID。如果为null或空，则使用系统默认人设。
+     * @param userId    当前操作的用户ID。
+     * @return 评论文本及各阶段耗时。
+     */
+    CommentResult generateCommentWithTimeline(CommentReq req, String personaId, String userId);
+
+    /**
+     * 内部接口：为一位已加载的人设解析与帖子无关的上下文（编译好的模板、模型调用选项、用户长期洞察），
+     * 供多轮对话等会以同一人设多次生成评论的调用方在开始时解析一次，之后传给下面两个内部接口复用。
+     *
+     * @param persona 已加载的人设，调用方负责校验其存在。
+     * @param userId  当前操作的用户ID。
+     * @return 人设上下文，洞察服务失败或超时时洞察为空字符串。
+     */
+    PersonaContext resolvePersonaContext(Persona persona, String userId);
+
+    /**
+     * 内部接口：使用调用方提前解析的人设上下文与提前组装好的上下文生成评论，不再查询人设，
+     * 跳过视觉、分类与检索阶段，直接构建 Prompt 并调用模型。
+     * 供多轮对话等需要把上下文组装与模型生成错开执行的调用方使用。
+     *
+     * @param req     包含帖子内容、用户名等信息的评论请求对象。
+     * @param persona {@link #resolvePersonaContext} 的结果。
+     * @param userId  当前操作的用户ID。
+     * @param context {@link #assembleContext} 的结果，为 null 时现场组装（洞察沿用人设上下文中的）。
+     * @return 评论文本及各阶段耗时。
+     */
+    CommentResult generateCommentWithTimeline(CommentReq req, PersonaContext persona, String userId, AssembledContext context);
+
+    /**
+     * 内部接口：只执行上下文组装阶段（视觉、情绪与场景分类、检索），不调用模型生成评论。
+     * 各阶段并发执行，调用方线程上的大模型调用优先级会带到各阶段中。
+     *
+     * @param req       包含帖子内容、用户名等信息的评论请求对象。
+     * @param persona   {@link #resolvePersonaContext} 的结果，其中的洞察不会重新检索。
+     * @param userId    当前操作的用户ID。
+     * @param retrieval 可复用的检索结果；不为 null 时跳过检索阶段，只重新进行视觉分析与分类。
+     * @return 组装好的上下文，各阶段超时或失败时使用兜底值，{@link AssembledContext#degraded()} 为 true。
+     */
+    CompletableFuture<AssembledContext> assembleContext(CommentReq req, PersonaContext persona, String userId, RetrievalResult retrieval);
+
+    /**
+     * 以非阻塞方式生成一条评论。
+     * 默认实现只是在订阅时调用 {@link #generateCommentWithTimeline}，仍会占用订阅线程直到评论生成完毕；
+     * 非阻塞实现会覆盖此方法，整个过程中不占用线程等待下游。
+     *
+     * @param req       包含帖子内容、用户名等信息的评论请求对象。
+     * @param personaId 用户希望使用的AI人设的唯一ID。如果为null或空，则使用系统默认人设。
+     * @param userId    当前操作的用户ID。
+     * @return 评论文本及各阶段耗时。
+     */
+    default Mono<CommentResult> generateCommentAsync(CommentReq req, String personaId, String userId) {
+        return Mono.fromCallable(() -> generateCommentWithTimeline(req, personaId, userId));
+    }
+
+    /**
+     * 以流式方式生成一条评论，模型每输出一段文本就向下游推送一段。
+     * 上下文组装阶段与 {@link #generateComment} 完全一致，流结束后同样会将本次互动写回记忆。
+     *
+     * @param req       包含帖子内容、用户名等信息的评论请求对象。
+     * @param personaId 用户希望使用的AI人设的唯一ID。如果为null或空，则使用系统默认人设。
+     * @param userId    当前操作的用户ID。
+     * @return 评论文本片段组成的流。
+     */
+    Flux<String> streamComment(CommentReq req, String personaId, String userId);
+
+    /**
+     * 在用户打开帖子、尚未发表评论时提前组装上下文（视觉、情绪、场景、检索、语义缓存向量），
+     * 随后同一用户对同一帖子的评论请求会直接使用预取结果。调用立即返回，预取在后台进行。
+     * 默认实现不做任何事。
+     *
+     * @param req       与随后评论请求相同的帖子内容。
+     * @param personaId 用户希望使用的AI人设的唯一ID。如果为null或空，则使用系统默认人设。
+     * @param userId    当前操作的用户ID。
+     */
+    default void prefetch(CommentReq req, String personaId, String userId) {
+    }
 }
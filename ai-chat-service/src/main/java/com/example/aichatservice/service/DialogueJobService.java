@@ -0,0 +1,45 @@
+package com.example.aichatservice.service;
+
+import com.example.aichatservice.dto.dialogue.DialogueEvent;
+import com.example.aichatservice.dto.dialogue.DialogueJobResponse;
+import com.example.aichatservice.dto.dialogue.DialogueRequest;
+import reactor.core.publisher.Flux;
+
+/**
+ * 异步多人格对话任务：提交后立即返回任务ID，对话在后台执行，发言完成即持久化，客户端轮询或订阅进度。
+ */
+public interface DialogueJobService {
+
+    /**
+     * 提交一场对话。用户同时执行的任务数超过上限时抛出
+     * {@link com.example.aichatservice.exception.DialogueJobLimitExceededException}。
+     *
+     * @param request 包含对话主题、参与者和轮次的请求
+     * @param userId  发起对话的用户ID
+     * @return 新任务的状态（尚无发言）
+     */
+    DialogueJobResponse submit(DialogueRequest request, String userId);
+
+    /**
+     * 查询任务状态与序号大于 {@code afterTurn} 的发言。
+     *
+     * @param jobId     任务ID
+     * @param userId    当前用户ID，只能查询自己的任务
+     * @param afterTurn 客户端已收到的最后一条发言的序号，首次查询传 0
+     */
+    DialogueJobResponse getJob(String jobId, String userId, int afterTurn);
+
+    /**
+     * 订阅任务：先补发序号大于 {@code afterTurn} 的发言，之后每有新的发言即推送，
+     * 任务完成时推送总结与 token 用量，失败或取消时推送一条错误事件，然后结束。
+     * 任务可能在任意实例上执行，包括崩溃后被接管的情况。
+     */
+    Flux<DialogueEvent> subscribe(String jobId, String userId, int afterTurn);
+
+    /**
+     * 取消任务，已完成的发言保留。任务已经结束时不做任何事。
+     *
+     * @return 取消后的任务状态
+     */
+    DialogueJobResponse cancel(String jobId, String userId);
+}
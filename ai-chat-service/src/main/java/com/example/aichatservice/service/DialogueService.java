@@ -1,7 +1,14 @@
 package com.example.aichatservice.service;
 
+import com.example.aichatservice.dto.dialogue.DialogueEvent;
 import com.example.aichatservice.dto.dialogue.DialogueRequest;
 import com.example.aichatservice.dto.dialogue.DialogueResponse;
+import com.example.aichatservice.dto.dialogue.DialogueTurn;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * 多人格对话服务的业务逻辑接口。
@@ -16,4 +23,28 @@ public interface DialogueService {
      * @return 包含完整对话历史和最终总结的响应
      */
     DialogueResponse initiateDialogue(DialogueRequest request, String userId);
+
+    /**
+     * 以流式方式进行一次多个人格之间的对话：每位人格发言完成时推送一条发言事件，全部结束后推送总结事件。
+     * 取消订阅会停止剩余的模型调用。
+     *
+     * @param request 包含对话主题、参与者和轮次的请求
+     * @param userId  发起对话的用户ID
+     * @return 发言事件与总结事件组成的流
+     */
+    Flux<DialogueEvent> streamDialogue(DialogueRequest request, String userId);
+
+    /**
+     * 从已完成的发言之后继续一场对话，供异步对话任务在当前线程上执行或在实例崩溃后续跑。
+     * 已完成的发言不会重新生成，只用于恢复对话状态。
+     *
+     * @param request        原始的对话请求
+     * @param userId         发起对话的用户ID
+     * @param completedTurns 已完成的发言，按发言顺序，全新的对话传空列表
+     * @param onTurn         每完成一次新的发言时调用；抛出的异常会终止对话
+     * @param cancelled      返回 true 时不再发起新的模型调用，对话以 {@link java.util.concurrent.CancellationException} 结束
+     * @return 包含完整对话历史（含已完成的发言）和最终总结的响应
+     */
+    DialogueResponse resumeDialogue(DialogueRequest request, String userId, List<DialogueTurn> completedTurns,
+                                    Consumer<DialogueTurn> onTurn, BooleanSupplier cancelled);
 }
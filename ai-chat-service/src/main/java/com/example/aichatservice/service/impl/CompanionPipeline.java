@@ -0,0 +1,469 @@
+package com.example.aichatservice.service.impl;
+
+import com.example.aichatservice.cache.SemanticCommentCache;
+import com.example.aichatservice.classifier.ClassificationProperties;
+import com.example.aichatservice.classifier.JointClassifier;
+import com.example.aichatservice.classifier.PostClassification;
+import com.example.aichatservice.classifier.ScenarioClassifier;
+import com.example.aichatservice.classifier.ScenarioPrediction;
+import com.example.aichatservice.dto.EmotionAnalysisResponse;
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.memory.MemoryWriteBehindQueue;
+import com.example.aichatservice.pipeline.AssembledContext;
+import com.example.aichatservice.pipeline.CommentPipelineMetrics;
+import com.example.aichatservice.pipeline.CommentResult;
+import com.example.aichatservice.pipeline.CommentStage;
+import com.example.aichatservice.pipeline.PersonaContext;
+import com.example.aichatservice.pipeline.RetrievalResult;
+import com.example.aichatservice.pipeline.StageTimeline;
+import com.example.aichatservice.pipeline.VisionResult;
+import com.example.aichatservice.prefetch.ContextPrefetchCache;
+import com.example.aichatservice.prompt.CommentPromptBuilder;
+import com.example.aichatservice.prompt.ContextPacker;
+import com.example.aichatservice.prompt.PersonaPromptRegistry;
+import com.example.aichatservice.resilience.Rejections;
+import com.example.aichatservice.service.PersonaManagementService;
+import com.example.aichatservice.service.UserSettingsService;
+import com.example.dto.AI.BatchVisionAnalysisRequest;
+import com.example.dto.AI.BatchVisionAnalysisResponse;
+import com.example.dto.AI.InsightResponse;
+import com.example.dto.AI.KnowledgeSearchResult;
+import com.example.dto.AI.SearchMemoryResponse;
+import com.example.dto.post.CommentReq;
+import com.example.logging.LogPayload;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 评论生成流水线中与执行模型无关的部分，阻塞式（{@link CompanionServiceImpl}）与响应式
+ * （{@link ReactiveCompanionServiceImpl}）两种引擎共用：人设解析、预取的取用与记账、下游结果的解释与降级、
+ * 分类模式与对照复核、Prompt 组装、语义缓存、记忆写回以及生成阶段的指标。
+ * <p>
+ * 引擎只负责“如何发起下游调用并等待它”：用 Feign + 虚拟线程还是 WebClient + Reactor、截止时间如何实现。
+ * 本类中的方法都不做远程调用以外的等待，其中会访问数据库或模型的方法（人设解析、场景分类、帖子向量）
+ * 由引擎决定在哪个线程上执行。
+ */
+@Slf4j
+@Component
+public class CompanionPipeline {
+
+    private final PersonaManagementService personaService;
+    private final UserSettingsService userSettingsService;
+    private final ScenarioClassifier scenarioClassifier; // ✨ 本地优先、大模型兜底的场景分类器
+    private final JointClassifier jointClassifier; // ✨ 单次调用同时得出情绪与场景
+    private final ClassificationProperties classificationProperties;
+    private final PersonaPromptRegistry promptRegistry; // ✨ 预编译的人设提示词
+    private final ContextPacker contextPacker; // ✨ 按 token 预算挑选记忆与知识片段
+    private final SemanticCommentCache semanticCache; // ✨ 相似帖子的评论复用
+    private final MemoryWriteBehindQueue memoryWriteBehindQueue; // ✨ 记忆写回队列，评论不再等待记忆持久化
+    private final ContextPrefetchCache prefetchCache; // ✨ 用户打开帖子时预取的上下文
+    private final long visionBatchTimeoutMs; // ✨ 多图分析的整批截止时间，应小于单个调用的截止时间以便拿到部分结果
+    private final MeterRegistry meterRegistry;
+    private final Timer timeToFirstToken; // ✨ 流式评论的首 token 耗时 (TTFT)
+    private final CommentPipelineMetrics pipelineMetrics; // ✨ 按阶段发布耗时直方图
+
+    public CompanionPipeline(PersonaManagementService personaService,
+                             UserSettingsService userSettingsService,
+                             ScenarioClassifier scenarioClassifier,
+                             JointClassifier jointClassifier,
+                             ClassificationProperties classificationProperties,
+                             PersonaPromptRegistry promptRegistry,
+                             ContextPacker contextPacker,
+                             SemanticCommentCache semanticCache,
+                             MemoryWriteBehindQueue memoryWriteBehindQueue,
+                             ContextPrefetchCache prefetchCache,
+                             @Value("${companion.context.vision-batch-timeout-ms:4000}") long visionBatchTimeoutMs,
+                             MeterRegistry meterRegistry,
+                             CommentPipelineMetrics pipelineMetrics) {
+        this.personaService = personaService;
+        this.userSettingsService = userSettingsService;
+        this.scenarioClassifier = scenarioClassifier;
+        this.jointClassifier = jointClassifier;
+        this.classificationProperties = classificationProperties;
+        this.promptRegistry = promptRegistry;
+        this.contextPacker = contextPacker;
+        this.semanticCache = semanticCache;
+        this.memoryWriteBehindQueue = memoryWriteBehindQueue;
+        this.prefetchCache = prefetchCache;
+        this.visionBatchTimeoutMs = visionBatchTimeoutMs;
+        this.meterRegistry = meterRegistry;
+        this.timeToFirstToken = Timer.builder("companion.comment.stream.ttft")
+                .description("流式评论从请求开始到首个 token 返回的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    // ---------------------------------------------------------------- 人设
+
+    /**
+     * 1. 单条评论请求现场解析并决定使用哪个人设；洞察留给检索阶段按请求检索。可能查询数据库。
+     */
+    PersonaContext personaContextFor(String personaId, String userId) {
+        log.info("【评论生成-入口】用户 '{}' 开始生成评论，请求 personaId: '{}'", userId, personaId);
+        Persona persona = resolvePersona(personaId, userId);
+        log.debug("【评论生成-步骤1】已为用户 '{}' 加载人设: '{}' (ID: {})", userId, persona.getName(), persona.getId());
+        return personaContext(persona, null);
+    }
+
+    Persona resolvePersona(String personaId, String userId) {
+        return CompanionPipelineSupport.resolvePersona(personaService, userSettingsService, personaId, userId);
+    }
+
+    /**
+     * @param insightsContext 预先检索的长期洞察片段，为 null 时由检索阶段按请求检索
+     */
+    PersonaContext personaContext(Persona persona, String insightsContext) {
+        return CompanionPipelineSupport.personaContext(promptRegistry, persona, insightsContext);
+    }
+
+    // ---------------------------------------------------------------- 预取
+
+    boolean isPrefetchEnabled() {
+        return prefetchCache.isEnabled();
+    }
+
+    /**
+     * 2. 调用方已组装好的上下文，或用户打开帖子时发起的预取；两者都没有时返回 null，由引擎按阶段图现场组装。
+     */
+    CompletableFuture<AssembledContext> takePrefetched(CommentReq req, Persona persona, String userId,
+                                                       AssembledContext supplied) {
+        return supplied != null
+                ? CompletableFuture.completedFuture(supplied)
+                : prefetchCache.take(ContextPrefetchCache.Key.of(userId, persona.getId(), req));
+    }
+
+    /**
+     * 把预取覆盖的阶段以 {@code prefetched} 结果记入本次请求的时间线，耗时为等待预取完成的时间。
+     */
+    void recordPrefetched(AssembledContext assembled, CommentReq req, StageTimeline timeline, long waitStart) {
+        if (!CollectionUtils.isEmpty(req.imageUrls())) {
+            timeline.record(CommentStage.VISION, waitStart, StageTimeline.Outcome.PREFETCHED);
+        }
+        if ("separate".equals(assembled.classification().source())) {
+            timeline.record(CommentStage.EMOTION, waitStart, StageTimeline.Outcome.PREFETCHED);
+        }
+        timeline.record(CommentStage.SCENARIO, waitStart, StageTimeline.Outcome.PREFETCHED);
+        timeline.record(CommentStage.RETRIEVAL, waitStart, StageTimeline.Outcome.PREFETCHED);
+        log.info("【评论生成-预取】使用预取的上下文，等待 {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart));
+    }
+
+    /**
+     * 预取在 {@code companion.prefetch.max-wait} 内没有完成或预取失败时，评论请求改为现场组装上下文。
+     */
+    void prefetchUnavailable(Throwable e, String userId) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            log.warn("【评论生成-预取】用户 '{}' 的预取未在截止时间内完成，改为现场组装上下文", userId);
+        } else {
+            log.warn("【评论生成-预取】用户 '{}' 的预取失败，改为现场组装上下文: {}", userId, cause.getMessage());
+        }
+    }
+
+    /**
+     * 发起一次预取，同一用户-人格-帖子已有进行中的预取时跳过。
+     *
+     * @param assemble 引擎组装上下文（含帖子向量）的方式
+     */
+    boolean startPrefetch(CommentReq req, Persona persona, String userId,
+                          Supplier<CompletableFuture<AssembledContext>> assemble) {
+        boolean started = prefetchCache.start(ContextPrefetchCache.Key.of(userId, persona.getId(), req), assemble);
+        log.debug("【上下文预取】用户 '{}' 人格 '{}' 的预取{}", userId, persona.getId(), started ? "已发起" : "已在进行，跳过");
+        return started;
+    }
+
+    /**
+     * 预取时为语义缓存提前计算帖子向量，人格不参与语义缓存时为 null。会调用向量模型。
+     */
+    float[] embed(Persona persona, CommentReq req) {
+        return semanticCache.embed(persona.getId(), persona.isMemoryEnabled(), req.postContent());
+    }
+
+    // ---------------------------------------------------------------- 视觉
+
+    BatchVisionAnalysisRequest visionRequest(CommentReq req) {
+        log.info("【评论生成-视觉】检测到 {} 张图片，开始批量分析...", req.imageUrls().size());
+        return new BatchVisionAnalysisRequest(req.imageUrls(), visionBatchTimeoutMs);
+    }
+
+    VisionResult visionResultOf(BatchVisionAnalysisResponse response) {
+        return CompanionPipelineSupport.visionResultOf(response);
+    }
+
+    /**
+     * 视觉分析整体失败时不中断主流程，返回空结果。
+     */
+    VisionResult visionFailed(Throwable e) {
+        log.error("【评论生成-视觉】调用视觉分析服务时发生严重错误！将忽略图片信息继续流程。", e);
+        return VisionResult.EMPTY;
+    }
+
+    // ---------------------------------------------------------------- 分类
+
+    ClassificationProperties.Mode classificationMode(Persona persona) {
+        return classificationProperties.resolveMode(persona.getId());
+    }
+
+    /**
+     * 本次请求是否在后台用另一种模式复核分类结果，用于统计两种模式的标签一致率。
+     */
+    boolean sampleShadowClassification() {
+        return ThreadLocalRandom.current().nextDouble() < classificationProperties.getShadowSampleRate();
+    }
+
+    /**
+     * 按字段记录主模式与对照模式的标签是否一致。复核结果不会影响本次评论。
+     */
+    void recordShadowComparison(PostClassification primary, PostClassification other) {
+        recordAgreement("emotion", primary.emotion(), other.emotion());
+        recordAgreement("scenario", primary.scenario(), other.scenario());
+        log.info("【分类对比】主模式 {}: [{}, {}]，对照模式 {}: [{}, {}]", primary.source(), primary.emotion(), primary.scenario(),
+                other.source(), other.emotion(), other.scenario());
+    }
+
+    private void recordAgreement(String field, String primary, String shadow) {
+        meterRegistry.counter("companion.classification.agreement",
+                "field", field,
+                "result", Objects.equals(primary, shadow) ? "match" : "mismatch").increment();
+    }
+
+    /**
+     * 将情绪分析服务的响应转为大写的情绪标签；响应为空时返回默认情绪 NEUTRAL。
+     */
+    String emotionOf(EmotionAnalysisResponse response) {
+        if (response != null && StringUtils.hasText(response.getEmotion())) {
+            String emotion = response.getEmotion().toUpperCase(); // 将返回的String转为大写，以便作为Map的Key
+            log.info("【评论生成-步骤2.2】帖子情绪分析成功，结果: {}, 置信度: {}", emotion, response.getConfidence());
+            return emotion;
+        }
+        log.warn("【评论生成-步骤2.W】情绪分析服务返回为空，将使用默认情绪NEUTRAL。");
+        return CompanionPipelineSupport.DEFAULT_EMOTION;
+    }
+
+    String emotionFailed(Throwable e) {
+        log.error("【评论生成-步骤2.E】调用情绪分析服务失败！将使用默认情绪NEUTRAL。", e);
+        return CompanionPipelineSupport.DEFAULT_EMOTION;
+    }
+
+    /**
+     * 根据帖子、图片描述和情绪进行场景分类。
+     * 优先使用进程内的本地分类器，只有置信度不足时才会同步回退到大模型，分类失败时返回默认场景 neutral_reply。
+     */
+    String inferScenario(String originalQuery, String imageDescription, String emotion) {
+        log.info("【评论生成-步骤4.1-场景】开始进行场景分类...");
+        ScenarioPrediction prediction = scenarioClassifier.classify(originalQuery, imageDescription, emotion);
+        log.info("【评论生成-步骤4.2-场景】场景分类完成，结果: {} (来源: {})", prediction.scenario(), prediction.source());
+        return prediction.scenario();
+    }
+
+    /**
+     * 一次结构化大模型调用同时得出情绪和场景，同步调用模型。
+     */
+    PostClassification classifyJointly(String originalQuery, String imageDescription) {
+        return jointClassifier.classify(originalQuery, imageDescription);
+    }
+
+    // ---------------------------------------------------------------- 检索
+
+    /**
+     * 将长期洞察转为 "[用户长期关注点]" 上下文片段，没有洞察时为空字符串。
+     */
+    String insightsContextOf(InsightResponse insights) {
+        if (insights != null && !CollectionUtils.isEmpty(insights.getThemes())) {
+            log.info("【评论生成-步骤3.2】成功检索到用户长期洞察: {}", insights.getThemes());
+            return CommentPromptBuilder.section("用户长期关注点", insights.getThemes(), Function.identity());
+        }
+        log.info("【评论生成-步骤3.2】未找到用户长期洞察。");
+        return "";
+    }
+
+    /**
+     * 洞察服务失败不影响主流程。
+     */
+    String insightsFailed(Throwable e) {
+        log.error("【评论生成-步骤3.E】调用洞察服务失败！", e);
+        return "";
+    }
+
+    /**
+     * 按 token 预算打包检索到的记忆，返回 "[相关记忆]" 上下文片段。
+     */
+    String memoryContextOf(List<SearchMemoryResponse> memories) {
+        if (!CollectionUtils.isEmpty(memories)) {
+            log.info("【评论生成-步骤2.2】成功检索到 {} 条相关记忆。", memories.size());
+            return contextPacker.packMemories(memories);
+        }
+        log.info("【评论生成-步骤2.2】未找到相关记忆。");
+        return "";
+    }
+
+    /**
+     * 记忆服务失败会中断评论生成；熔断器打开或舱壁已满时请求不会发出，直接跳过这段上下文。
+     *
+     * @return 跳过时的空上下文
+     * @throws RuntimeException 记忆服务真正失败时
+     */
+    String memoryFailed(Throwable e) {
+        if (Rejections.isRejected(e)) {
+            log.warn("【评论生成-步骤2.E】记忆服务熔断或并发已满，本次跳过记忆检索: {}", e.getMessage());
+            return "";
+        }
+        log.error("【评论生成-步骤2.E】调用记忆服务失败！", e);
+        throw new RuntimeException("Downstream memory-service failed", e);
+    }
+
+    /**
+     * 按 token 预算打包检索到的知识片段，返回 "[相关专业知识]" 上下文片段。
+     */
+    String knowledgeContextOf(List<KnowledgeSearchResult> knowledgeChunks) {
+        if (!CollectionUtils.isEmpty(knowledgeChunks)) {
+            log.info("【评论生成-步骤3.2】成功检索到 {} 条相关知识片段。", knowledgeChunks.size());
+            return contextPacker.packKnowledge(knowledgeChunks);
+        }
+        log.info("【评论生成-步骤3.2】未找到相关专业知识。");
+        return "";
+    }
+
+    /**
+     * 知识库服务失败会中断评论生成；熔断器打开或舱壁已满时请求不会发出，直接跳过这段上下文。
+     *
+     * @return 跳过时的空上下文
+     * @throws RuntimeException 知识库服务真正失败时
+     */
+    String knowledgeFailed(Throwable e) {
+        if (Rejections.isRejected(e)) {
+            log.warn("【评论生成-步骤3.E】知识库服务熔断或并发已满，本次跳过知识检索: {}", e.getMessage());
+            return "";
+        }
+        log.error("【评论生成-步骤3.E】调用知识库服务失败！", e);
+        throw new RuntimeException("Downstream knowledge-service failed", e);
+    }
+
+    // ---------------------------------------------------------------- Prompt
+
+    /**
+     * 3~5. 按“图片 -> 洞察 -> 记忆 -> 知识”的顺序拼接上下文并构建 Prompt，两种引擎发给模型的内容因此完全一致。
+     *
+     * @param dialogueTurn 是否为多人格对话的发言（调用方提供了上下文），其内容取决于对话本身，不参与语义缓存
+     */
+    PreparedComment prepare(CommentReq req, PersonaContext personaContext, AssembledContext assembled,
+                            boolean dialogueTurn, StageTimeline timeline) {
+        PostClassification classification = assembled.classification();
+        VisionResult vision = assembled.vision();
+        RetrievalResult retrieval = assembled.retrieval();
+        String emotion = classification.emotion();
+        String scenario = classification.scenario();
+        String context = vision.contextSection()
+                + retrieval.insightsContext()
+                + retrieval.memoryContext()
+                + retrieval.knowledgeContext();
+        // 图片、长期洞察、记忆都是针对当前用户的上下文，带有它们的请求不能复用其他用户的评论
+        boolean personalized = dialogueTurn || !vision.isEmpty() || retrieval.isPersonalized()
+                || !CollectionUtils.isEmpty(req.imageUrls());
+        log.debug("【评论生成-耗时】上下文组装完成: {}", timeline.summary());
+
+        // 调用选项已在人设上下文中构建（人格有专属微调模型时使用该模型）
+        String systemPrompt = CompanionPipelineSupport.systemPrompt(personaContext, req, scenario, emotion);
+        String userPrompt = CommentPromptBuilder.userPrompt(req, context);
+        CompanionPipelineSupport.logPrompts(systemPrompt, userPrompt);
+
+        return new PreparedComment(personaContext.persona(), req.postContent(), scenario, emotion, personalized,
+                systemPrompt, userPrompt, personaContext.chatOptions(), assembled.embedding(), timeline);
+    }
+
+    // ---------------------------------------------------------------- 生成
+
+    /**
+     * 6. 【语义缓存】查找同一人格对高度相似帖子的历史评论。未预取向量时会调用向量模型。
+     */
+    SemanticCommentCache.Lookup lookupCache(CommentReq req, PreparedComment prepared) {
+        return semanticCache.lookup(
+                prepared.persona().getId(), prepared.persona().isMemoryEnabled(), prepared.personalized(),
+                prepared.scenario(), prepared.emotion(), CompanionPipelineSupport.maxLengthOf(req),
+                req, prepared.embedding());
+    }
+
+    /**
+     * 缓存命中时记录生成阶段并返回复用的评论。
+     */
+    Optional<CommentResult> cacheHit(SemanticCommentCache.Lookup lookup, StageTimeline timeline, long generationStart) {
+        Optional<String> cached = lookup.hit();
+        if (cached.isEmpty()) {
+            return Optional.empty();
+        }
+        timeline.record(CommentStage.GENERATION, generationStart, StageTimeline.Outcome.CACHE_HIT);
+        log.info("【评论生成-步骤5】语义缓存命中，跳过 AI 模型调用: '{}'", LogPayload.truncate(cached.get()));
+        log.info("【评论生成-耗时】{}", timeline.summary());
+        return Optional.of(new CommentResult(cached.get(), timeline));
+    }
+
+    /**
+     * 7~8. 模型返回完整评论后：记录生成阶段、写入语义缓存、放入记忆写回队列。
+     */
+    CommentResult completeComment(PreparedComment prepared, SemanticCommentCache.Lookup lookup, String userId,
+                                  String comment, long generationStart) {
+        StageTimeline timeline = prepared.timeline();
+        timeline.record(CommentStage.GENERATION, generationStart);
+        log.info("【评论生成-步骤5】AI 模型成功返回评论: '{}'", LogPayload.truncate(comment));
+        semanticCache.put(lookup, comment);
+        writeBackToMemory(prepared, userId, comment);
+        log.info("【评论生成-耗时】{}", timeline.summary());
+        return new CommentResult(comment, timeline);
+    }
+
+    /**
+     * 记录流式评论的首 token 耗时。
+     */
+    void recordFirstToken(long startNanos) {
+        long ttftNanos = System.nanoTime() - startNanos;
+        timeToFirstToken.record(ttftNanos, TimeUnit.NANOSECONDS);
+        log.info("【评论生成-流式】首个 token 已返回，TTFT: {}ms", TimeUnit.NANOSECONDS.toMillis(ttftNanos));
+    }
+
+    /**
+     * 流式评论正常结束后：记录生成阶段并写回记忆。流式输出不经过语义缓存。
+     */
+    void completeStream(PreparedComment prepared, String userId, String comment, long generationStart) {
+        StageTimeline timeline = prepared.timeline();
+        timeline.record(CommentStage.GENERATION, generationStart);
+        log.info("【评论生成-流式】AI 模型流式输出完成，评论: '{}'", LogPayload.truncate(comment));
+        writeBackToMemory(prepared, userId, comment);
+        log.info("【评论生成-耗时】{}", timeline.summary());
+    }
+
+    /**
+     * 无论成功与否，请求结束时都把阶段时间线发布为指标。
+     */
+    void publish(StageTimeline timeline) {
+        pipelineMetrics.publish(timeline);
+    }
+
+    /**
+     * 若人格启用了记忆且生成了有效评论，则将本次互动放入记忆写回队列。
+     * 入队操作不会阻塞，真正的写入由队列按用户-人格对批量完成；时间线中的记忆写回阶段只包含入队耗时。
+     */
+    private void writeBackToMemory(PreparedComment prepared, String userId, String comment) {
+        if (prepared.persona().isMemoryEnabled() && StringUtils.hasText(comment)) {
+            long writeStart = System.nanoTime();
+            memoryWriteBehindQueue.enqueue(userId, prepared.persona().getId(),
+                    CompanionPipelineSupport.memoryContent(prepared.originalQuery(), comment));
+            prepared.timeline().record(CommentStage.MEMORY_WRITE, writeStart);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.aichatservice.service.impl;
+
+import com.example.aichatservice.classifier.ScenarioClassifier;
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.exception.PersonaNotFoundException;
+import com.example.aichatservice.pipeline.PersonaContext;
+import com.example.aichatservice.pipeline.StageTimeline;
+import com.example.aichatservice.pipeline.VisionResult;
+import com.example.aichatservice.prompt.CompiledPersonaPrompt;
+import com.example.aichatservice.prompt.PersonaPromptRegistry;
+import com.example.aichatservice.service.PersonaManagementService;
+import com.example.aichatservice.service.UserSettingsService;
+import com.example.dto.AI.BatchVisionAnalysisResponse;
+import com.example.dto.post.CommentReq;
+import com.example.logging.LogPayload;
+import com.example.logging.LogSampling;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.zhipuai.ZhiPuAiChatOptions;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 阻塞式与响应式评论生成共用的无状态逻辑：人设解析、Prompt 与调用选项构建、视觉结果合并。
+ * 两种实现只在“如何发起下游调用”上不同，这里保证它们发给模型的内容完全一致。
+ */
+@Slf4j
+final class CompanionPipelineSupport {
+
+    static final String DEFAULT_EMOTION = "NEUTRAL";
+    static final String DEFAULT_SCENARIO = ScenarioClassifier.DEFAULT_SCENARIO;
+    static final String SYSTEM_DEFAULT_PERSONA_ID = "system_default_warm_companion";
+    private static final int PROMPT_LOG_MAX_CHARS = 4000;
+    private static final Persona SYSTEM_DEFAULT_PERSONA = buildSystemDefaultPersona();
+
+    private CompanionPipelineSupport() {
+    }
+
+    /**
+     * 解析并决定使用哪个人设的策略中心。
+     * 人设与用户设置都有本地缓存，绝大多数请求不会访问数据库。
+     *
+     * @param personaId 前端传入的可选 personaId
+     * @param userId    当前操作的用户ID
+     * @return 最终决定使用的人设对象
+     */
+    static Persona resolvePersona(PersonaManagementService personaService, UserSettingsService userSettingsService,
+                                  String personaId, String userId) {
+        // 策略1：如果前端明确指定了 personaId，则优先使用它。
+        if (StringUtils.hasText(personaId)) {
+            log.debug("策略1：使用前端指定的 personaId '{}'", personaId);
+            try {
+                return personaService.getPersonaById(personaId);
+            } catch (PersonaNotFoundException e) {
+                log.warn("指定的 personaId '{}' 未找到，将回退到默认策略。", personaId);
+            }
+        }
+
+        // 策略2：尝试查找该用户的默认人设。 (✨ TODO 已实现!)
+        log.debug("策略2：尝试为用户 '{}' 查找其设置的默认人设", userId);
+        Optional<String> defaultPersonaIdOpt = userSettingsService.findDefaultPersonaIdForUser(userId);
+        if (defaultPersonaIdOpt.isPresent()) {
+            String defaultPersonaId = defaultPersonaIdOpt.get();
+            try {
+                log.debug("找到了用户 '{}' 的默认人设ID: '{}'，正在加载...", userId, defaultPersonaId);
+                return personaService.getPersonaById(defaultPersonaId);
+            } catch (PersonaNotFoundException e) {
+                log.warn("用户 '{}' 的默认人设ID '{}' 无效或已被删除，将使用系统默认。", userId, defaultPersonaId);
+            }
+        }
+
+        // 策略3：如果以上两步都没有找到人设，则使用系统全局的保底人设。
+        log.debug("策略3：用户 '{}' 未指定人设且未设置默认人设，使用系统全局默认", userId);
+        return systemDefaultPersona();
+    }
+
+    static Persona systemDefaultPersona() {
+        return SYSTEM_DEFAULT_PERSONA;
+    }
+
+    /**
+     * 系统保底人设（温情陪伴者）。全局只有这一个实例，编译注册表按实例识别它，模板只编译一次；
+     * 它被所有请求共享，调用方不得修改。
+     */
+    private static Persona buildSystemDefaultPersona() {
+        Persona defaultPersona = new Persona();
+        defaultPersona.setId(SYSTEM_DEFAULT_PERSONA_ID);
+        defaultPersona.setName("温情陪伴者");
+        defaultPersona.setRole("温情、可靠、边界清晰的长情陪伴者");
+        defaultPersona.setTone("温柔、尊重、不过度干预；像长期朋友");
+        defaultPersona.setStyle("先共情再建议；多用第二人称；短句+分点；不过度热情");
+        defaultPersona.setCommentTemplates(Map.of(
+                "celebrate", "{name}，看完你这段分享替你开心！{specific_detail} 来之不易，能感受到你的努力与专注。愿好状态延续～如果愿意，也想听你说说：这一程里最关键的一步是什么？{emoji}",
+                "comfort", "{name}，抱抱你。我读到你的{specific_detail}，能想象这段时间不容易。先允许自己慢一点、松一松，已经很勇敢了。不妨从一件可执行的小事开始，比如{micro_step}，给自己一点点可见的改善。{emoji}",
+                "encourage", "{name}，能把心情写下来本身就很不容易。我注意到{specific_detail}，说明你在认真面对。也许我们可以用“一步/一天”的节奏，先做{micro_step}；我会在这里陪你一起走一小步。{emoji}",
+                "gentle_reminder", "{name}，读到你的{specific_detail}，我也替你捏了把汗～或许可以提前准备{prep_suggestion}，把不确定降到最低。需要我帮你列个简单清单吗？{emoji}",
+                "neutral_reply", "{name}，我看见你分享了{specific_detail}，很有生活气息。也好奇：这件事里，哪个瞬间最让你难忘？{emoji}"
+        ));
+        return defaultPersona;
+    }
+
+    /**
+     * 指标中使用的人格类型：系统保底人格、带专属微调模型的人格、普通用户人格。
+     * 不使用人格ID作为标签，避免指标基数随人格数量增长。
+     */
+    static String personaTypeOf(Persona persona) {
+        if (SYSTEM_DEFAULT_PERSONA_ID.equals(persona.getId())) {
+            return "system_default";
+        }
+        return StringUtils.hasText(persona.getFineTunedModelId()) ? "fine_tuned" : "user";
+    }
+
+    static boolean hasKnowledgeBase(Persona persona) {
+        return persona.getKnowledgeBaseId() != null && persona.getKnowledgeBaseId() > 0;
+    }
+
+    /**
+     * 组装人设上下文：取出（必要时编译）人设的模板查找表并构建调用选项。
+     *
+     * @param insightsContext 预先检索的长期洞察片段，为 null 时由检索阶段按请求检索
+     */
+    static PersonaContext personaContext(PersonaPromptRegistry promptRegistry, Persona persona, String insightsContext) {
+        return new PersonaContext(persona, promptRegistry.get(persona), chatOptionsFor(persona), insightsContext);
+    }
+
+    static int maxLengthOf(CommentReq req) {
+        return req.maxLength() != null ? req.maxLength() : CompiledPersonaPrompt.DEFAULT_MAX_LENGTH;
+    }
+
+    /**
+     * 根据场景与情绪选择模板来构建 System Prompt。
+     * 人设的模板在第一次使用时被编译成「场景 × 情绪」查找表，这里只需查表并拼上字数限制。
+     */
+    static String systemPrompt(PersonaContext personaContext, CommentReq req, String scenario, String emotion) {
+        CompiledPersonaPrompt.Selection selection = personaContext.prompt().select(scenario, emotion);
+        log.info("【模板选择】根据场景 '{}' 和情绪 '{}'，最终选择的模板是: '{}'", scenario, emotion, selection.template());
+
+        return selection.prompt(maxLengthOf(req));
+    }
+
+    /**
+     * 完整 Prompt 只在被抽样的请求中输出（见 logging.sampling.rate / X-Log-Sample），并屏蔽其中的联系方式。
+     */
+    static void logPrompts(String systemPrompt, String userPrompt) {
+        if (log.isDebugEnabled() && LogSampling.isSampled()) {
+            log.debug("【评论生成-步骤4】构建完成的 System Prompt:\n---\n{}\n---", LogPayload.redact(systemPrompt, PROMPT_LOG_MAX_CHARS));
+            log.debug("【评论生成-步骤4】构建完成的 User Prompt (含上下文):\n---\n{}\n---", LogPayload.redact(userPrompt, PROMPT_LOG_MAX_CHARS));
+        }
+    }
+
+    /**
+     * 动态构建调用选项：人格有关联的专属微调模型时在本次调用中指定该模型，
+     * 否则不指定模型，使用 application.yml 中配置的默认模型 (如 glm-4v)。
+     */
+    static ZhiPuAiChatOptions chatOptionsFor(Persona persona) {
+        ZhiPuAiChatOptions.Builder optionsBuilder = ZhiPuAiChatOptions.builder();
+        if (StringUtils.hasText(persona.getFineTunedModelId())) {
+            String modelId = persona.getFineTunedModelId();
+            optionsBuilder.model(modelId);
+            log.info("【模型选择】人格 '{}' 拥有专属微调模型 '{}'，本次调用将使用该模型。", persona.getName(), modelId);
+        } else {
+            log.info("【模型选择】人格 '{}' 未指定专属模型，本次调用将使用默认模型。", persona.getName());
+        }
+        return optionsBuilder.build();
+    }
+
+    /**
+     * 写回记忆的互动内容。
+     */
+    static String memoryContent(String originalQuery, String comment) {
+        return String.format("用户提问/帖子内容摘要: %s\n我的回答: %s", originalQuery, comment);
+    }
+
+    /**
+     * 将批量视觉分析结果按图片原顺序合并，超时或失败的图片直接跳过。
+     */
+    static VisionResult visionResultOf(BatchVisionAnalysisResponse response) {
+        if (response == null || CollectionUtils.isEmpty(response.getResults())) {
+            log.warn("【评论生成-视觉】视觉分析服务返回了空结果。");
+            return VisionResult.EMPTY;
+        }
+
+        boolean multiple = response.getResults().size() > 1;
+        List<String> descriptions = new ArrayList<>();
+        for (BatchVisionAnalysisResponse.ImageResult result : response.getResults()) {
+            if ("OK".equals(result.getStatus()) && StringUtils.hasText(result.getDescription())) {
+                descriptions.add(multiple ? "图" + (result.getIndex() + 1) + "：" + result.getDescription() : result.getDescription());
+            } else {
+                log.warn("【评论生成-视觉】第 {} 张图片未能获得描述，状态: {}", result.getIndex() + 1, result.getStatus());
+            }
+        }
+        log.info("【评论生成-视觉】成功获取 {}/{} 张图片的描述", descriptions.size(), response.getResults().size());
+        return VisionResult.of(descriptions);
+    }
+
+    /**
+     * 一次下游调用在时间线中的结果：超时与其它错误分开记录。{@link CompletionException} 会先解包。
+     */
+    static StageTimeline.Outcome outcomeOf(Throwable ex) {
+        if (ex == null) {
+            return StageTimeline.Outcome.SUCCESS;
+        }
+        Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+        return cause instanceof TimeoutException ? StageTimeline.Outcome.TIMEOUT : StageTimeline.Outcome.ERROR;
+    }
+}
@@ -0,0 +1,400 @@
+package com.example.aichatservice.service.impl;
+
+import com.example.aichatservice.dialogue.DialogueJob;
+import com.example.aichatservice.dialogue.DialogueJobStatus;
+import com.example.aichatservice.dto.dialogue.DialogueEvent;
+import com.example.aichatservice.dto.dialogue.DialogueJobResponse;
+import com.example.aichatservice.dto.dialogue.DialogueRequest;
+import com.example.aichatservice.dto.dialogue.DialogueResponse;
+import com.example.aichatservice.dto.dialogue.DialogueTurn;
+import com.example.aichatservice.exception.DialogueJobLimitExceededException;
+import com.example.aichatservice.exception.DialogueJobNotFoundException;
+import com.example.aichatservice.service.DialogueJobService;
+import com.example.aichatservice.service.DialogueService;
+import com.example.logging.LogSampling;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 异步多人格对话任务的实现。
+ * <p>
+ * 任务保存在 {@code dialogue_jobs} 集合中，在提交它的实例上执行，每次发言完成即追加到文档中。
+ * 执行实例通过心跳持有任务的租约；实例崩溃后租约过期，任意实例的恢复任务会接管它，
+ * 并通过 {@link DialogueService#resumeDialogue} 从最后一条已完成的发言继续。
+ * 所有写操作都以“当前实例仍是执行者且任务仍在执行”为条件，被取消或被接管的任务在下一次写入或心跳时停止。
+ * <p>
+ * 每个用户同时执行的任务数由执行槽位限制：提交时依次尝试占用 [0, 上限) 中的槽位，
+ * (userId, slot) 上只覆盖 RUNNING 任务的唯一索引保证多实例并发提交时也不会超出上限；
+ * 任务完成、失败或取消后离开该索引，槽位自动释放，被接管的任务沿用原来的槽位。
+ */
+@Slf4j
+@Service
+public class DialogueJobServiceImpl implements DialogueJobService {
+
+    // 每次恢复轮询最多接管的任务数，避免一个实例在其它实例重启时接走全部任务
+    private static final int MAX_RECOVERIES_PER_POLL = 10;
+
+    private final DialogueService dialogueService;
+    private final MongoTemplate mongoTemplate;
+    private final ExecutorService jobExecutor;
+    private final MeterRegistry meterRegistry;
+    private final int maxActivePerUser;
+    private final Duration leaseTimeout;
+    private final Duration pollInterval;
+    private final Duration retention;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // 本实例正在执行的任务
+    private final Map<String, RunningJob> running = new ConcurrentHashMap<>();
+    private volatile boolean shuttingDown;
+
+    public DialogueJobServiceImpl(DialogueService dialogueService,
+                                  MongoTemplate mongoTemplate,
+                                  @Qualifier("companionContextExecutor") ExecutorService jobExecutor,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${companion.dialogue.jobs.max-active-per-user:2}") int maxActivePerUser,
+                                  @Value("${companion.dialogue.jobs.lease-timeout:PT1M}") Duration leaseTimeout,
+                                  @Value("${companion.dialogue.jobs.poll-interval:PT1S}") Duration pollInterval,
+                                  @Value("${companion.dialogue.jobs.retention:P7D}") Duration retention) {
+        this.dialogueService = dialogueService;
+        this.mongoTemplate = mongoTemplate;
+        this.jobExecutor = jobExecutor;
+        this.meterRegistry = meterRegistry;
+        this.maxActivePerUser = maxActivePerUser;
+        this.leaseTimeout = leaseTimeout;
+        this.pollInterval = pollInterval;
+        this.retention = retention;
+        Gauge.builder("companion.dialogue.jobs.running", running, Map::size)
+                .description("本实例正在执行的对话任务数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 本实例上一个任务的执行句柄。
+     */
+    private static final class RunningJob {
+
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile Future<?> task;
+
+        private void cancel() {
+            cancelled.set(true);
+            Future<?> current = task;
+            if (current != null) {
+                current.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 订阅时一次轮询得到的新事件，以及任务是否已经结束。
+     */
+    private record Progress(List<DialogueEvent> events, boolean finished) {
+    }
+
+    @PostConstruct
+    void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(DialogueJob.class);
+        indexOps.ensureIndex(new Index().on("userId", Sort.Direction.ASC).on("slot", Sort.Direction.ASC).unique()
+                .partial(PartialIndexFilter.of(Criteria.where("status").is(DialogueJobStatus.RUNNING.name())
+                        .and("slot").exists(true))));
+        indexOps.ensureIndex(new Index().on("status", Sort.Direction.ASC).on("heartbeatAt", Sort.Direction.ASC));
+        indexOps.ensureIndex(new Index().on("finishedAt", Sort.Direction.ASC).expire(retention));
+    }
+
+    @Override
+    public DialogueJobResponse submit(DialogueRequest request, String userId) {
+        Instant now = Instant.now();
+        DialogueJob job = new DialogueJob();
+        job.setUserId(userId);
+        job.setRequest(request);
+        job.setStatus(DialogueJobStatus.RUNNING);
+        job.setOwner(instanceId);
+        job.setHeartbeatAt(now);
+        job.setCreatedAt(now);
+        job.setUpdatedAt(now);
+        job = insertIntoFreeSlot(job);
+        if (job == null) {
+            count("rejected");
+            log.warn("【对话任务-拒绝】用户 '{}' 进行中的对话任务已达到上限 {}", userId, maxActivePerUser);
+            throw new DialogueJobLimitExceededException(
+                    "同时进行中的对话不能超过 " + maxActivePerUser + " 个，请等待之前的对话完成后再试。");
+        }
+        count("submitted");
+        log.info("【对话任务-提交】用户 '{}' 提交了关于 '{}' 的对话任务 {}", userId, request.getTopic(), job.getId());
+
+        launch(job);
+        return toResponse(job, 0);
+    }
+
+    /**
+     * 依次尝试以每个槽位插入任务，槽位已被该用户的其它 RUNNING 任务占用时唯一索引拒绝插入。
+     *
+     * @return 插入后的任务；所有槽位都被占用时返回 null
+     */
+    private DialogueJob insertIntoFreeSlot(DialogueJob job) {
+        for (int slot = 0; slot < maxActivePerUser; slot++) {
+            job.setSlot(slot);
+            try {
+                return mongoTemplate.insert(job);
+            } catch (DuplicateKeyException e) {
+                // 槽位已被占用，换下一个重试
+                job.setId(null);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public DialogueJobResponse getJob(String jobId, String userId, int afterTurn) {
+        return toResponse(load(jobId, userId), afterTurn);
+    }
+
+    @Override
+    public Flux<DialogueEvent> subscribe(String jobId, String userId, int afterTurn) {
+        load(jobId, userId);
+        AtomicInteger delivered = new AtomicInteger(afterTurn);
+        // 任务可能在其它实例上执行，统一从 Mongo 轮询进度
+        return Flux.interval(Duration.ZERO, pollInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromCallable(() -> Optional.ofNullable(mongoTemplate.findById(jobId, DialogueJob.class)))
+                        .subscribeOn(Schedulers.boundedElastic()), 1)
+                .map(job -> job.map(j -> progress(j, delivered))
+                        .orElseGet(() -> new Progress(List.of(DialogueEvent.error("对话任务不存在或已过期")), true)))
+                .takeUntil(Progress::finished)
+                .concatMapIterable(Progress::events);
+    }
+
+    @Override
+    public DialogueJobResponse cancel(String jobId, String userId) {
+        load(jobId, userId);
+        Instant now = Instant.now();
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(jobId).and("status").is(DialogueJobStatus.RUNNING)),
+                new Update().set("status", DialogueJobStatus.CANCELLED).set("updatedAt", now).set("finishedAt", now),
+                DialogueJob.class);
+        if (result.getModifiedCount() > 0) {
+            count("cancelled");
+            log.info("【对话任务-取消】用户 '{}' 取消了对话任务 {}", userId, jobId);
+        }
+        // 在其它实例上执行的任务会在下一次写入或心跳时发现已被取消
+        RunningJob local = running.get(jobId);
+        if (local != null) {
+            local.cancel();
+        }
+        return toResponse(load(jobId, userId), 0);
+    }
+
+    /**
+     * 刷新本实例所执行任务的租约；已被取消或已被其它实例接管的任务在本实例上停止。
+     */
+    @Scheduled(fixedDelayString = "${companion.dialogue.jobs.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        Instant now = Instant.now();
+        running.forEach((jobId, runningJob) -> {
+            try {
+                UpdateResult result = mongoTemplate.updateFirst(ownedRunning(jobId), Update.update("heartbeatAt", now),
+                        DialogueJob.class);
+                if (result.getMatchedCount() == 0) {
+                    log.info("【对话任务-停止】任务 {} 已被取消或已由其它实例接管，停止本实例上的执行", jobId);
+                    runningJob.cancel();
+                }
+            } catch (Exception e) {
+                log.warn("【对话任务-心跳】刷新任务 {} 的租约失败，将在下次心跳时重试", jobId, e);
+            }
+        });
+    }
+
+    /**
+     * 接管租约已过期的任务（执行实例崩溃或失联），从最后一条已完成的发言继续。
+     */
+    @Scheduled(fixedDelayString = "${companion.dialogue.jobs.recovery-interval-ms:30000}")
+    public void recoverOrphanedJobs() {
+        for (int i = 0; i < MAX_RECOVERIES_PER_POLL && !shuttingDown; i++) {
+            Instant now = Instant.now();
+            Query orphaned = Query.query(Criteria.where("status").is(DialogueJobStatus.RUNNING)
+                    .and("heartbeatAt").lt(now.minus(leaseTimeout)));
+            Update claim = new Update().set("owner", instanceId).set("heartbeatAt", now).set("updatedAt", now);
+            DialogueJob job;
+            try {
+                job = mongoTemplate.findAndModify(orphaned, claim, FindAndModifyOptions.options().returnNew(true),
+                        DialogueJob.class);
+            } catch (Exception e) {
+                log.warn("【对话任务-接管】查询失联任务失败，将在下次轮询时重试", e);
+                return;
+            }
+            if (job == null) {
+                return;
+            }
+            count("resumed");
+            log.info("【对话任务-接管】任务 {} 的执行实例已失联，本实例从第 {} 次发言继续", job.getId(), job.getTurns().size() + 1);
+            launch(job);
+        }
+    }
+
+    /**
+     * 关闭时停止本实例上的任务并释放租约，其它实例在下一次恢复轮询时即可接管，无需等待租约过期。
+     */
+    @PreDestroy
+    void releaseLeases() {
+        shuttingDown = true;
+        running.values().forEach(RunningJob::cancel);
+        try {
+            mongoTemplate.updateMulti(Query.query(Criteria.where("owner").is(instanceId)
+                            .and("status").is(DialogueJobStatus.RUNNING)),
+                    Update.update("heartbeatAt", Instant.EPOCH), DialogueJob.class);
+        } catch (Exception e) {
+            log.warn("【对话任务-关闭】释放任务租约失败，其它实例将在租约过期后接管", e);
+        }
+    }
+
+    private void launch(DialogueJob job) {
+        RunningJob runningJob = new RunningJob();
+        running.put(job.getId(), runningJob);
+        // 任务线程带上提交请求的 MDC（抽样标记、traceId）
+        Supplier<DialogueJobStatus> execution = LogSampling.propagate(() -> execute(job, runningJob));
+        runningJob.task = jobExecutor.submit(execution::get);
+    }
+
+    private DialogueJobStatus execute(DialogueJob job, RunningJob runningJob) {
+        String jobId = job.getId();
+        try {
+            DialogueResponse response = dialogueService.resumeDialogue(job.getRequest(), job.getUserId(), job.getTurns(),
+                    turn -> persistTurn(jobId, turn, runningJob), runningJob.cancelled::get);
+            return finish(jobId, DialogueJobStatus.COMPLETED, new Update()
+                    .set("summary", response.getSummary())
+                    .set("tokenUsage", response.getTokenUsage()));
+        } catch (RuntimeException e) {
+            if (e instanceof CancellationException || runningJob.cancelled.get() || shuttingDown) {
+                // 用户取消时状态已经写入；被接管或本实例关闭时保持 RUNNING，由新的执行者继续
+                log.info("【对话任务-停止】任务 {} 已在本实例上停止", jobId);
+                return DialogueJobStatus.CANCELLED;
+            }
+            log.error("【对话任务-失败】任务 {} 执行出错", jobId, e);
+            return finish(jobId, DialogueJobStatus.FAILED, Update.update("error", e.getMessage()));
+        } finally {
+            running.remove(jobId, runningJob);
+        }
+    }
+
+    /**
+     * 追加一条发言并顺便刷新租约。以已完成发言数为条件，同一条发言不会被写入两次。
+     */
+    private void persistTurn(String jobId, DialogueTurn turn, RunningJob runningJob) {
+        Instant now = Instant.now();
+        Query query = ownedRunning(jobId).addCriteria(Criteria.where("turns").size(turn.getIndex() - 1));
+        UpdateResult result = mongoTemplate.updateFirst(query,
+                new Update().push("turns", turn).set("heartbeatAt", now).set("updatedAt", now), DialogueJob.class);
+        if (result.getMatchedCount() == 0) {
+            runningJob.cancelled.set(true);
+            throw new CancellationException("对话任务已被取消或已由其它实例接管");
+        }
+    }
+
+    private DialogueJobStatus finish(String jobId, DialogueJobStatus status, Update update) {
+        Instant now = Instant.now();
+        update.set("status", status).set("updatedAt", now).set("finishedAt", now);
+        try {
+            UpdateResult result = mongoTemplate.updateFirst(ownedRunning(jobId), update, DialogueJob.class);
+            if (result.getMatchedCount() == 0) {
+                log.info("【对话任务-结束】任务 {} 已被取消或已由其它实例接管，本实例的结果不写入", jobId);
+                return status;
+            }
+            count(status.name().toLowerCase(Locale.ROOT));
+            log.info("【对话任务-结束】任务 {} 状态: {}", jobId, status);
+        } catch (Exception e) {
+            // 写入失败时任务保持 RUNNING，租约过期后由恢复任务续跑（只需重新生成总结）
+            log.warn("【对话任务-结束】写入任务 {} 的结果失败，将在租约过期后续跑", jobId, e);
+        }
+        return status;
+    }
+
+    private Query ownedRunning(String jobId) {
+        return Query.query(Criteria.where("_id").is(jobId)
+                .and("owner").is(instanceId)
+                .and("status").is(DialogueJobStatus.RUNNING));
+    }
+
+    private DialogueJob load(String jobId, String userId) {
+        DialogueJob job = mongoTemplate.findById(jobId, DialogueJob.class);
+        if (job == null || !job.getUserId().equals(userId)) {
+            throw new DialogueJobNotFoundException("对话任务不存在: " + jobId);
+        }
+        return job;
+    }
+
+    /**
+     * 从任务文档中取出尚未推送的发言；任务结束时附上总结与用量，或一条错误事件。
+     */
+    private static Progress progress(DialogueJob job, AtomicInteger delivered) {
+        List<DialogueEvent> events = new ArrayList<>();
+        for (DialogueTurn turn : job.getTurns()) {
+            if (turn.getIndex() > delivered.get()) {
+                events.add(DialogueEvent.turn(turn));
+                delivered.set(turn.getIndex());
+            }
+        }
+        switch (job.getStatus()) {
+            case COMPLETED -> {
+                events.add(DialogueEvent.summary(job.getSummary()));
+                events.add(DialogueEvent.usage(job.getTokenUsage()));
+            }
+            case FAILED -> events.add(DialogueEvent.error("抱歉，对话中途出了一点小问题，稍后再试试吧！"));
+            case CANCELLED -> events.add(DialogueEvent.error("对话已被取消"));
+            case RUNNING -> {
+            }
+        }
+        return new Progress(events, job.getStatus().isTerminal());
+    }
+
+    private static DialogueJobResponse toResponse(DialogueJob job, int afterTurn) {
+        DialogueRequest request = job.getRequest();
+        List<DialogueTurn> turns = job.getTurns().stream()
+                .filter(turn -> turn.getIndex() > afterTurn)
+                .toList();
+        return new DialogueJobResponse(job.getId(), job.getStatus(), request.getTopic(),
+                request.getParticipantPersonaIds().size() * request.getMaxTurns(), job.getTurns().size(), turns,
+                job.getSummary(), job.getTokenUsage(), job.getError(), job.getCreatedAt(), job.getUpdatedAt());
+    }
+
+    private void count(String event) {
+        meterRegistry.counter("companion.dialogue.jobs", "event", event).increment();
+    }
+}
@@ -1,100 +1,542 @@
 package com.example.aichatservice.service.impl;
 
+import com.example.aichatservice.dialogue.DialogueState;
+import com.example.aichatservice.dialogue.DialogueStateProperties;
+import com.example.aichatservice.dialogue.DialogueSummarizer;
+import com.example.aichatservice.dto.dialogue.DialogueEvent;
+import com.example.aichatservice.dto.dialogue.DialogueMode;
 import com.example.aichatservice.dto.dialogue.DialogueRequest;
 import com.example.aichatservice.dto.dialogue.DialogueResponse;
+import com.example.aichatservice.dto.dialogue.DialogueTokenUsage;
+import com.example.aichatservice.dto.dialogue.DialogueTurn;
 import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.pipeline.AssembledContext;
+import com.example.aichatservice.pipeline.PersonaContext;
 import com.example.aichatservice.service.CompanionService;
 import com.example.aichatservice.service.DialogueService;
 import com.example.aichatservice.service.PersonaManagementService;
+import com.example.concurrency.LlmPriority;
 import com.example.dto.post.CommentReq;
-import lombok.RequiredArgsConstructor;
+import com.example.logging.LogPayload;
+import com.example.logging.LogSampling;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * 多人格对话服务的实现类。
  * 扮演“导演”的角色，调度不同的人格轮流发言。
+ * <p>
+ * 除逐轮执行外，还支持两种更快的执行方式（见 {@link DialogueMode}）：
+ * <ul>
+ *     <li>流水线：对话开始时为每个人格并发组装一次上下文，洞察、记忆、知识库在后续轮次直接复用；
+ *     本轮模型生成的同时为下一轮发言者进行情绪与场景分类；</li>
+ *     <li>按回合并发：同一回合内所有人格同时组装上下文并生成发言。</li>
+ * </ul>
+ * 每轮发言与最终总结的输入来自 {@link DialogueState}：滚动摘要加最近几条原文发言，而不是完整的对话记录。
  */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class DialogueServiceImpl implements DialogueService {
 
+    private static final String TURN_INSTRUCTION =
+            "请仔细阅读以上的对话历史和主题，并严格以你的身份和视角，对当前对话发表你的看法、提出问题或给出建议。";
+
     // 复用我们已有的、功能强大的单次评论生成服务
     private final CompanionService companionService;
     // 用于根据ID获取人格的详细信息
     private final PersonaManagementService personaService;
     // 用于最后的总结
     private final ChatClient chatClient;
+    // 对话整体与每轮发言的耗时直方图
+    private final MeterRegistry meterRegistry;
+    // 流水线与按回合并发模式下组装上下文、并发发言所用的执行器（虚拟线程），也用于滚动摘要的后台压缩
+    private final ExecutorService dialogueExecutor;
+    // 滚动摘要的窗口配置与压缩调用
+    private final DialogueStateProperties stateProperties;
+    private final DialogueSummarizer summarizer;
+
+    public DialogueServiceImpl(CompanionService companionService,
+                               PersonaManagementService personaService,
+                               ChatClient chatClient,
+                               MeterRegistry meterRegistry,
+                               @Qualifier("companionContextExecutor") ExecutorService dialogueExecutor,
+                               DialogueStateProperties stateProperties,
+                               DialogueSummarizer summarizer) {
+        this.companionService = companionService;
+        this.personaService = personaService;
+        this.chatClient = chatClient;
+        this.meterRegistry = meterRegistry;
+        this.dialogueExecutor = dialogueExecutor;
+        this.stateProperties = stateProperties;
+        this.summarizer = summarizer;
+    }
+
+    /**
+     * 一场对话中已发起、尚未完成的异步任务（人设解析、上下文组装、同一回合内并发的发言）及取消标记。
+     * 由发起对话的一方创建，客户端取消时在对话线程之外调用 {@link #cancelAll}：
+     * 正在执行的任务被中断，等待它们的对话线程立即返回。
+     */
+    private static final class InFlightTasks {
+
+        private final Set<Future<?>> futures = ConcurrentHashMap.newKeySet();
+        private final BooleanSupplier cancelled;
+
+        private InFlightTasks(BooleanSupplier cancelled) {
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * 登记一个异步结果及执行它的任务（可为 null），结果完成后自动移除。已取消时立即取消。
+         */
+        private <T> CompletableFuture<T> track(CompletableFuture<T> result, Future<?> task) {
+            futures.add(result);
+            if (task != null) {
+                futures.add(task);
+            }
+            result.whenComplete((value, error) -> {
+                futures.remove(result);
+                if (task != null) {
+                    futures.remove(task);
+                }
+            });
+            // 与 cancelAll 并发时，取消标记已先于 cancelAll 设置，这里保证晚登记的任务也会被取消
+            if (cancelled.getAsBoolean()) {
+                cancelAll();
+            }
+            return result;
+        }
+
+        private void cancelAll() {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * 一场对话的运行状态：请求、已查询的人格、对话状态，以及发言回调和进行中的异步任务。
+     */
+    private static final class DialogueRun {
+
+        private final DialogueRequest request;
+        private final String userId;
+        private final DialogueMode mode;
+        private final Map<String, PersonaContext> personas;
+        private final DialogueState state;
+        // 续跑时已完成的发言数，之前的发言不再生成
+        private final int startTurn;
+        private final Consumer<DialogueTurn> onTurn;
+        private final InFlightTasks tasks;
+
+        private DialogueRun(DialogueRequest request, String userId, Map<String, PersonaContext> personas,
+                            DialogueState state, Consumer<DialogueTurn> onTurn, InFlightTasks tasks) {
+            this.request = request;
+            this.userId = userId;
+            this.mode = request.getMode() == null ? DialogueMode.SEQUENTIAL : request.getMode();
+            this.personas = personas;
+            this.state = state;
+            this.startTurn = state.turnCount();
+            this.onTurn = onTurn;
+            this.tasks = tasks;
+        }
+
+        private List<String> participants() {
+            return request.getParticipantPersonaIds();
+        }
+
+        private int totalTurns() {
+            return participants().size() * request.getMaxTurns();
+        }
+
+        /**
+         * 第 {@code turnIndex} 次发言（从 0 开始）的发言者。
+         */
+        private PersonaContext speaker(int turnIndex) {
+            return personas.get(participants().get(turnIndex % participants().size()));
+        }
+
+        /**
+         * 将新生成的回应格式化后加入对话状态，并通知回调。
+         */
+        private void append(PersonaContext persona, String response) {
+            state.append(formatResponse(persona.name(), response));
+            int index = state.turnCount();
+            onTurn.accept(new DialogueTurn(index, (index - 1) / participants().size() + 1,
+                    persona.id(), persona.name(), response));
+        }
 
+        /**
+         * 客户端已取消时不再发起新的模型调用。
+         */
+        private void checkCancelled() {
+            if (tasks.cancelled.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("对话已被客户端取消");
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 整场对话中的模型调用（包括下游服务上的）都按对话优先级排队，不会挤占单条评论。
+     */
     @Override
     public DialogueResponse initiateDialogue(DialogueRequest request, String userId) {
-        long t0 = System.currentTimeMillis();
-        log.info("【人格对话-启动】用户 '{}' 发起了一场关于 '{}' 的多方对话。参与者: {}, 轮次: {}",
-                userId, request.getTopic(), request.getParticipantPersonaIds(), request.getMaxTurns());
+        return LlmPriority.DIALOGUE.call(() -> runDialogue(request, userId, List.of(), turn -> { },
+                new InFlightTasks(() -> false)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 对话在对话执行器上运行，每位人格发言完成时立即推送。客户端取消订阅后，
+     * 运行对话的线程以及同一回合内并发的发言、上下文组装任务都会被中断，已经发出的模型调用不再等待，
+     * 后续轮次与总结也不会再发起。
+     */
+    @Override
+    public Flux<DialogueEvent> streamDialogue(DialogueRequest request, String userId) {
+        return Flux.create(sink -> {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            InFlightTasks tasks = new InFlightTasks(cancelled::get);
+            // 对话线程需要带上请求线程的 MDC（抽样标记、traceId）
+            Supplier<DialogueResponse> dialogue = LogSampling.propagate(() -> LlmPriority.DIALOGUE.call(
+                    () -> runDialogue(request, userId, List.of(), turn -> sink.next(DialogueEvent.turn(turn)), tasks)));
+            Future<?> task = dialogueExecutor.submit(() -> {
+                try {
+                    DialogueResponse response = dialogue.get();
+                    sink.next(DialogueEvent.summary(response.getSummary()));
+                    sink.next(DialogueEvent.usage(response.getTokenUsage()));
+                    sink.complete();
+                } catch (Throwable e) {
+                    if (!cancelled.get()) {
+                        sink.error(e);
+                    }
+                }
+            });
+            sink.onCancel(() -> {
+                cancelled.set(true);
+                task.cancel(true);
+                tasks.cancelAll();
+                meterRegistry.counter("companion.dialogue.cancelled").increment();
+                log.info("【人格对话-取消】用户 '{}' 关于 '{}' 的对话已被客户端取消，剩余轮次不再生成", userId, request.getTopic());
+            });
+        });
+    }
 
-        // 初始化对话历史，并将主题作为第一条消息
-        List<String> conversationHistory = new ArrayList<>();
-        conversationHistory.add("--- 对话主题 ---\n" + request.getTopic());
+    /**
+     * {@inheritDoc}
+     * 与 {@link #initiateDialogue} 相同，模型调用按对话优先级排队。
+     */
+    @Override
+    public DialogueResponse resumeDialogue(DialogueRequest request, String userId, List<DialogueTurn> completedTurns,
+                                           Consumer<DialogueTurn> onTurn, BooleanSupplier cancelled) {
+        return LlmPriority.DIALOGUE.call(() -> runDialogue(request, userId, completedTurns, onTurn,
+                new InFlightTasks(cancelled)));
+    }
+
+    private DialogueResponse runDialogue(DialogueRequest request, String userId, List<DialogueTurn> completedTurns,
+                                         Consumer<DialogueTurn> onTurn, InFlightTasks tasks) {
+        long t0 = System.nanoTime();
+        Map<String, PersonaContext> personas = resolvePersonas(request, userId, tasks);
+        // 对话状态以主题作为第一条消息
+        DialogueState state = new DialogueState(request.getTopic(), stateProperties, summarizer, dialogueExecutor);
+        // 续跑时按发言时的人格名称恢复已完成的发言
+        for (DialogueTurn turn : completedTurns) {
+            state.append(formatResponse(turn.getPersonaName(), turn.getContent()));
+        }
+        DialogueRun run = new DialogueRun(request, userId, personas, state, onTurn, tasks);
+        log.info("【人格对话-启动】用户 '{}' 发起了一场关于 '{}' 的多方对话。参与者: {}, 轮次: {}, 模式: {}",
+                userId, request.getTopic(), request.getParticipantPersonaIds(), request.getMaxTurns(), run.mode);
+        if (run.startTurn > 0) {
+            log.info("【人格对话-续跑】已完成 {}/{} 次发言，从第 {} 次发言继续", run.startTurn, run.totalTurns(), run.startTurn + 1);
+        }
+
+        switch (run.mode) {
+            case SEQUENTIAL -> runSequential(run);
+            case PIPELINED -> runPipelined(run);
+            case ROUND_PARALLEL -> runRoundParallel(run);
+        }
+
+        // 6. 对整场对话进行最终总结
+        run.checkCancelled();
+        log.info("【人格对话-总结】所有轮次已结束，开始生成最终总结...");
+        String summary = generateSummary(state);
+
+        long elapsedNanos = System.nanoTime() - t0;
+        timer("companion.dialogue.duration", "一场多人格对话从发起到总结完成的耗时", run.mode)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        DialogueTokenUsage usage = state.usage();
+        recordTokenUsage(usage, run.mode);
+        log.info("【人格对话-完成】对话已完成，总耗时: {}ms，提示词约 {} tokens（发言 {}，摘要压缩 {}，总结 {}），完整记录方式约 {} tokens",
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), usage.getTotalTokens(), usage.getTurnPromptTokens(),
+                usage.getCompressionTokens(), usage.getSummaryTokens(), usage.getFullTranscriptTokens());
+        return new DialogueResponse(state.transcript(), summary, usage);
+    }
+
+    /**
+     * 每位参与者的人设在整场对话中只查询一次（不存在时直接报错，不回退到默认人设），
+     * 随后并发解析人设上下文（编译好的模板、调用选项、用户长期洞察），之后每一轮发言都直接复用。
+     */
+    private Map<String, PersonaContext> resolvePersonas(DialogueRequest request, String userId, InFlightTasks tasks) {
+        Map<String, CompletableFuture<PersonaContext>> resolving = new LinkedHashMap<>();
+        for (String personaId : request.getParticipantPersonaIds()) {
+            if (!resolving.containsKey(personaId)) {
+                Persona persona = personaService.getPersonaById(personaId);
+                resolving.put(personaId, async(tasks, () -> companionService.resolvePersonaContext(persona, userId)));
+            }
+        }
+        Map<String, PersonaContext> personas = new LinkedHashMap<>();
+        resolving.forEach((personaId, context) -> personas.put(personaId, await(context)));
+        return personas;
+    }
 
-        int totalTurns = request.getParticipantPersonaIds().size() * request.getMaxTurns();
+    /**
+     * 逐轮执行：每一轮都完整调用一次评论生成（洞察沿用对话开始时检索的）。
+     */
+    private void runSequential(DialogueRun run) {
+        int totalTurns = run.totalTurns();
 
         // 循环进行多轮对话
-        for (int i = 0; i < totalTurns; i++) {
+        for (int i = run.startTurn; i < totalTurns; i++) {
+            run.checkCancelled();
             // 1. 确定当前轮次的发言者
-            String currentPersonaId = request.getParticipantPersonaIds().get(i % request.getParticipantPersonaIds().size());
-            Persona currentPersona = personaService.getPersonaById(currentPersonaId);
+            PersonaContext currentPersona = run.speaker(i);
+            log.info("【人格对话-轮次 {}/{}] 发言者: '{}' (ID: {})", i + 1, totalTurns, currentPersona.name(), currentPersona.id());
+
+            // 2~4. 以当前的对话内容（滚动摘要 + 最近发言）为“帖子”，为当前人格生成回应
+            String response = generateTurn(currentPersona, run.state, run.state.content(), run.userId, null, run.mode);
 
-            log.info("【人格对话-轮次 {}/{}] 发言者: '{}' (ID: {})", i + 1, totalTurns, currentPersona.getName(), currentPersonaId);
+            // 5. 将新生成的回应格式化后，加入对话状态
+            run.append(currentPersona, response);
+        }
+    }
 
-            // 2. 【核心】构建一个特殊的 "postContent"
-            // 将到目前为止的全部对话历史，拼接成一个字符串，作为当前人格的“输入帖子”
-            String currentPostContent = conversationHistory.stream().collect(Collectors.joining("\n\n"));
+    /**
+     * 流水线执行。第 N 轮生成期间，第 N+1 轮发言者的分类已经在进行；
+     * 由于此时第 N 轮的发言还没有产生，分类看到的对话历史少最新的一条发言，而生成本身始终看到完整的历史。
+     * 每个人格第一轮发言使用对话开始时组装的上下文（分类基于对话主题）。
+     */
+    private void runPipelined(DialogueRun run) {
+        int totalTurns = run.totalTurns();
+        if (run.startTurn >= totalTurns) {
+            return;
+        }
+        int participantCount = run.participants().size();
+        Map<String, CompletableFuture<AssembledContext>> baseContexts = assembleBaseContexts(run);
 
-            // 3. 伪造一个 CommentReq 对象来调用我们现有的 companionService
-            CommentReq pseudoReq = new CommentReq(
-                    currentPersona.getName(), // 让AI知道它现在的名字
-                    currentPostContent,
-                    null, // imageUrls
-                    "请仔细阅读以上的对话历史和主题，并严格以你的身份和视角，对当前对话发表你的看法、提出问题或给出建议。", // specificDetail 作为核心指令
-                    null,
-                    "最多1个",
-                    500 // 允许更长的回复
-            );
+        PersonaContext firstSpeaker = run.speaker(run.startTurn);
+        CompletableFuture<AssembledContext> nextContext = contextFor(run, firstSpeaker, run.startTurn < participantCount,
+                baseContexts.get(firstSpeaker.id()), run.state.content());
+        for (int i = run.startTurn; i < totalTurns; i++) {
+            run.checkCancelled();
+            PersonaContext currentPersona = run.speaker(i);
+            log.info("【人格对话-轮次 {}/{}] 发言者: '{}' (ID: {})", i + 1, totalTurns, currentPersona.name(), currentPersona.id());
+            AssembledContext context = await(nextContext);
 
-            // 4. 调用 companionService 为当前人格生成回应
-            // 这里传入的 personaId 是当前轮到的发言者，确保使用正确的记忆、知识库和模型
-            String response = companionService.generateComment(pseudoReq, currentPersonaId, userId);
+            // 在本轮生成的同时为下一轮发言者组装上下文
+            if (i + 1 < totalTurns) {
+                PersonaContext nextPersona = run.speaker(i + 1);
+                nextContext = contextFor(run, nextPersona, i + 1 < participantCount, baseContexts.get(nextPersona.id()),
+                        run.state.content());
+            }
 
-            // 5. 将新生成的回应格式化后，加入对话历史
-            String formattedResponse = String.format("--- 来自 '%s' 的回应 ---\n%s", currentPersona.getName(), response);
-            conversationHistory.add(formattedResponse);
-            log.debug("【人格对话-回应】'{}' 的回应: {}", currentPersona.getName(), response);
+            String response = generateTurn(currentPersona, run.state, run.state.content(), run.userId, context, run.mode);
+            run.append(currentPersona, response);
         }
+    }
 
-        // 6. 对整场对话进行最终总结
-        log.info("【人格对话-总结】所有轮次已结束，开始生成最终总结...");
-        String summary = generateSummary(conversationHistory);
+    /**
+     * 按回合并发执行：同一回合内所有人格基于回合开始时的对话内容同时发言，回合结束后按参与者顺序追加。
+     * 续跑时，中断的那个回合里已完成发言的人格不再发言。
+     */
+    private void runRoundParallel(DialogueRun run) {
+        List<String> participants = run.participants();
+        int rounds = run.request.getMaxTurns();
+        if (run.startTurn >= run.totalTurns()) {
+            return;
+        }
+        Map<String, CompletableFuture<AssembledContext>> baseContexts = assembleBaseContexts(run);
+
+        for (int round = run.startTurn / participants.size(); round < rounds; round++) {
+            run.checkCancelled();
+            int firstSpeaker = round == run.startTurn / participants.size() ? run.startTurn % participants.size() : 0;
+            log.info("【人格对话-回合 {}/{}] {} 位人格同时发言", round + 1, rounds, participants.size() - firstSpeaker);
+            String roundContent = run.state.content();
+            boolean firstRound = round == 0;
+            List<CompletableFuture<String>> responses = new ArrayList<>(participants.size());
+            for (String personaId : participants.subList(firstSpeaker, participants.size())) {
+                PersonaContext persona = run.personas.get(personaId);
+                CompletableFuture<AssembledContext> context = contextFor(run, persona, firstRound, baseContexts.get(personaId),
+                        roundContent);
+                responses.add(async(run.tasks,
+                        () -> generateTurn(persona, run.state, roundContent, run.userId, await(context), run.mode)));
+            }
+            for (int i = firstSpeaker; i < participants.size(); i++) {
+                run.append(run.personas.get(participants.get(i)), await(responses.get(i - firstSpeaker)));
+            }
+        }
+    }
+
+    /**
+     * 对话开始时为每个人格并发组装一次上下文：其中的洞察、记忆、知识库检索结果会在整场对话中复用。
+     */
+    private Map<String, CompletableFuture<AssembledContext>> assembleBaseContexts(DialogueRun run) {
+        Map<String, CompletableFuture<AssembledContext>> baseContexts = new LinkedHashMap<>();
+        run.personas.forEach((personaId, persona) -> baseContexts.put(personaId, run.tasks.track(
+                companionService.assembleContext(turnRequest(persona, run.state.content()), persona, run.userId, null),
+                null)));
+        return baseContexts;
+    }
 
-        log.info("【人格对话-完成】对话已完成，总耗时: {}ms", System.currentTimeMillis() - t0);
-        return new DialogueResponse(conversationHistory, summary);
+    /**
+     * 某个人格一次发言所用的上下文。第一次发言直接使用对话开始时组装的上下文；
+     * 之后只基于当前的对话内容重新分类，检索结果沿用第一次的。
+     */
+    private CompletableFuture<AssembledContext> contextFor(DialogueRun run, PersonaContext persona, boolean firstTurn,
+                                                          CompletableFuture<AssembledContext> baseContext,
+                                                          String dialogueContent) {
+        if (firstTurn) {
+            return baseContext;
+        }
+        CommentReq classificationReq = turnRequest(persona, dialogueContent);
+        return async(run.tasks, () -> await(run.tasks.track(companionService.assembleContext(classificationReq, persona,
+                run.userId, await(baseContext).retrieval()), null)));
+    }
+
+    /**
+     * 在对话执行器上异步执行并登记到本场对话的进行中任务，带上调用线程的 MDC 与大模型调用优先级。
+     * 与 supplyAsync 不同，取消返回的结果时会中断正在执行它的线程。
+     */
+    private <T> CompletableFuture<T> async(InFlightTasks tasks, Supplier<T> work) {
+        Supplier<T> propagated = LogSampling.propagate(LlmPriority.propagate(work));
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = dialogueExecutor.submit(() -> {
+            try {
+                result.complete(propagated.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return tasks.track(result, task);
+    }
+
+    /**
+     * 为当前人格生成一次发言，{@code context} 为 null 时由评论生成服务自行组装上下文。
+     */
+    private String generateTurn(PersonaContext persona, DialogueState state, String dialogueContent, String userId,
+                                AssembledContext context, DialogueMode mode) {
+        // 这里传入的是当前轮到的发言者的人设上下文，确保使用正确的记忆、知识库和模型
+        long turnStart = System.nanoTime();
+        state.recordTurnPrompt(dialogueContent);
+        String response = companionService.generateCommentWithTimeline(
+                turnRequest(persona, dialogueContent), persona, userId, context).comment();
+        timer("companion.dialogue.turn", "多人格对话中单个人格一轮发言的耗时", mode)
+                .record(System.nanoTime() - turnStart, TimeUnit.NANOSECONDS);
+        log.debug("【人格对话-回应】'{}' 的回应: {}", persona.name(), LogPayload.truncate(response, 200));
+        return response;
+    }
+
+    /**
+     * 【核心】将当前的对话内容（主题、滚动摘要与最近发言，见 {@link DialogueState#content()}）作为当前人格的“输入帖子”，
+     * 伪造一个 CommentReq 对象来调用我们现有的 companionService。
+     */
+    private static CommentReq turnRequest(PersonaContext persona, String dialogueContent) {
+        return new CommentReq(
+                persona.name(), // 让AI知道它现在的名字
+                dialogueContent,
+                null, // imageUrls
+                TURN_INSTRUCTION, // specificDetail 作为核心指令
+                null,
+                "最多1个",
+                500 // 允许更长的回复
+        );
+    }
+
+    private static String formatResponse(String personaName, String response) {
+        return String.format("--- 来自 '%s' 的回应 ---\n%s", personaName, response);
+    }
+
+    private Timer timer(String name, String description, DialogueMode mode) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("mode", mode.name().toLowerCase(Locale.ROOT))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 每场对话的提示词 token 数分布，对照值 full_transcript 用于观察滚动摘要节省的比例。
+     */
+    private void recordTokenUsage(DialogueTokenUsage usage, DialogueMode mode) {
+        tokenSummary("turn", mode).record(usage.getTurnPromptTokens());
+        tokenSummary("compression", mode).record(usage.getCompressionTokens());
+        tokenSummary("summary", mode).record(usage.getSummaryTokens());
+        tokenSummary("full_transcript", mode).record(usage.getFullTranscriptTokens());
+    }
+
+    private DistributionSummary tokenSummary(String kind, DialogueMode mode) {
+        return DistributionSummary.builder("companion.dialogue.tokens")
+                .description("一场多人格对话中由对话内容产生的提示词 token 数（本地估算）")
+                .baseUnit("tokens")
+                .tags("kind", kind, "mode", mode.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry);
+    }
+
+    /**
+     * 可中断地等待异步结果：对话线程被中断（客户端取消）时立即返回，不再等待已发出的调用。
+     * 下游抛出的运行时异常解包后原样抛出。
+     */
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new CancellationException("对话已被客户端取消");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new CompletionException(e.getCause());
+        }
     }
 
     /**
-     * 调用LLM对整个对话历史进行总结，提炼出核心观点和建议。
-     * @param history 完整的对话历史
+     * 调用LLM对整场对话进行总结，提炼出核心观点和建议。
+     * 输入为滚动摘要与最近的原文发言，早期发言已经压缩在摘要中。
+     * @param state 对话状态
      * @return 总结性文本
      */
-    private String generateSummary(List<String> history) {
-        String fullConversation = history.stream().collect(Collectors.joining("\n\n"));
+    private String generateSummary(DialogueState state) {
+        String conversation = state.content();
         String prompt = """
         你是一个专业的会议纪要员和分析师。
-        请仔细阅读以下多个人格之间的完整对话，并完成两项任务：
+        请仔细阅读以下多个人格之间的对话（较早的发言已整理为摘要），并完成两项任务：
         1.  **核心观点**: 分点总结每一位人格的核心观点和立场。
         2.  **综合建议**: 基于所有人的观点，为发起对话的用户提供一个中立、全面、可行的行动建议。
         你的输出要清晰、有条理。
@@ -103,7 +545,8 @@ public class DialogueServiceImpl implements DialogueService {
         ---
         %s
         ---
-        """.formatted(fullConversation);
+        """.formatted(conversation);
+        state.recordSummaryPrompt(prompt, conversation);
 
         try {
             return chatClient.prompt().user(prompt).call().content();
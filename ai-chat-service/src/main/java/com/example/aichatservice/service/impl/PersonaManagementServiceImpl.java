@@ -1,5 +1,7 @@
 package com.example.aichatservice.service.impl;
 
+import com.example.aichatservice.cache.PersonaCacheConfig;
+import com.example.aichatservice.cache.PersonaCacheInvalidator;
 import com.example.aichatservice.entity.Persona;
 import com.example.aichatservice.exception.PersonaNotFoundException;
 import com.example.aichatservice.exception.UnauthorizedActionException;
@@ -14,6 +16,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -28,6 +31,7 @@ public class PersonaManagementServiceImpl implements PersonaManagementService {
     private final InsightServiceClient insightServiceClient; // ✨ 注入新的 Feign 客户端
     private final ObjectMapper objectMapper; // ✨ 注入 ObjectMapper 用于解析JSON
     private final FinetuningManagerClient finetuningManagerClient; // ✨ 注入Feign客户端
+    private final PersonaCacheInvalidator cacheInvalidator; // ✨ 写操作后淘汰本地及其它实例的人设缓存
 
 
     @Override
@@ -55,7 +59,9 @@ public class PersonaManagementServiceImpl implements PersonaManagementService {
         existingPersona.setCommentTemplates(dto.getCommentTemplates());
         existingPersona.setMemoryEnabled(dto.isMemoryEnabled());
         existingPersona.setKnowledgeBaseId(dto.getKnowledgeBaseId());
-        return personaRepository.save(existingPersona);
+        Persona saved = personaRepository.save(existingPersona);
+        cacheInvalidator.invalidatePersona(saved.getId());
+        return saved;
     }
 
     @Override
@@ -63,6 +69,7 @@ public class PersonaManagementServiceImpl implements PersonaManagementService {
         log.info("用户 '{}' 正在尝试删除人设 ID: {}", userId, personaId);
         Persona personaToDelete = findAndVerifyOwnership(personaId, userId);
         personaRepository.delete(personaToDelete);
+        cacheInvalidator.invalidatePersona(personaId);
         log.info("人设 ID: {} 已被用户 '{}' 成功删除", personaId, userId);
     }
 
@@ -72,7 +79,12 @@ public class PersonaManagementServiceImpl implements PersonaManagementService {
         return personaRepository.findByUserId(userId);
     }
 
+    /**
+     * 按ID读取人设，结果会被缓存。找不到时抛出异常，不会缓存空结果。
+     * 注意：本类内部的写操作通过 this 调用本方法，不经过缓存代理，始终读取数据库中的最新数据。
+     */
     @Override
+    @Cacheable(cacheNames = PersonaCacheConfig.PERSONAS, key = "#personaId")
     public Persona getPersonaById(String personaId) {
         return personaRepository.findById(personaId)
                 .orElseThrow(() -> new PersonaNotFoundException("未找到ID为 '" + personaId + "' 的人设"));
@@ -166,6 +178,7 @@ public class PersonaManagementServiceImpl implements PersonaManagementService {
 
         // 3. 保存更新后的人格回数据库
         personaRepository.save(persona);
+        cacheInvalidator.invalidatePersona(personaId);
 
         log.info("【内部更新】人格 '{}' 的 fineTunedModelId 已成功更新为 '{}'", personaId, newModelId);
     }
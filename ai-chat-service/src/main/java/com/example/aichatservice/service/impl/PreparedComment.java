@@ -0,0 +1,23 @@
+package com.example.aichatservice.service.impl;
+
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.pipeline.StageTimeline;
+import org.springframework.ai.zhipuai.ZhiPuAiChatOptions;
+
+/**
+ * 上下文组装阶段的产物：最终调用模型前所需的全部信息。阻塞式与响应式引擎共用。
+ *
+ * @param personalized 是否包含针对当前用户的上下文（或为多人格对话的发言），为 true 时不参与语义缓存
+ * @param embedding    预取时已计算的帖子向量，未计算时为 null
+ */
+record PreparedComment(Persona persona,
+                       String originalQuery,
+                       String scenario,
+                       String emotion,
+                       boolean personalized,
+                       String systemPrompt,
+                       String userPrompt,
+                       ZhiPuAiChatOptions chatOptions,
+                       float[] embedding,
+                       StageTimeline timeline) {
+}
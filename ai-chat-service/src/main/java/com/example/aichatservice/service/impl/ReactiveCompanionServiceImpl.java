@@ -0,0 +1,478 @@
+package com.example.aichatservice.service.impl;
+
+import com.example.aichatservice.apis.reactive.ReactiveEmotionClient;
+import com.example.aichatservice.apis.reactive.ReactiveKnowledgeClient;
+import com.example.aichatservice.apis.reactive.ReactiveMemoryClient;
+import com.example.aichatservice.apis.reactive.ReactiveVisionClient;
+import com.example.aichatservice.classifier.ClassificationProperties;
+import com.example.aichatservice.classifier.PostClassification;
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.pipeline.AssembledContext;
+import com.example.aichatservice.pipeline.CallCoalescer;
+import com.example.aichatservice.pipeline.CommentResult;
+import com.example.aichatservice.pipeline.CommentStage;
+import com.example.aichatservice.pipeline.PersonaContext;
+import com.example.aichatservice.pipeline.RetrievalResult;
+import com.example.aichatservice.pipeline.StageTimeline;
+import com.example.aichatservice.pipeline.VisionResult;
+import com.example.aichatservice.service.CompanionService;
+import com.example.concurrency.LlmPriority;
+import com.example.dto.AI.EmotionAnalysisRequest;
+import com.example.dto.AI.KnowledgeSearchRequest;
+import com.example.dto.AI.SearchMemoryRequest;
+import com.example.dto.post.CommentReq;
+import com.example.logging.LogSampling;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * CompanionService 的非阻塞实现，通过 {@code companion.engine=reactive} 启用。
+ * <p>
+ * 阶段图、超时兜底与 {@link CompanionServiceImpl} 完全一致，Prompt 内容、缓存与记忆写回由共用的
+ * {@link CompanionPipeline} 决定；区别只在于如何等待下游：
+ * 情绪、视觉、洞察、记忆、知识库改用 WebClient 调用，模型调用改用 {@code ChatClient.stream()}，
+ * 等待期间不占用任何线程，因此并发请求数不再受线程数限制。
+ * <p>
+ * 仍然是阻塞操作的步骤（人设与用户设置查询、本地分类器的大模型兜底、语义缓存的向量计算）
+ * 放在 boundedElastic 调度器上执行，不会阻塞事件循环线程。
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "companion.engine", havingValue = "reactive")
+public class ReactiveCompanionServiceImpl implements CompanionService {
+    private static final String DEFAULT_EMOTION = CompanionPipelineSupport.DEFAULT_EMOTION;
+    private static final String DEFAULT_SCENARIO = CompanionPipelineSupport.DEFAULT_SCENARIO;
+
+    private final ChatClient chat;
+    private final CompanionPipeline pipeline;
+    private final ReactiveMemoryClient memoryClient;
+    private final ReactiveKnowledgeClient knowledgeClient;
+    private final ReactiveEmotionClient emotionClient;
+    private final ReactiveVisionClient visionClient;
+    private final Duration callTimeout; // ✨ 每个下游调用的独立截止时间
+    private final CallCoalescer coalescer;
+
+    public ReactiveCompanionServiceImpl(@Qualifier("companionChatClient") ChatClient chat,
+                                        CompanionPipeline pipeline,
+                                        ReactiveMemoryClient memoryClient,
+                                        ReactiveKnowledgeClient knowledgeClient,
+                                        ReactiveEmotionClient emotionClient,
+                                        ReactiveVisionClient visionClient,
+                                        @Value("${companion.context.call-timeout-ms:5000}") long callTimeoutMs,
+                                        CallCoalescer coalescer
+    ) {
+        this.chat = chat;
+        this.pipeline = pipeline;
+        this.memoryClient = memoryClient;
+        this.knowledgeClient = knowledgeClient;
+        this.emotionClient = emotionClient;
+        this.visionClient = visionClient;
+        this.callTimeout = Duration.ofMillis(callTimeoutMs);
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 同步接口直接等待 {@link #generateCommentAsync} 的结果，供仍以阻塞方式调用本服务的代码使用。
+     */
+    @Override
+    public CommentResult generateCommentWithTimeline(CommentReq req, String personaId, String userId) {
+        return generateCommentAsync(req, personaId, userId).block();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 同样直接等待非阻塞流水线的结果，只是不再解析人设，并跳过上下文组装阶段。
+     */
+    @Override
+    public CommentResult generateCommentWithTimeline(CommentReq req, PersonaContext persona, String userId,
+                                                     AssembledContext context) {
+        return generateComment(req, Mono.just(persona), userId, context).block();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 各阶段的 Mono 在调用线程上组装，因此会带上调用线程的大模型调用优先级。
+     */
+    @Override
+    public CompletableFuture<AssembledContext> assembleContext(CommentReq req, PersonaContext persona, String userId,
+                                                               RetrievalResult retrieval) {
+        return assembleContext(req, userId, persona, new StageTimeline(), retrieval).toFuture();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 供阻塞的调用方使用，直接等待洞察检索完成。
+     */
+    @Override
+    public PersonaContext resolvePersonaContext(Persona persona, String userId) {
+        String insights = withDeadline(new StageTimeline(), CommentStage.INSIGHTS, fetchInsightsContext(userId, persona), "")
+                .block();
+        return pipeline.personaContext(persona, insights);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 模型调用使用流式接口并在本地拼接完整评论，整个过程中没有线程在等待下游。
+     */
+    @Override
+    public Mono<CommentResult> generateCommentAsync(CommentReq req, String personaId, String userId) {
+        return generateComment(req, personaContextFor(personaId, userId), userId, null);
+    }
+
+    private Mono<CommentResult> generateComment(CommentReq req, Mono<PersonaContext> persona, String userId,
+                                                AssembledContext supplied) {
+        return Mono.defer(() -> {
+            StageTimeline timeline = new StageTimeline();
+            return prepareComment(req, persona, userId, timeline, supplied)
+                    .flatMap(prepared -> generate(req, userId, prepared))
+                    .doOnError(e -> timeline.markFailed())
+                    .doFinally(signal -> pipeline.publish(timeline));
+        });
+    }
+
+    private Mono<CommentResult> generate(CommentReq req, String userId, PreparedComment prepared) {
+        long generationStart = System.nanoTime();
+        // 语义缓存命中前需要计算一次向量（预取过则直接使用），属于阻塞调用
+        return blocking(() -> pipeline.lookupCache(req, prepared))
+                .flatMap(cacheLookup -> {
+                    Optional<CommentResult> cached = pipeline.cacheHit(cacheLookup, prepared.timeline(), generationStart);
+                    if (cached.isPresent()) {
+                        return Mono.just(cached.get());
+                    }
+                    log.info("【评论生成-步骤5】正在调用 AI 模型生成最终评论...");
+                    return streamFromModel(prepared)
+                            .collect(Collectors.joining())
+                            .map(comment -> pipeline.completeComment(prepared, cacheLookup, userId, comment, generationStart));
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 与阻塞实现的区别只在于上下文组装阶段同样是非阻塞的，TTFT 与阶段指标的口径完全相同。
+     */
+    @Override
+    public Flux<String> streamComment(CommentReq req, String personaId, String userId) {
+        return Flux.defer(() -> {
+            long startNanos = System.nanoTime();
+            StageTimeline timeline = new StageTimeline();
+            return prepareComment(req, personaContextFor(personaId, userId), userId, timeline, null)
+                    .flatMapMany(prepared -> {
+                        log.info("【评论生成-流式】正在以流式方式调用 AI 模型生成最终评论...");
+                        long generationStart = System.nanoTime();
+                        StringBuilder fullComment = new StringBuilder();
+                        AtomicBoolean firstToken = new AtomicBoolean(true);
+                        return streamFromModel(prepared)
+                                .doOnNext(token -> {
+                                    if (firstToken.compareAndSet(true, false)) {
+                                        pipeline.recordFirstToken(startNanos);
+                                    }
+                                    fullComment.append(token);
+                                })
+                                .doOnComplete(() -> pipeline.completeStream(prepared, userId, fullComment.toString(),
+                                        generationStart));
+                    })
+                    .doOnError(e -> timeline.markFailed())
+                    .doFinally(signal -> pipeline.publish(timeline));
+        });
+    }
+
+    private Flux<String> streamFromModel(PreparedComment prepared) {
+        return chat.prompt()
+                .options(prepared.chatOptions())
+                .system(prepared.systemPrompt())
+                .user(prepared.userPrompt())
+                .stream()
+                .content();
+    }
+
+    /**
+     * 1. 单条评论请求在订阅时解析人设；人设与用户设置可能需要查询数据库，放在 boundedElastic 上执行。
+     */
+    private Mono<PersonaContext> personaContextFor(String personaId, String userId) {
+        return Mono.fromSupplier(LogSampling.propagate(() -> pipeline.personaContextFor(personaId, userId)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 上下文组装阶段，阶段依赖关系与 {@code CompanionServiceImpl#prepareComment} 相同：
+     * 视觉、情绪、检索同时发起，场景分类等视觉描述和情绪都就绪后才开始。
+     */
+    private Mono<PreparedComment> prepareComment(CommentReq req, Mono<PersonaContext> personaContext, String userId,
+                                                 StageTimeline timeline, AssembledContext supplied) {
+        return personaContext
+                .flatMap(resolved -> {
+                    Persona persona = resolved.persona();
+                    timeline.personaType(CompanionPipelineSupport.personaTypeOf(persona));
+
+                    // 2. 调用方已组装好上下文或有预取结果时直接使用（预取未完成时等待它），否则按阶段图现场组装
+                    CompletableFuture<AssembledContext> prefetched = pipeline.takePrefetched(req, persona, userId, supplied);
+                    Mono<AssembledContext> assembled = prefetched != null
+                            ? awaitPrefetched(prefetched, req, userId, resolved, timeline)
+                            : assembleContext(req, userId, resolved, timeline);
+
+                    // 3~5. 拼接上下文并构建 Prompt；调用方提供上下文的是多人格对话的发言
+                    return assembled.map(context -> pipeline.prepare(req, resolved, context, supplied != null, timeline));
+                });
+    }
+
+    /**
+     * 【阶段图】视觉结果会被场景分类和上下文拼接共同使用，cache() 保证图片只分析一次；
+     * 视觉、情绪、场景只取决于帖子本身，同一帖子并发到达的请求还会共享同一次下游调用。评论请求与预取共用此方法。
+     */
+    private Mono<AssembledContext> assembleContext(CommentReq req, String userId, PersonaContext persona,
+                                                   StageTimeline timeline) {
+        return assembleContext(req, userId, persona, timeline, null);
+    }
+
+    /**
+     * @param reusedRetrieval 可复用的检索结果，不为 null 时跳过检索阶段
+     */
+    private Mono<AssembledContext> assembleContext(CommentReq req, String userId, PersonaContext persona,
+                                                   StageTimeline timeline, RetrievalResult reusedRetrieval) {
+        String originalQuery = req.postContent();
+        Mono<VisionResult> visionStage = (CollectionUtils.isEmpty(req.imageUrls())
+                ? Mono.just(VisionResult.EMPTY)
+                : withDeadline(timeline, CommentStage.VISION,
+                coalescer.vision().mono(req.imageUrls(), () -> analyzeImages(req)), VisionResult.EMPTY))
+                .cache();
+        Mono<PostClassification> classificationStage = classifyPost(persona.persona(), originalQuery, visionStage, timeline);
+        Mono<RetrievalResult> retrievalStage = reusedRetrieval != null
+                ? Mono.just(reusedRetrieval)
+                : retrieveContext(userId, persona, originalQuery, timeline);
+        return Mono.zip(visionStage, classificationStage, retrievalStage)
+                .map(stages -> new AssembledContext(stages.getT1(), stages.getT2(), stages.getT3(), null, timeline.isDegraded()));
+    }
+
+    /**
+     * 等待预取结果，并把它覆盖的阶段记入本次请求的时间线。取消本次请求不会取消预取本身；
+     * 预取在 {@code max-wait} 内未完成或失败时现场组装。
+     */
+    private Mono<AssembledContext> awaitPrefetched(CompletableFuture<AssembledContext> prefetched, CommentReq req,
+                                                   String userId, PersonaContext persona, StageTimeline timeline) {
+        return Mono.defer(() -> {
+            long waitStart = System.nanoTime();
+            return Mono.fromFuture(prefetched, true)
+                    .doOnNext(assembled -> pipeline.recordPrefetched(assembled, req, timeline, waitStart))
+                    .onErrorResume(e -> {
+                        pipeline.prefetchUnavailable(e, userId);
+                        return assembleContext(req, userId, persona, timeline);
+                    });
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 预取在订阅后立即开始，不受调用方生命周期影响；帖子向量只在人格参与语义缓存时计算。
+     */
+    @Override
+    public void prefetch(CommentReq req, String personaId, String userId) {
+        if (!pipeline.isPrefetchEnabled()) {
+            return;
+        }
+        blocking(() -> pipeline.resolvePersona(personaId, userId))
+                .subscribe(persona -> pipeline.startPrefetch(req, persona, userId, () -> Mono.zip(
+                                        assembleContext(req, userId, pipeline.personaContext(persona, null), new StageTimeline()),
+                                        blocking(() -> Optional.ofNullable(pipeline.embed(persona, req))))
+                                .map(ready -> ready.getT1().withEmbedding(ready.getT2().orElse(null)))
+                                .toFuture()),
+                        e -> log.warn("【上下文预取】用户 '{}' 预取失败: {}", userId, e.getMessage()));
+    }
+
+    /**
+     * 【视觉阶段】批量分析全部图片；视觉分析整体失败时不中断主流程，返回空结果。
+     */
+    private Mono<VisionResult> analyzeImages(CommentReq req) {
+        return Mono.defer(() -> visionClient.analyzeBatch(pipeline.visionRequest(req))
+                .map(pipeline::visionResultOf)
+                .defaultIfEmpty(VisionResult.EMPTY)
+                .onErrorResume(e -> Mono.just(pipeline.visionFailed(e))));
+    }
+
+    /**
+     * 【场景阶段】按人格配置的分类模式进行情绪与场景分类；被抽样的请求在后台用另一种模式复核。
+     */
+    private Mono<PostClassification> classifyPost(Persona persona, String originalQuery,
+                                                  Mono<VisionResult> visionStage, StageTimeline timeline) {
+        ClassificationProperties.Mode mode = pipeline.classificationMode(persona);
+        Mono<PostClassification> classification = (mode == ClassificationProperties.Mode.JOINT
+                ? classifyJointly(originalQuery, visionStage, timeline)
+                : classifySeparately(originalQuery, visionStage, timeline))
+                .cache();
+
+        if (pipeline.sampleShadowClassification()) {
+            return classification.doOnNext(primary -> visionStage
+                    .subscribe(vision -> compareWithShadow(primary, mode, originalQuery, vision)));
+        }
+        return classification;
+    }
+
+    /**
+     * 两步分类：情绪分析与视觉阶段并发进行，两者都完成后再进行场景分类。
+     * 本地分类器置信度不足时会同步调用大模型，因此场景分类放在 boundedElastic 上执行。
+     */
+    private Mono<PostClassification> classifySeparately(String originalQuery, Mono<VisionResult> visionStage,
+                                                        StageTimeline timeline) {
+        Mono<String> emotionStage = withDeadline(timeline, CommentStage.EMOTION,
+                coalescer.emotion().mono(CallCoalescer.postKey(originalQuery), () -> analyzeEmotion(originalQuery)),
+                DEFAULT_EMOTION);
+        return Mono.zip(emotionStage, visionStage)
+                .flatMap(ready -> withDeadline(timeline, CommentStage.SCENARIO,
+                        coalescer.scenario().mono(
+                                new CallCoalescer.ScenarioKey(CallCoalescer.postKey(originalQuery), ready.getT2().description(), ready.getT1()),
+                                () -> blocking(() -> pipeline.inferScenario(originalQuery, ready.getT2().description(), ready.getT1()))),
+                        DEFAULT_SCENARIO)
+                        .map(scenario -> new PostClassification(ready.getT1(), null, scenario, "separate")));
+    }
+
+    /**
+     * 联合分类：视觉阶段完成后，一次结构化大模型调用同时得出情绪和场景。
+     */
+    private Mono<PostClassification> classifyJointly(String originalQuery, Mono<VisionResult> visionStage,
+                                                     StageTimeline timeline) {
+        return visionStage.flatMap(vision -> withDeadline(timeline, CommentStage.SCENARIO,
+                coalescer.joint().mono(new CallCoalescer.JointKey(CallCoalescer.postKey(originalQuery), vision.description()),
+                        () -> blocking(() -> pipeline.classifyJointly(originalQuery, vision.description()))),
+                new PostClassification(DEFAULT_EMOTION, null, DEFAULT_SCENARIO, "joint")));
+    }
+
+    private void compareWithShadow(PostClassification primary, ClassificationProperties.Mode primaryMode,
+                                   String originalQuery, VisionResult vision) {
+        Mono<VisionResult> visionStage = Mono.just(vision);
+        StageTimeline shadowTimeline = new StageTimeline();
+        Mono<PostClassification> shadow = primaryMode == ClassificationProperties.Mode.JOINT
+                ? classifySeparately(originalQuery, visionStage, shadowTimeline)
+                : classifyJointly(originalQuery, visionStage, shadowTimeline);
+        shadow.subscribe(other -> pipeline.recordShadowComparison(primary, other),
+                e -> log.warn("【分类对比】对照分类失败: {}", e.getMessage()));
+    }
+
+    /**
+     * 调用情绪分析服务，返回大写的情绪标签；失败时返回默认情绪 NEUTRAL。
+     */
+    private Mono<String> analyzeEmotion(String originalQuery) {
+        return Mono.defer(() -> {
+            log.info("【评论生成-步骤2.1】开始调用情绪分析服务...");
+            return emotionClient.analyze(new EmotionAnalysisRequest(originalQuery))
+                    .map(pipeline::emotionOf)
+                    .defaultIfEmpty(DEFAULT_EMOTION)
+                    .onErrorResume(e -> Mono.just(pipeline.emotionFailed(e)));
+        });
+    }
+
+    /**
+     * 【检索阶段】并发检索长期洞察、记忆与知识库，三者都完成后得到检索阶段的产物。
+     * 人设上下文中已有洞察时不再检索洞察。
+     */
+    private Mono<RetrievalResult> retrieveContext(String userId, PersonaContext personaContext, String originalQuery,
+                                                  StageTimeline timeline) {
+        Persona persona = personaContext.persona();
+        return Mono.defer(() -> {
+            long stageStart = System.nanoTime();
+            Mono<String> insights = personaContext.hasInsights()
+                    ? Mono.just(personaContext.insightsContext())
+                    : withDeadline(timeline, CommentStage.INSIGHTS, fetchInsightsContext(userId, persona), "");
+            Mono<String> memory = persona.isMemoryEnabled()
+                    ? withDeadline(timeline, CommentStage.MEMORY, fetchMemoryContext(userId, persona, originalQuery), "")
+                    : Mono.just("");
+            Mono<String> knowledge = CompanionPipelineSupport.hasKnowledgeBase(persona)
+                    ? withDeadline(timeline, CommentStage.KNOWLEDGE, fetchKnowledgeContext(userId, persona, originalQuery), "")
+                    : Mono.just("");
+            return Mono.zip(insights, memory, knowledge)
+                    .map(parts -> new RetrievalResult(parts.getT1(), parts.getT2(), parts.getT3()))
+                    .doOnSuccess(result -> timeline.record(CommentStage.RETRIEVAL, stageStart))
+                    .doOnError(e -> timeline.record(CommentStage.RETRIEVAL, stageStart, CompanionPipelineSupport.outcomeOf(e)));
+        });
+    }
+
+    /**
+     * 检索用户长期洞察，返回 "[用户长期关注点]" 上下文片段。洞察服务失败不影响主流程。
+     */
+    private Mono<String> fetchInsightsContext(String userId, Persona persona) {
+        return Mono.defer(() -> {
+            log.info("【评论生成-步骤3.1】开始检索用户长期洞察...");
+            return memoryClient.getInsights(userId, persona.getId())
+                    .map(pipeline::insightsContextOf)
+                    .defaultIfEmpty("")
+                    .onErrorResume(e -> Mono.just(pipeline.insightsFailed(e)));
+        });
+    }
+
+    /**
+     * 检索与帖子相关的记忆。记忆服务失败会中断评论生成；熔断器打开或舱壁已满时直接跳过这段上下文。
+     */
+    private Mono<String> fetchMemoryContext(String userId, Persona persona, String originalQuery) {
+        return Mono.defer(() -> {
+            log.info("【评论生成-步骤2.1】人格 '{}' 已启用记忆，开始检索...", persona.getName());
+            SearchMemoryRequest memoryRequest = new SearchMemoryRequest();
+            memoryRequest.setQuery(originalQuery);
+            return memoryClient.searchMemory(userId, persona.getId(), memoryRequest)
+                    .map(pipeline::memoryContextOf)
+                    .defaultIfEmpty("")
+                    // memoryFailed 在真正失败时抛出异常，fromCallable 把它转为错误信号
+                    .onErrorResume(e -> Mono.fromCallable(() -> pipeline.memoryFailed(e)));
+        });
+    }
+
+    /**
+     * 检索人格关联知识库中的相关片段。知识库服务失败会中断评论生成；熔断器打开或舱壁已满时直接跳过这段上下文。
+     */
+    private Mono<String> fetchKnowledgeContext(String userId, Persona persona, String originalQuery) {
+        return Mono.defer(() -> {
+            log.info("【评论生成-步骤3.1】人格 '{}' 已关联知识库 ID: {}，开始检索...", persona.getName(), persona.getKnowledgeBaseId());
+            KnowledgeSearchRequest knowledgeRequest = new KnowledgeSearchRequest();
+            knowledgeRequest.setQuery(originalQuery);
+            return knowledgeClient.searchKnowledge(persona.getKnowledgeBaseId(), knowledgeRequest, userId)
+                    .map(pipeline::knowledgeContextOf)
+                    .defaultIfEmpty("")
+                    .onErrorResume(e -> Mono.fromCallable(() -> pipeline.knowledgeFailed(e)));
+        });
+    }
+
+    /**
+     * 为一次下游调用设置独立的截止时间，完成时把耗时与结果记入时间线。
+     * 超时后返回兜底值（即丢弃该段上下文），调用本身发出的错误原样向下游传递。
+     * 超时会取消订阅，WebClient 随之关闭底层请求，不会留下继续等待的调用。
+     */
+    private <T> Mono<T> withDeadline(StageTimeline timeline, CommentStage stage, Mono<T> call, T fallback) {
+        return Mono.defer(() -> {
+            long stageStart = System.nanoTime();
+            return call
+                    .timeout(callTimeout)
+                    .doOnSuccess(result -> timeline.record(stage, stageStart))
+                    .doOnError(e -> timeline.record(stage, stageStart, CompanionPipelineSupport.outcomeOf(e)))
+                    .onErrorResume(TimeoutException.class, e -> {
+                        log.warn("【评论生成-并发】{} 超过 {}ms 截止时间，将丢弃该部分上下文继续流程。", stage.label(), callTimeout.toMillis());
+                        return Mono.just(fallback);
+                    });
+        });
+    }
+
+    /**
+     * 把一个阻塞调用包装成在 boundedElastic 上执行的 Mono，并带上调用方的 MDC 与大模型调用优先级。
+     */
+    private static <T> Mono<T> blocking(Supplier<T> call) {
+        return Mono.fromSupplier(LogSampling.propagate(LlmPriority.propagate(call))).subscribeOn(Schedulers.boundedElastic());
+    }
+}
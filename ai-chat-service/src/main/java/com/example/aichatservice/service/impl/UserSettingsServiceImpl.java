@@ -1,5 +1,7 @@
 package com.example.aichatservice.service.impl;
 
+import com.example.aichatservice.cache.PersonaCacheConfig;
+import com.example.aichatservice.cache.PersonaCacheInvalidator;
 import com.example.aichatservice.entity.Persona;
 import com.example.aichatservice.exception.PersonaNotFoundException;
 import com.example.aichatservice.exception.UnauthorizedActionException;
@@ -10,6 +12,7 @@ import com.example.aichatservice.setting.UserSettings;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -21,6 +24,7 @@ public class UserSettingsServiceImpl implements UserSettingsService {
 
     private final UserSettingsRepository userSettingsRepository;
     private final PersonaRepository personaRepository; // 需要用它来校验人设是否存在且属于该用户
+    private final PersonaCacheInvalidator cacheInvalidator;
 
 
 
@@ -43,10 +47,12 @@ public class UserSettingsServiceImpl implements UserSettingsService {
         settings.setUserId(userId);
         settings.setDefaultPersonaId(personaId);
         userSettingsRepository.save(settings);
+        cacheInvalidator.invalidateUserSettings(userId);
         log.info("用户 '{}' 的默认人设已成功设置为 '{}'", userId, personaId);
     }
 
     @Override
+    @Cacheable(cacheNames = PersonaCacheConfig.USER_DEFAULT_PERSONA, key = "#userId")
     public Optional<String> findDefaultPersonaIdForUser(String userId) {
         log.debug("正在为用户 '{}' 查找其默认人设ID", userId);
         return userSettingsRepository.findById(userId)
@@ -0,0 +1,71 @@
+package com.example.aichatservice.cache;
+
+import com.example.dto.post.CommentReq;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SemanticCommentCacheTest {
+
+    private SemanticCommentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        // 所有帖子向量相同，只验证分区与昵称处理
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f, 0f});
+        SemanticCacheProperties properties = new SemanticCacheProperties();
+        properties.setEnabled(true);
+        cache = new SemanticCommentCache(embeddingModel, properties, new SimpleMeterRegistry());
+    }
+
+    private static CommentReq req(String userName, String specificDetail, String microStep, String emojiPolicy) {
+        return new CommentReq(userName, "今天好累", null, specificDetail, microStep, emojiPolicy, null);
+    }
+
+    private SemanticCommentCache.Lookup lookup(CommentReq req) {
+        return cache.lookup("p1", false, false, "comfort", "SADNESS", 160, req, null);
+    }
+
+    @Test
+    void hitSubstitutesCurrentUserName() {
+        cache.put(lookup(req("小明同学", null, null, null)), "小明同学，辛苦啦，早点休息");
+
+        assertThat(lookup(req("阿杰", null, null, null)).hit()).contains("阿杰，辛苦啦，早点休息");
+    }
+
+    @Test
+    void promptParametersSeparatePartitions() {
+        cache.put(lookup(req("小明同学", null, "喝杯水", null)), "小明同学，先去喝杯水");
+
+        assertThat(lookup(req("阿杰", null, "散散步", null)).hit()).isEmpty();
+        assertThat(lookup(req("阿杰", null, "喝杯水", "不用表情")).hit()).isEmpty();
+        assertThat(lookup(req("阿杰", null, "喝杯水", null)).hit()).contains("阿杰，先去喝杯水");
+    }
+
+    @Test
+    void requestsWithSpecificDetailBypassCache() {
+        SemanticCommentCache.Lookup withDetail = lookup(req("小明同学", "加班到十点", null, null));
+        cache.put(withDetail, "小明同学，加班到十点太辛苦了");
+
+        assertThat(withDetail.partition()).isNull();
+        assertThat(lookup(req("阿杰", null, null, null)).hit()).isEmpty();
+    }
+
+    @Test
+    void missingShortOrDefaultNamesBypassCache() {
+        assertThat(lookup(req(null, null, null, null)).partition()).isNull();
+        assertThat(lookup(req("明", null, null, null)).partition()).isNull();
+        assertThat(lookup(req(" 朋友 ", null, null, null)).partition()).isNull();
+
+        // 默认称呼 "朋友" 从未被模板化，"好朋友" 这类普通词语不会被替换成其他用户的昵称
+        cache.put(lookup(req("朋友", null, null, null)), "好朋友，抱抱你");
+        assertThat(lookup(req("阿杰", null, null, null)).hit()).isEmpty();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.aichatservice.classifier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HybridScenarioClassifierTest {
+
+    private static final String MODEL = """
+            bias\tneutral_reply\t0.30
+            ng:恭喜\tcelebrate\t3.00
+            """;
+
+    private LocalScenarioClassifier local;
+    private LlmScenarioClassifier llm;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        local = new LocalScenarioClassifier(LocalScenarioClassifierTest.model(MODEL));
+        llm = mock(LlmScenarioClassifier.class);
+        when(llm.classify(any(), any(), any())).thenReturn(new ScenarioPrediction("comfort", 1.0, "llm"));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private HybridScenarioClassifier classifier(String mode) {
+        return new HybridScenarioClassifier(local, llm, meterRegistry, mode, 0.6);
+    }
+
+    @Test
+    void confidentLocalPredictionSkipsLlm() {
+        ScenarioPrediction prediction = classifier("hybrid").classify("恭喜恭喜", "", "JOY");
+
+        assertThat(prediction.source()).isEqualTo("local");
+        assertThat(prediction.scenario()).isEqualTo("celebrate");
+        verify(llm, never()).classify(any(), any(), any());
+        assertThat(meterRegistry.counter("companion.scenario.classifications", "source", "local").count()).isEqualTo(1);
+    }
+
+    @Test
+    void lowConfidenceFallsBackToLlm() {
+        ScenarioPrediction prediction = classifier("hybrid").classify("今天吃了面", "一碗面", "NEUTRAL");
+
+        assertThat(prediction.source()).isEqualTo("llm");
+        verify(llm).classify("今天吃了面", "一碗面", "NEUTRAL");
+        assertThat(meterRegistry.counter("companion.scenario.classifications", "source", "llm").count()).isEqualTo(1);
+    }
+
+    @Test
+    void localModeNeverFallsBack() {
+        ScenarioPrediction prediction = classifier("local").classify("今天吃了面", "", "NEUTRAL");
+
+        assertThat(prediction.source()).isEqualTo("local");
+        assertThat(prediction.scenario()).isEqualTo("neutral_reply");
+        verify(llm, never()).classify(any(), any(), any());
+    }
+
+    @Test
+    void llmModeAlwaysAsksLlm() {
+        ScenarioPrediction prediction = classifier("llm").classify("恭喜恭喜", "", "JOY");
+
+        assertThat(prediction.source()).isEqualTo("llm");
+        verify(llm).classify("恭喜恭喜", "", "JOY");
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.aichatservice.classifier;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LocalScenarioClassifierTest {
+
+    private static final String MODEL = """
+            # 测试模型
+            bias\tneutral_reply\t0.30
+            emo:SADNESS\tcomfort\t1.60
+            ng:恭喜\tcelebrate\t3.00
+            ng:恭喜\tcelebrate\t0.50
+            格式错误的一行
+            ng:上岸\tunknown_scenario\t1.00
+            """;
+
+    static ByteArrayResource model(String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void loadModelSkipsCommentsMalformedLinesAndUnknownLabelsAndSumsDuplicates() throws IOException {
+        Map<String, double[]> weights = LocalScenarioClassifier.loadModel(model(MODEL));
+
+        assertThat(weights).containsOnlyKeys("bias", "emo:SADNESS", "ng:恭喜");
+        int celebrate = ScenarioClassifier.SCENARIOS.indexOf("celebrate");
+        assertThat(weights.get("ng:恭喜")[celebrate]).isCloseTo(3.5, within(1e-9));
+    }
+
+    @Test
+    void confidentPredictionForMatchingFeatures() throws IOException {
+        LocalScenarioClassifier classifier = new LocalScenarioClassifier(model(MODEL));
+
+        ScenarioPrediction prediction = classifier.classify("恭喜恭喜", "", "JOY");
+
+        assertThat(prediction.scenario()).isEqualTo("celebrate");
+        assertThat(prediction.source()).isEqualTo("local");
+        assertThat(prediction.confidence()).isGreaterThan(0.9);
+    }
+
+    @Test
+    void unknownFeaturesFallBackToBiasWithLowConfidence() throws IOException {
+        LocalScenarioClassifier classifier = new LocalScenarioClassifier(model(MODEL));
+
+        ScenarioPrediction prediction = classifier.classify("今天吃了面", "", "NEUTRAL");
+
+        // 只有偏置项：exp(0.3) / (exp(0.3) + 4)
+        assertThat(prediction.scenario()).isEqualTo("neutral_reply");
+        assertThat(prediction.confidence()).isCloseTo(Math.exp(0.3) / (Math.exp(0.3) + 4), within(1e-9));
+    }
+
+    @Test
+    void toLinesRoundTripsThroughLoadModel() throws IOException {
+        Map<String, double[]> weights = LocalScenarioClassifier.loadModel(model(MODEL));
+
+        String serialized = String.join("\n", LocalScenarioClassifier.toLines(weights));
+        Map<String, double[]> reloaded = LocalScenarioClassifier.loadModel(model(serialized));
+
+        assertThat(reloaded).containsOnlyKeys(weights.keySet());
+        weights.forEach((feature, w) -> assertThat(reloaded.get(feature)).containsExactly(w, within(1e-4)));
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.aichatservice.classifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScenarioFeaturesTest {
+
+    @Test
+    void extractsBiasEmotionAndCharacterNgrams() {
+        List<String> features = ScenarioFeatures.extract("恭喜你", null, "joy");
+
+        assertThat(features).containsExactly("bias", "emo:JOY", "ng:恭喜", "ng:喜你", "ng:恭喜你");
+    }
+
+    @Test
+    void ngramsNeverSpanWhitespaceOrTheTextImageBoundary() {
+        List<String> features = ScenarioFeatures.extract("Hi  Yo", "猫", null);
+
+        assertThat(features).containsExactly("bias", "ng:hi", "ng:yo");
+    }
+
+    @Test
+    void blankEmotionAndNullTextOnlyYieldBias() {
+        assertThat(ScenarioFeatures.extract(null, null, " ")).containsExactly("bias");
+    }
+
+    @Test
+    void textBeyondLimitIsIgnored() {
+        String head = "a".repeat(500);
+        List<String> features = ScenarioFeatures.extract(head + "xyz", null, null);
+
+        assertThat(features).contains("ng:aa", "ng:aaa").doesNotContain("ng:ax", "ng:xy", "ng:axy");
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.aichatservice.dialogue;
+
+import com.example.aichatservice.dto.dialogue.DialogueTokenUsage;
+import com.example.aichatservice.prompt.TokenEstimator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DialogueStateTest {
+
+    private static final String TOPIC = "要不要辞职去读研";
+    private static final Executor DIRECT = Runnable::run;
+
+    private DialogueSummarizer summarizer;
+    private DialogueStateProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        summarizer = mock(DialogueSummarizer.class);
+        properties = new DialogueStateProperties();
+        properties.setRecentTurns(2);
+    }
+
+    private DialogueState state(Executor executor) {
+        return new DialogueState(TOPIC, properties, summarizer, executor);
+    }
+
+    private static String turn(int i) {
+        return "--- 来自 '人格" + i + "' 的回应 ---\n第 " + i + " 条发言";
+    }
+
+    @Test
+    void turnsWithinWindowAreKeptVerbatim() {
+        DialogueState state = state(DIRECT);
+        state.append(turn(1));
+        state.append(turn(2));
+
+        verify(summarizer, never()).compress(anyString(), anyString(), anyList());
+        assertThat(state.content()).isEqualTo("--- 对话主题 ---\n" + TOPIC + "\n\n" + turn(1) + "\n\n" + turn(2));
+        assertThat(state.turnCount()).isEqualTo(2);
+    }
+
+    @Test
+    void turnsLeavingWindowAreFoldedIntoSummary() {
+        when(summarizer.compress(TOPIC, "", List.of(turn(1))))
+                .thenReturn(new DialogueSummarizer.Compression("  人格1 主张先攒钱再辞职。 ", 30));
+        when(summarizer.compress(TOPIC, "人格1 主张先攒钱再辞职。", List.of(turn(2))))
+                .thenReturn(new DialogueSummarizer.Compression("人格1 主张先攒钱，人格2 支持直接读研。", 40));
+        DialogueState state = state(DIRECT);
+
+        state.append(turn(1));
+        state.append(turn(2));
+        state.append(turn(3));
+        assertThat(state.content())
+                .contains("--- 之前的对话摘要 ---\n人格1 主张先攒钱再辞职。")
+                .doesNotContain(turn(1))
+                .contains(turn(2), turn(3));
+
+        state.append(turn(4));
+        assertThat(state.content())
+                .isEqualTo("--- 对话主题 ---\n" + TOPIC
+                        + "\n\n--- 之前的对话摘要 ---\n人格1 主张先攒钱，人格2 支持直接读研。"
+                        + "\n\n" + turn(3) + "\n\n" + turn(4));
+        // 完整记录不受压缩影响
+        assertThat(state.turnCount()).isEqualTo(4);
+        assertThat(state.transcript()).hasSize(5).endsWith(turn(1), turn(2), turn(3), turn(4));
+        assertThat(state.usage().getCompressionTokens()).isEqualTo(70);
+    }
+
+    @Test
+    void failedCompressionKeepsTurnsAndRetriesOnNextAppend() {
+        when(summarizer.compress(TOPIC, "", List.of(turn(1))))
+                .thenThrow(new IllegalStateException("模型调用失败"));
+        when(summarizer.compress(TOPIC, "", List.of(turn(1), turn(2))))
+                .thenReturn(new DialogueSummarizer.Compression("摘要", 50));
+        DialogueState state = state(DIRECT);
+
+        state.append(turn(1));
+        state.append(turn(2));
+        state.append(turn(3));
+        assertThat(state.content()).contains(turn(1), turn(2), turn(3)).doesNotContain("之前的对话摘要");
+        assertThat(state.usage().getCompressionTokens()).isZero();
+
+        state.append(turn(4));
+        assertThat(state.content()).contains("摘要", turn(3), turn(4)).doesNotContain(turn(1), turn(2));
+        assertThat(state.usage().getCompressionTokens()).isEqualTo(50);
+    }
+
+    @Test
+    void blankSummaryCountsAsFailure() {
+        when(summarizer.compress(anyString(), anyString(), anyList()))
+                .thenReturn(new DialogueSummarizer.Compression("  ", 30));
+        DialogueState state = state(DIRECT);
+
+        for (int i = 1; i <= 3; i++) {
+            state.append(turn(i));
+        }
+
+        assertThat(state.content()).contains(turn(1), turn(2), turn(3));
+        assertThat(state.usage().getCompressionTokens()).isZero();
+    }
+
+    @Test
+    void zeroRecentTurnsDisablesCompression() {
+        properties.setRecentTurns(0);
+        DialogueState state = state(DIRECT);
+
+        for (int i = 1; i <= 5; i++) {
+            state.append(turn(i));
+        }
+
+        verify(summarizer, never()).compress(anyString(), anyString(), anyList());
+        assertThat(state.content()).contains(turn(1), turn(5));
+    }
+
+    @Test
+    void onlyOneCompressionRunsAtATime() {
+        Queue<Runnable> pending = new ArrayDeque<>();
+        when(summarizer.compress(TOPIC, "", List.of(turn(1))))
+                .thenReturn(new DialogueSummarizer.Compression("摘要一", 10));
+        when(summarizer.compress(TOPIC, "摘要一", List.of(turn(2), turn(3))))
+                .thenReturn(new DialogueSummarizer.Compression("摘要二", 20));
+        DialogueState state = state(pending::add);
+
+        state.append(turn(1));
+        state.append(turn(2));
+        state.append(turn(3));
+        state.append(turn(4));
+        state.append(turn(5));
+        // 第一次压缩尚未完成：后续追加不再发起压缩，发言仍以原文出现
+        assertThat(pending).hasSize(1);
+        assertThat(state.content()).contains(turn(1), turn(5));
+
+        pending.poll().run();
+        // 完成后立即为压缩期间超出窗口的发言再发起一次
+        assertThat(pending).hasSize(1);
+        assertThat(state.content()).contains("摘要一").doesNotContain(turn(1));
+
+        pending.poll().run();
+        assertThat(state.content()).contains("摘要二", turn(4), turn(5)).doesNotContain(turn(2), turn(3));
+        verify(summarizer, times(2)).compress(anyString(), anyString(), any());
+    }
+
+    @Test
+    void usageComparesWindowedPromptsWithFullTranscript() {
+        when(summarizer.compress(anyString(), anyString(), anyList()))
+                .thenReturn(new DialogueSummarizer.Compression("摘要", 25));
+        DialogueState state = state(DIRECT);
+        long transcriptTokens = TokenEstimator.estimate("--- 对话主题 ---\n" + TOPIC);
+        long turnTokens = 0;
+        long fullTokens = 0;
+        for (int i = 1; i <= 4; i++) {
+            String content = state.content();
+            state.recordTurnPrompt(content);
+            turnTokens += TokenEstimator.estimate(content);
+            fullTokens += transcriptTokens;
+            state.append(turn(i));
+            transcriptTokens += TokenEstimator.estimate(turn(i));
+        }
+        String content = state.content();
+        String prompt = "请总结：\n" + content;
+        state.recordSummaryPrompt(prompt, content);
+
+        DialogueTokenUsage usage = state.usage();
+        int summaryTokens = TokenEstimator.estimate(prompt);
+        assertThat(usage.getTurnPromptTokens()).isEqualTo(turnTokens);
+        assertThat(usage.getCompressionTokens()).isEqualTo(2 * 25);
+        assertThat(usage.getSummaryTokens()).isEqualTo(summaryTokens);
+        assertThat(usage.getTotalTokens()).isEqualTo(turnTokens + 2 * 25 + summaryTokens);
+        assertThat(usage.getFullTranscriptTokens())
+                .isEqualTo(fullTokens + summaryTokens - TokenEstimator.estimate(content) + transcriptTokens);
+        assertThat(usage.getFullTranscriptTokens()).isGreaterThan(usage.getTurnPromptTokens() + usage.getSummaryTokens());
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.aichatservice.memory;
+
+import com.example.apis.MemoryServiceClient;
+import com.example.dto.AI.AddMemoryRequest;
+import com.example.dto.AI.BatchAddMemoryRequest;
+import com.example.dto.AI.InsightResponse;
+import com.example.dto.AI.SearchMemoryRequest;
+import com.example.dto.AI.SearchMemoryResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemoryWriteBehindQueueTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StubMemoryServiceClient client;
+    private Path spillFile;
+    private Path replayingFile;
+    private MemoryWriteBehindQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        client = new StubMemoryServiceClient();
+        spillFile = dir.resolve("memory-spill.jsonl");
+        replayingFile = dir.resolve("memory-spill.jsonl.replaying");
+        queue = new MemoryWriteBehindQueue(client, objectMapper, meterRegistry, 100, 2, spillFile, 1024 * 1024);
+    }
+
+    private List<MemoryWriteBehindQueue.SpilledBatch> read(Path file) throws IOException {
+        List<MemoryWriteBehindQueue.SpilledBatch> batches = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            batches.add(objectMapper.readValue(line, MemoryWriteBehindQueue.SpilledBatch.class));
+        }
+        return batches;
+    }
+
+    private static List<String> batchIds(List<MemoryWriteBehindQueue.SpilledBatch> batches) {
+        return batches.stream().map(MemoryWriteBehindQueue.SpilledBatch::batchId).toList();
+    }
+
+    private double spilled() {
+        return meterRegistry.get("companion.memory.write_behind").tag("event", "spilled").counter().count();
+    }
+
+    @Test
+    void failedBatchesAreSpilledAndReplayedWithSameBatchId() throws IOException {
+        for (int i = 1; i <= 3; i++) {
+            queue.enqueue("u1", "p1", "互动" + i);
+        }
+        client.failNext(1);
+
+        queue.flush();
+
+        // 第一批失败后停止发送，两批都落盘
+        List<MemoryWriteBehindQueue.SpilledBatch> spilledBatches = read(spillFile);
+        assertThat(spilledBatches).extracting(MemoryWriteBehindQueue.SpilledBatch::contents)
+                .containsExactly(List.of("互动1", "互动2"), List.of("互动3"));
+        assertThat(batchIds(spilledBatches)).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(spilled()).isEqualTo(3);
+
+        client.sent.clear();
+        queue.flush();
+
+        assertThat(client.sent).extracting(BatchAddMemoryRequest::getBatchId)
+                .containsExactlyElementsOf(batchIds(spilledBatches));
+        assertThat(spillFile).doesNotExist();
+        assertThat(replayingFile).doesNotExist();
+    }
+
+    @Test
+    void partialReplayFailureKeepsOnlyUnsentBatches() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            queue.enqueue("u1", "p1", "互动" + i);
+        }
+        client.failNext(1);
+        queue.flush();
+        List<String> spilledIds = batchIds(read(spillFile));
+        assertThat(spilledIds).hasSize(3);
+
+        // 回放时第一批成功、第二批失败
+        client.sent.clear();
+        client.outcomes.addAll(List.of(true, false));
+        queue.flush();
+
+        assertThat(client.sent).extracting(BatchAddMemoryRequest::getBatchId).containsExactly(spilledIds.get(0));
+        assertThat(spillFile).doesNotExist();
+        assertThat(batchIds(read(replayingFile))).containsExactlyElementsOf(spilledIds.subList(1, 3));
+
+        // 下次回放只发送剩余的批次，幂等键不变
+        client.sent.clear();
+        queue.flush();
+
+        assertThat(client.sent).extracting(BatchAddMemoryRequest::getBatchId)
+                .containsExactlyElementsOf(spilledIds.subList(1, 3));
+        assertThat(replayingFile).doesNotExist();
+    }
+
+    @Test
+    void newFailuresDuringReplayGoToFreshSpillFile() throws IOException {
+        queue.enqueue("u1", "p1", "互动1");
+        client.failNext(1);
+        queue.flush();
+        String spilledId = batchIds(read(spillFile)).get(0);
+
+        client.sent.clear();
+        client.outcomes.addAll(List.of(true, false));
+        queue.enqueue("u2", "p1", "互动2");
+        queue.flush();
+        // u2 的写入成功后回放 u1 的落盘数据，回放失败时保留在回放中的文件里
+        assertThat(batchIds(read(replayingFile))).containsExactly(spilledId);
+
+        client.failNext(1);
+        queue.enqueue("u3", "p1", "互动3");
+        queue.flush();
+
+        // 新的失败写入新的落盘文件，不影响回放中的文件
+        assertThat(read(spillFile)).extracting(MemoryWriteBehindQueue.SpilledBatch::userId).containsExactly("u3");
+        assertThat(batchIds(read(replayingFile))).containsExactly(spilledId);
+    }
+
+    /**
+     * 按预设结果依次成功或失败的记忆服务客户端，记录每一次批量写入请求；没有预设结果时一律成功。
+     */
+    private static class StubMemoryServiceClient implements MemoryServiceClient {
+
+        private final Queue<Boolean> outcomes = new ArrayDeque<>();
+        private final List<BatchAddMemoryRequest> sent = Collections.synchronizedList(new ArrayList<>());
+
+        void failNext(int times) {
+            for (int i = 0; i < times; i++) {
+                outcomes.add(false);
+            }
+        }
+
+        @Override
+        public void addMemories(String userId, String personaId, BatchAddMemoryRequest request) {
+            Boolean succeed = outcomes.poll();
+            if (Boolean.FALSE.equals(succeed)) {
+                throw new IllegalStateException("记忆服务不可用");
+            }
+            sent.add(request);
+        }
+
+        @Override
+        public void addMemory(String userId, String personaId, AddMemoryRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<SearchMemoryResponse> searchMemory(String userId, String personaId, SearchMemoryRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InsightResponse getInsights(String userId, String personaId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.aichatservice.pipeline;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.awaitility.Awaitility.await;
+
+class SingleFlightTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> flight = new SingleFlight<>("emotion", meterRegistry);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private double calls(String result) {
+        return meterRegistry.get("companion.coalescing.calls").tag("result", result).counter().count();
+    }
+
+    /**
+     * 在后台线程上发起调用，等到它已作为 leader 或 follower 登记后才返回。
+     */
+    private CompletableFuture<String> start(String key, Supplier<String> call, String expectedRole) {
+        double before = calls(expectedRole);
+        CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> flight.call(key, call), executor);
+        await().atMost(Duration.ofSeconds(5)).until(() -> calls(expectedRole) > before);
+        return future;
+    }
+
+    @Test
+    void concurrentCallersShareOneInvocation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger invocations = new AtomicInteger();
+        Supplier<String> call = () -> {
+            invocations.incrementAndGet();
+            awaitUninterruptibly(release);
+            return "JOY";
+        };
+
+        CompletableFuture<String> leader = start("今天好开心", call, "leader");
+        CompletableFuture<String> follower = start("今天好开心", call, "shared");
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("JOY");
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("JOY");
+        assertThat(invocations).hasValue(1);
+    }
+
+    @Test
+    void differentKeysAreNotCoalesced() {
+        assertThat(flight.call("a", () -> "A")).isEqualTo("A");
+        assertThat(flight.call("b", () -> "B")).isEqualTo("B");
+        assertThat(calls("leader")).isEqualTo(2);
+        assertThat(calls("shared")).isZero();
+    }
+
+    @Test
+    void followerReceivesLeaderRuntimeException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("下游不可用");
+        Supplier<String> call = () -> {
+            awaitUninterruptibly(release);
+            throw failure;
+        };
+
+        CompletableFuture<String> leader = start("k", call, "leader");
+        CompletableFuture<String> follower = start("k", call, "shared");
+        release.countDown();
+
+        assertThat(causeOf(leader)).isSameAs(failure);
+        assertThat(causeOf(follower)).isSameAs(failure);
+    }
+
+    @Test
+    void leaderErrorStillCompletesFollowers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AssertionError failure = new AssertionError("boom");
+        Supplier<String> call = () -> {
+            awaitUninterruptibly(release);
+            throw failure;
+        };
+
+        CompletableFuture<String> leader = start("k", call, "leader");
+        CompletableFuture<String> follower = start("k", call, "shared");
+        release.countDown();
+
+        assertThat(causeOf(leader)).isSameAs(failure);
+        assertThat(causeOf(follower)).isSameAs(failure);
+        // 失败后 key 已移除，下一次调用重新发起
+        assertThat(flight.call("k", () -> "ok")).isEqualTo("ok");
+    }
+
+    @Test
+    void synchronousThrowInReactiveCallDoesNotLeaveKeyInFlight() {
+        Supplier<Mono<String>> broken = () -> {
+            throw new IllegalStateException("构造请求失败");
+        };
+
+        assertThatThrownBy(() -> flight.mono("k", broken).block(Duration.ofSeconds(5)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(flight.mono("k", () -> Mono.just("ok")).block(Duration.ofSeconds(5))).isEqualTo("ok");
+        assertThat(calls("shared")).isZero();
+    }
+
+    private static Throwable causeOf(CompletableFuture<String> future) {
+        Throwable thrown = catchThrowable(() -> future.get(5, TimeUnit.SECONDS));
+        assertThat(thrown).isInstanceOf(ExecutionException.class);
+        return thrown.getCause();
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.aichatservice.prefetch;
+
+import com.example.aichatservice.classifier.PostClassification;
+import com.example.aichatservice.pipeline.AssembledContext;
+import com.example.aichatservice.pipeline.RetrievalResult;
+import com.example.aichatservice.pipeline.VisionResult;
+import com.example.dto.post.CommentReq;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class ContextPrefetchCacheTest {
+
+    private static final ContextPrefetchCache.Key KEY =
+            ContextPrefetchCache.Key.of("u1", "p1", new CommentReq("小明", "今天好累", null, null, null, null, null));
+
+    private static final AssembledContext CONTEXT = new AssembledContext(VisionResult.EMPTY,
+            new PostClassification("SADNESS", 0.9f, "comfort", "joint"),
+            new RetrievalResult("", "", ""), null, false);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ContextPrefetchCache cache;
+
+    @BeforeEach
+    void setUp() {
+        PrefetchProperties properties = new PrefetchProperties();
+        properties.setMaxWait(Duration.ofMillis(50));
+        cache = new ContextPrefetchCache(properties, meterRegistry);
+    }
+
+    private double wasted(String reason) {
+        return meterRegistry.get("companion.prefetch.wasted").tag("reason", reason).counter().count();
+    }
+
+    @Test
+    void completedPrefetchIsTakenOnce() throws Exception {
+        assertThat(cache.start(KEY, () -> CompletableFuture.completedFuture(CONTEXT))).isTrue();
+
+        assertThat(cache.take(KEY).get(1, TimeUnit.SECONDS)).isSameAs(CONTEXT);
+        assertThat(cache.take(KEY)).isNull();
+    }
+
+    @Test
+    void loaderThrowingSynchronouslyLeavesNoEntry() {
+        boolean started = cache.start(KEY, () -> {
+            throw new IllegalStateException("执行器已关闭");
+        });
+
+        assertThat(started).isFalse();
+        assertThat(cache.take(KEY)).isNull();
+        // 失败的条目已移除，可以重新发起
+        assertThat(cache.start(KEY, () -> CompletableFuture.completedFuture(CONTEXT))).isTrue();
+    }
+
+    @Test
+    void degradedResultFailsWaitingRequest() {
+        CompletableFuture<AssembledContext> loading = new CompletableFuture<>();
+        cache.start(KEY, () -> loading);
+        CompletableFuture<AssembledContext> waiting = cache.take(KEY);
+
+        // 记忆检索超时，上下文用兜底值拼出
+        loading.complete(new AssembledContext(VisionResult.EMPTY, CONTEXT.classification(),
+                new RetrievalResult("", "", ""), null, true));
+
+        Throwable thrown = catchThrowable(() -> waiting.get(1, TimeUnit.SECONDS));
+        assertThat(thrown).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(wasted("degraded")).isEqualTo(1);
+        assertThat(cache.take(KEY)).isNull();
+    }
+
+    @Test
+    void degradedResultIsNotKept() {
+        cache.start(KEY, () -> CompletableFuture.completedFuture(new AssembledContext(VisionResult.EMPTY,
+                CONTEXT.classification(), CONTEXT.retrieval(), null, true)));
+
+        assertThat(cache.take(KEY)).isNull();
+        assertThat(wasted("degraded")).isEqualTo(1);
+    }
+
+    @Test
+    void waitOnPendingPrefetchIsBounded() {
+        CompletableFuture<AssembledContext> loading = new CompletableFuture<>();
+        cache.start(KEY, () -> loading);
+
+        Throwable thrown = catchThrowable(() -> cache.take(KEY).get(1, TimeUnit.SECONDS));
+
+        assertThat(thrown).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(wasted("slow")).isEqualTo(1);
+        // 等待超时不影响预取本身
+        assertThat(loading).isNotDone();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.aichatservice.prompt;
+
+import com.example.aichatservice.prompt.ContextPacker.Candidate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextPackerTest {
+
+    private static final String HIKING = "我喜欢在周末去爬山看日出";
+    private static final String MOVIE = "上个月看了一部很感人的电影";
+    private static final String CAT = "养了一只橘猫";
+    private static final String FRUIT = "最喜欢的水果是草莓和芒果";
+    private static final String FRUIT_AGAIN = "最喜欢的水果是草莓和芒果！";
+
+    private final ContextPackingProperties properties = new ContextPackingProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ContextPacker packer = new ContextPacker(properties, meterRegistry);
+
+    private static Candidate candidate(String text, double relevance) {
+        return new Candidate(text, relevance, null, false);
+    }
+
+    /**
+     * 单条内容在段落中占用的 token 数（含 "- " 前缀与换行）。
+     */
+    private static int cost(String text) {
+        return TokenEstimator.estimate(text) + 1;
+    }
+
+    private static String section(String... lines) {
+        StringBuilder expected = new StringBuilder("\n[").append(ContextPacker.MEMORY_SECTION).append("]:\n");
+        for (String line : lines) {
+            expected.append("- ").append(line).append("\n");
+        }
+        return expected.toString();
+    }
+
+    @Test
+    void keepsHighestScoredCandidatesWithinBudget() {
+        List<Candidate> candidates = List.of(
+                candidate(CAT, 0.5), candidate(HIKING, 0.9), candidate(MOVIE, 0.7));
+
+        String packed = packer.pack(ContextPacker.MEMORY_SECTION, candidates, cost(HIKING) + cost(MOVIE));
+
+        assertThat(packed).isEqualTo(section(HIKING, MOVIE));
+    }
+
+    @Test
+    void skipsCandidateThatDoesNotFitAndTriesShorterOnes() {
+        List<Candidate> candidates = List.of(
+                candidate(HIKING, 0.9), candidate(MOVIE, 0.8), candidate(CAT, 0.1));
+
+        String packed = packer.pack(ContextPacker.MEMORY_SECTION, candidates, cost(HIKING) + cost(CAT));
+
+        assertThat(packed).isEqualTo(section(HIKING, CAT));
+        assertThat(meterRegistry.counter("companion.context.tokens.saved", "section", ContextPacker.MEMORY_SECTION)
+                .count()).isEqualTo(cost(MOVIE));
+    }
+
+    @Test
+    void dropsNearDuplicateWithLowerScore() {
+        List<Candidate> candidates = List.of(
+                candidate(FRUIT_AGAIN, 0.6), candidate(FRUIT, 0.8), candidate(CAT, 0.5));
+
+        String packed = packer.pack(ContextPacker.MEMORY_SECTION, candidates, 1000);
+
+        assertThat(packed).isEqualTo(section(FRUIT, CAT));
+    }
+
+    @Test
+    void pinnedCandidatesComeFirstRegardlessOfRelevance() {
+        List<Candidate> candidates = List.of(
+                candidate(HIKING, 0.9), new Candidate(CAT, 0.1, null, true));
+
+        String packed = packer.pack(ContextPacker.MEMORY_SECTION, candidates, cost(CAT));
+
+        assertThat(packed).isEqualTo(section(CAT));
+    }
+
+    @Test
+    void recencyBreaksTiesBetweenEquallyRelevantCandidates() {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<Candidate> candidates = List.of(
+                new Candidate(HIKING, 0.5, now.minusDays(90), false),
+                new Candidate(MOVIE, 0.5, now.minusDays(1), false));
+
+        String packed = packer.pack(ContextPacker.MEMORY_SECTION, candidates, 1000);
+
+        assertThat(packed).isEqualTo(section(MOVIE, HIKING));
+    }
+
+    @Test
+    void blankCandidatesAreIgnoredAndEmptyResultHasNoSection() {
+        String packed = packer.pack(ContextPacker.MEMORY_SECTION, List.of(candidate(" ", 0.9), candidate(null, 0.8)), 1000);
+
+        assertThat(packed).isEmpty();
+    }
+
+    @Test
+    void disabledPackingKeepsEverythingInOriginalOrder() {
+        properties.setEnabled(false);
+        List<Candidate> candidates = List.of(
+                candidate(CAT, 0.1), candidate(FRUIT, 0.9), candidate(FRUIT_AGAIN, 0.8));
+
+        String packed = packer.pack(ContextPacker.MEMORY_SECTION, candidates, 1);
+
+        assertThat(packed).isEqualTo(section(CAT, FRUIT, FRUIT_AGAIN));
+    }
+
+    @Test
+    void jaccardOfShinglesIgnoresWhitespace() {
+        assertThat(ContextPacker.jaccard(ContextPacker.shingles("草莓 芒果"), ContextPacker.shingles("草莓芒果")))
+                .isEqualTo(1.0);
+        assertThat(ContextPacker.jaccard(ContextPacker.shingles("草莓"), ContextPacker.shingles("芒果")))
+                .isZero();
+    }
+}
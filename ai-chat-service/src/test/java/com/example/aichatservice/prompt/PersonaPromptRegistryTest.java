@@ -0,0 +1,71 @@
+package com.example.aichatservice.prompt;
+
+import com.example.aichatservice.cache.PersonaChangedEvent;
+import com.example.aichatservice.entity.Persona;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersonaPromptRegistryTest {
+
+    private static final Instant V1 = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Instant V2 = Instant.parse("2025-01-02T00:00:00Z");
+
+    private final PersonaPromptRegistry registry = new PersonaPromptRegistry(100);
+
+    private static Persona persona(String template, Instant updatedAt) {
+        return Persona.builder()
+                .id("p1")
+                .name("小暖")
+                .commentTemplates(Map.of("celebrate", template))
+                .updatedAt(updatedAt)
+                .build();
+    }
+
+    private String template(Persona persona) {
+        return registry.get(persona).select("celebrate", "JOY").template();
+    }
+
+    @Test
+    void sameVersionIsCompiledOnce() {
+        Persona persona = persona("旧模板", V1);
+
+        assertThat(registry.get(persona)).isSameAs(registry.get(persona("旧模板", V1)));
+    }
+
+    @Test
+    void newerVersionReplacesCachedPrompt() {
+        assertThat(template(persona("旧模板", V1))).isEqualTo("旧模板");
+
+        assertThat(template(persona("新模板", V2))).isEqualTo("新模板");
+        assertThat(template(persona("新模板", V2))).isEqualTo("新模板");
+    }
+
+    @Test
+    void staleRequestAfterChangeDoesNotPinOldPrompt() {
+        Persona stale = persona("旧模板", V1);
+        template(stale);
+        registry.onPersonaChanged(new PersonaChangedEvent("p1"));
+
+        // 变更事件之后，仍持有旧人设的请求先到、新版本的请求后到
+        assertThat(template(stale)).isEqualTo("旧模板");
+        assertThat(template(persona("新模板", V2))).isEqualTo("新模板");
+
+        // 旧请求再次编译也不会覆盖较新的版本
+        assertThat(template(stale)).isEqualTo("旧模板");
+        assertThat(template(persona("新模板", V2))).isEqualTo("新模板");
+        assertThat(registry.get(persona("新模板", V2))).isSameAs(registry.get(persona("新模板", V2)));
+    }
+
+    @Test
+    void personasWithoutVersionAreValidatedByIdentity() {
+        Persona first = persona("旧模板", null);
+        Persona reloaded = persona("新模板", null);
+
+        assertThat(registry.get(first)).isSameAs(registry.get(first));
+        assertThat(template(reloaded)).isEqualTo("新模板");
+    }
+}
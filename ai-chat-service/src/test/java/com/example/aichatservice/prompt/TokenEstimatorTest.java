@@ -0,0 +1,34 @@
+package com.example.aichatservice.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenEstimatorTest {
+
+    @Test
+    void emptyInputHasNoTokens() {
+        assertThat(TokenEstimator.estimate(null)).isZero();
+        assertThat(TokenEstimator.estimate("")).isZero();
+    }
+
+    @Test
+    void narrowCharactersCountFourPerTokenRoundedUp() {
+        assertThat(TokenEstimator.estimate("abcd")).isEqualTo(1);
+        assertThat(TokenEstimator.estimate("abcde")).isEqualTo(2);
+        assertThat(TokenEstimator.estimate("a b c d e f g h")).isEqualTo(4);
+    }
+
+    @Test
+    void wideCharactersCountOneTokenEach() {
+        assertThat(TokenEstimator.estimate("今天好开心")).isEqualTo(5);
+        assertThat(TokenEstimator.estimate("你好，世界！")).isEqualTo(6);
+    }
+
+    @Test
+    void mixedTextAddsBothParts() {
+        // 3 个中文字符 + 5 个 ASCII 字符（含空格）
+        assertThat(TokenEstimator.estimate("周末去 hike")).isEqualTo(3 + 2);
+        assertThat(TokenEstimator.estimate("GLM-4 模型")).isEqualTo(2 + 2);
+    }
+}
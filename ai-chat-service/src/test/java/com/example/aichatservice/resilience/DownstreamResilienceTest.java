@@ -0,0 +1,144 @@
+package com.example.aichatservice.resilience;
+
+import com.example.apis.MemoryServiceClient;
+import com.example.concurrency.LlmPriority;
+import com.example.dto.AI.SearchMemoryRequest;
+import com.example.dto.AI.SearchMemoryResponse;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.openfeign.EnableFeignClients;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 用桩服务验证 Feign 客户端外层的熔断器与舱壁：熔断打开后请求不再发出，舱壁满时立即拒绝，
+ * 以及关闭 TimeLimiter 后调用留在调用线程上（超过 1s 的调用不被截断，优先级请求头照常携带）。
+ */
+@SpringBootTest(classes = DownstreamResilienceTest.StubClients.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {
+                "spring.ai.zhipuai.api-key=test",
+                "resilience4j.circuitbreaker.instances.memory-service.sliding-window-size=2",
+                "resilience4j.circuitbreaker.instances.memory-service.minimum-number-of-calls=2",
+                "resilience4j.circuitbreaker.instances.memory-service.wait-duration-in-open-state=1m",
+                "resilience4j.bulkhead.instances.memory-service.max-concurrent-calls=1"
+        })
+class DownstreamResilienceTest {
+
+    private static final String SEARCH_PATH = "/api/v1/memory/u1/p1/search";
+
+    private static final WireMockServer STUB = new WireMockServer(options().dynamicPort());
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableAutoConfiguration(exclude = {MongoAutoConfiguration.class, MongoDataAutoConfiguration.class})
+    @EnableFeignClients(clients = MemoryServiceClient.class)
+    static class StubClients {
+    }
+
+    @DynamicPropertySource
+    static void stubUrl(DynamicPropertyRegistry registry) {
+        if (!STUB.isRunning()) {
+            STUB.start();
+        }
+        registry.add("services.memory.url", STUB::baseUrl);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.stop();
+    }
+
+    @Autowired
+    private MemoryServiceClient memoryClient;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+
+    @BeforeEach
+    void reset() {
+        STUB.resetAll();
+        circuitBreakerRegistry.getAllCircuitBreakers().forEach(CircuitBreaker::reset);
+    }
+
+    private List<SearchMemoryResponse> search() {
+        return memoryClient.searchMemory("u1", "p1", new SearchMemoryRequest());
+    }
+
+    private static void stubSearch(int status, int delayMillis) {
+        STUB.stubFor(post(urlPathEqualTo(SEARCH_PATH)).willReturn(aResponse()
+                .withStatus(status)
+                .withHeader("Content-Type", "application/json")
+                .withBody("[]")
+                .withFixedDelay(delayMillis)));
+    }
+
+    @Test
+    void openBreakerShortCircuitsWithoutCallingDownstream() {
+        stubSearch(500, 0);
+
+        assertThat(Rejections.isRejected(catchThrowable(this::search))).isFalse();
+        assertThat(Rejections.isRejected(catchThrowable(this::search))).isFalse();
+        Throwable rejected = catchThrowable(this::search);
+
+        assertThat(Rejections.isRejected(rejected)).isTrue();
+        STUB.verify(2, postRequestedFor(urlPathEqualTo(SEARCH_PATH)));
+    }
+
+    @Test
+    void fullBulkheadRejectsImmediately() {
+        stubSearch(200, 2000);
+        CompletableFuture<List<SearchMemoryResponse>> holder = CompletableFuture.supplyAsync(this::search);
+        await().atMost(Duration.ofSeconds(5)).until(() -> bulkheadRegistry.getAllBulkheads().stream()
+                .map(Bulkhead::getMetrics)
+                .anyMatch(metrics -> metrics.getAvailableConcurrentCalls() == 0));
+
+        long started = System.nanoTime();
+        Throwable rejected = catchThrowable(this::search);
+
+        assertThat(Rejections.isRejected(rejected)).isTrue();
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+        assertThat(holder.join()).isEmpty();
+        STUB.verify(1, postRequestedFor(urlPathEqualTo(SEARCH_PATH)));
+    }
+
+    @Test
+    void callRunsOnCallerThreadWithoutTimeLimiter() {
+        // 比 TimeLimiter 默认的 1s 更慢，但在 Feign 读超时之内
+        stubSearch(200, 1500);
+
+        List<SearchMemoryResponse> result = LlmPriority.BACKGROUND.call(this::search);
+
+        assertThat(result).isEmpty();
+        STUB.verify(1, postRequestedFor(urlPathEqualTo(SEARCH_PATH))
+                .withHeader(LlmPriority.HEADER, equalTo(LlmPriority.BACKGROUND.name())));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.aichatservice.service.impl;
+
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.prompt.PersonaPromptRegistry;
+import com.example.aichatservice.service.PersonaManagementService;
+import com.example.aichatservice.service.UserSettingsService;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CompanionPipelineSupportTest {
+
+    @Test
+    void systemDefaultPersonaIsCompiledOnce() {
+        PersonaManagementService personaService = mock(PersonaManagementService.class);
+        UserSettingsService userSettingsService = mock(UserSettingsService.class);
+        when(userSettingsService.findDefaultPersonaIdForUser("u1")).thenReturn(Optional.empty());
+        PersonaPromptRegistry registry = new PersonaPromptRegistry(100);
+
+        Persona first = CompanionPipelineSupport.resolvePersona(personaService, userSettingsService, null, "u1");
+        Persona second = CompanionPipelineSupport.resolvePersona(personaService, userSettingsService, null, "u1");
+
+        assertThat(first.getId()).isEqualTo(CompanionPipelineSupport.SYSTEM_DEFAULT_PERSONA_ID);
+        assertThat(second).isSameAs(first);
+        assertThat(CompanionPipelineSupport.personaContext(registry, second, null).prompt())
+                .isSameAs(CompanionPipelineSupport.personaContext(registry, first, null).prompt());
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.benchmarks;
+
+import com.example.aichatservice.apis.EmotionServiceClient;
+import com.example.aichatservice.cache.SemanticCacheProperties;
+import com.example.aichatservice.cache.SemanticCommentCache;
+import com.example.aichatservice.classifier.ClassificationProperties;
+import com.example.aichatservice.classifier.JointClassifier;
+import com.example.aichatservice.classifier.ScenarioClassifier;
+import com.example.aichatservice.classifier.ScenarioPrediction;
+import com.example.aichatservice.dto.EmotionAnalysisResponse;
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.memory.MemoryWriteBehindQueue;
+import com.example.aichatservice.pipeline.CallCoalescer;
+import com.example.aichatservice.pipeline.CommentPipelineMetrics;
+import com.example.aichatservice.prefetch.ContextPrefetchCache;
+import com.example.aichatservice.prefetch.PrefetchProperties;
+import com.example.aichatservice.prompt.ContextPacker;
+import com.example.aichatservice.prompt.ContextPackingProperties;
+import com.example.aichatservice.prompt.PersonaPromptRegistry;
+import com.example.aichatservice.service.PersonaManagementService;
+import com.example.aichatservice.service.UserSettingsService;
+import com.example.aichatservice.service.impl.CompanionPipeline;
+import com.example.aichatservice.service.impl.CompanionServiceImpl;
+import com.example.apis.KnowledgeServiceClient;
+import com.example.apis.MemoryServiceClient;
+import com.example.apis.VisionServiceClient;
+import com.example.dto.AI.InsightResponse;
+import com.example.dto.post.CommentReq;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整 {@code generateComment} 流程的基准测试。
+ * <p>
+ * 大模型、Feign 客户端和人格/用户设置服务全部替换为立即返回的桩，测得的是本进程内的编排开销：
+ * 并发上下文组装、分类结果合并、Prompt 拼装、ChatClient 调用封装与记忆入队。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentPipelineBenchmark {
+
+    /**
+     * 记忆与知识库检索各自返回的条数。
+     */
+    @Param({"0", "5", "20"})
+    public int chunks;
+
+    private CompanionServiceImpl companionService;
+    private MemoryWriteBehindQueue memoryQueue;
+    private ExecutorService contextExecutor;
+    private Path spillDir;
+    private CommentReq request;
+
+    @Setup
+    public void setUp() throws IOException {
+        Persona persona = Fixtures.persona();
+        persona.setMemoryEnabled(true);
+        persona.setKnowledgeBaseId(1L);
+        request = Fixtures.request(null);
+
+        ChatModel chatModel = new ChatModel() {
+            private final ChatResponse response = new ChatResponse(List.of(
+                    new Generation(new AssistantMessage("小林，抱抱你。加班到这么晚真的辛苦了，先好好睡一觉吧。"))));
+
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response;
+            }
+        };
+        ChatClient chatClient = ChatClient.create(chatModel);
+
+        EmotionAnalysisResponse emotion = new EmotionAnalysisResponse();
+        emotion.setEmotion("SADNESS");
+        emotion.setConfidence(0.9f);
+        InsightResponse insights = new InsightResponse();
+        insights.setThemes(List.of("工作压力", "作息"));
+
+        MemoryServiceClient memoryClient = Stubs.of(MemoryServiceClient.class, Map.of(
+                "searchMemory", args -> Fixtures.memories(chunks),
+                "getInsights", args -> insights));
+        KnowledgeServiceClient knowledgeClient = Stubs.of(KnowledgeServiceClient.class, Map.of(
+                "searchKnowledge", args -> Fixtures.knowledge(chunks)));
+        EmotionServiceClient emotionClient = Stubs.of(EmotionServiceClient.class, Map.of(
+                "analyze", args -> emotion));
+        VisionServiceClient visionClient = Stubs.of(VisionServiceClient.class, Map.of());
+        PersonaManagementService personaService = Stubs.of(PersonaManagementService.class, Map.of(
+                "getPersonaById", args -> persona));
+        UserSettingsService userSettingsService = Stubs.of(UserSettingsService.class, Map.of(
+                "findDefaultPersonaIdForUser", args -> Optional.empty()));
+        EmbeddingModel embeddingModel = Stubs.of(EmbeddingModel.class, Map.of());
+        ScenarioClassifier scenarioClassifier = (post, image, emo) -> new ScenarioPrediction("comfort", 0.9, "local");
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        spillDir = Files.createTempDirectory("memory-spill");
+        memoryQueue = new MemoryWriteBehindQueue(memoryClient, new ObjectMapper(), meterRegistry,
+                Integer.MAX_VALUE, 50, spillDir.resolve("spill.jsonl"), 0);
+        contextExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+        CompanionPipeline pipeline = new CompanionPipeline(
+                personaService,
+                userSettingsService,
+                scenarioClassifier,
+                new JointClassifier(chatClient),
+                new ClassificationProperties(),
+                new PersonaPromptRegistry(10_000),
+                new ContextPacker(new ContextPackingProperties(), meterRegistry),
+                new SemanticCommentCache(embeddingModel, new SemanticCacheProperties(), meterRegistry),
+                memoryQueue,
+                new ContextPrefetchCache(new PrefetchProperties(), meterRegistry),
+                4000,
+                meterRegistry,
+                new CommentPipelineMetrics(meterRegistry));
+        companionService = new CompanionServiceImpl(
+                chatClient,
+                pipeline,
+                memoryClient,
+                knowledgeClient,
+                emotionClient,
+                visionClient,
+                contextExecutor,
+                5000,
+                new CallCoalescer(meterRegistry));
+    }
+
+    @Benchmark
+    public String generateComment() {
+        return companionService.generateComment(request, "bench-persona", "bench-user");
+    }
+
+    /**
+     * 每轮迭代结束后清空记忆写回队列（桩客户端直接丢弃），避免堆内积压影响后续迭代。
+     */
+    @TearDown(Level.Iteration)
+    public void drainMemoryQueue() {
+        memoryQueue.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        contextExecutor.shutdownNow();
+        Files.deleteIfExists(spillDir.resolve("spill.jsonl"));
+        Files.deleteIfExists(spillDir);
+    }
+}
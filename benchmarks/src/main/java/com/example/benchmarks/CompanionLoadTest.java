@@ -0,0 +1,378 @@
+package com.example.benchmarks;
+
+import com.example.aichatservice.apis.EmotionServiceClient;
+import com.example.aichatservice.apis.reactive.ReactiveEmotionClient;
+import com.example.aichatservice.apis.reactive.ReactiveKnowledgeClient;
+import com.example.aichatservice.apis.reactive.ReactiveMemoryClient;
+import com.example.aichatservice.apis.reactive.ReactiveVisionClient;
+import com.example.aichatservice.cache.SemanticCacheProperties;
+import com.example.aichatservice.cache.SemanticCommentCache;
+import com.example.aichatservice.classifier.ClassificationProperties;
+import com.example.aichatservice.classifier.JointClassifier;
+import com.example.aichatservice.classifier.ScenarioClassifier;
+import com.example.aichatservice.classifier.ScenarioPrediction;
+import com.example.aichatservice.dto.EmotionAnalysisResponse;
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.memory.MemoryWriteBehindQueue;
+import com.example.aichatservice.pipeline.CallCoalescer;
+import com.example.aichatservice.pipeline.CommentPipelineMetrics;
+import com.example.aichatservice.prefetch.ContextPrefetchCache;
+import com.example.aichatservice.prefetch.PrefetchProperties;
+import com.example.aichatservice.prompt.ContextPacker;
+import com.example.aichatservice.prompt.ContextPackingProperties;
+import com.example.aichatservice.prompt.PersonaPromptRegistry;
+import com.example.aichatservice.resilience.ReactiveResilience;
+import com.example.aichatservice.service.CompanionService;
+import com.example.aichatservice.service.PersonaManagementService;
+import com.example.aichatservice.service.UserSettingsService;
+import com.example.aichatservice.service.impl.CompanionPipeline;
+import com.example.aichatservice.service.impl.CompanionServiceImpl;
+import com.example.aichatservice.service.impl.ReactiveCompanionServiceImpl;
+import com.example.apis.KnowledgeServiceClient;
+import com.example.apis.MemoryServiceClient;
+import com.example.apis.VisionServiceClient;
+import com.example.dto.AI.InsightResponse;
+import com.example.dto.post.CommentReq;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 阻塞式与响应式评论引擎的负载对比。
+ * <p>
+ * 与 JMH 基准不同，这里的下游桩会按配置的延迟“等待”后才返回，用来模拟真实的 I/O 等待：
+ * <ul>
+ *     <li>阻塞引擎：Feign 客户端桩与 {@code ChatModel.call} 以 {@code Thread.sleep} 等待，
+ *     请求由一个固定大小的线程池处理，对应 Tomcat 的工作线程；</li>
+ *     <li>响应式引擎：WebClient 使用桩 {@code ExchangeFunction}，延迟后返回 JSON 响应；
+ *     {@code ChatModel.stream} 按 token 间隔逐个推送。</li>
+ * </ul>
+ * 两种引擎都同时收到全部请求，延迟从请求提交开始计算（包含排队时间）。
+ * 熔断器与舱壁放宽到不会拒绝请求，避免它们影响对比结果。
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.benchmarks.CompanionLoadTest [requests] [downstreamMs] [llmMs] [requestThreads]
+ * </pre>
+ */
+public final class CompanionLoadTest {
+
+    private static final String COMMENT = "小林，抱抱你。加班到这么晚真的辛苦了，先好好睡一觉吧。";
+    private static final int TOKENS = 10;
+
+    private final int requests;
+    private final long downstreamMs;
+    private final long llmMs;
+    private final int requestThreads;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Persona persona = Fixtures.persona();
+    private final CommentReq request = Fixtures.request(null);
+    private final EmotionAnalysisResponse emotion = new EmotionAnalysisResponse();
+    private final InsightResponse insights = new InsightResponse();
+
+    private CompanionLoadTest(int requests, long downstreamMs, long llmMs, int requestThreads) {
+        this.requests = requests;
+        this.downstreamMs = downstreamMs;
+        this.llmMs = llmMs;
+        this.requestThreads = requestThreads;
+        persona.setMemoryEnabled(true);
+        persona.setKnowledgeBaseId(1L);
+        emotion.setEmotion("SADNESS");
+        emotion.setConfidence(0.9f);
+        insights.setThemes(List.of("工作压力", "作息"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long downstreamMs = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        long llmMs = args.length > 2 ? Long.parseLong(args[2]) : 300;
+        int requestThreads = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        CompanionLoadTest test = new CompanionLoadTest(requests, downstreamMs, llmMs, requestThreads);
+
+        System.out.printf("requests=%d, downstream=%dms, llm=%dms, blocking request threads=%d%n",
+                requests, downstreamMs, llmMs, requestThreads);
+        // 各跑两轮，第一轮作为预热
+        for (int round = 1; round <= 2; round++) {
+            test.runBlocking(round == 2);
+            test.runReactive(round == 2);
+        }
+        System.exit(0);
+    }
+
+    private void runBlocking(boolean report) throws Exception {
+        Path spillDir = Files.createTempDirectory("memory-spill");
+        ExecutorService contextExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        ExecutorService requestPool = Executors.newFixedThreadPool(requestThreads);
+        try {
+            MemoryServiceClient memoryClient = Stubs.of(MemoryServiceClient.class, Map.of(
+                    "searchMemory", args -> sleepThen(Fixtures.memories(5)),
+                    "getInsights", args -> sleepThen(insights)));
+            KnowledgeServiceClient knowledgeClient = Stubs.of(KnowledgeServiceClient.class, Map.of(
+                    "searchKnowledge", args -> sleepThen(Fixtures.knowledge(5))));
+            EmotionServiceClient emotionClient = Stubs.of(EmotionServiceClient.class, Map.of(
+                    "analyze", args -> sleepThen(emotion)));
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            ChatClient chatClient = ChatClient.create(chatModel());
+            CompanionPipeline pipeline = new CompanionPipeline(
+                    personaService(),
+                    userSettingsService(),
+                    scenarioClassifier(),
+                    new JointClassifier(chatClient),
+                    new ClassificationProperties(),
+                    new PersonaPromptRegistry(10_000),
+                    new ContextPacker(new ContextPackingProperties(), meterRegistry),
+                    new SemanticCommentCache(Stubs.of(EmbeddingModel.class, Map.of()), new SemanticCacheProperties(), meterRegistry),
+                    memoryQueue(memoryClient, meterRegistry, spillDir),
+                    new ContextPrefetchCache(new PrefetchProperties(), meterRegistry),
+                    4000,
+                    meterRegistry,
+                    new CommentPipelineMetrics(meterRegistry));
+            CompanionService service = new CompanionServiceImpl(
+                    chatClient,
+                    pipeline,
+                    memoryClient,
+                    knowledgeClient,
+                    emotionClient,
+                    Stubs.of(VisionServiceClient.class, Map.of()),
+                    contextExecutor,
+                    5000,
+                    new CallCoalescer(meterRegistry));
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            long[] latencies = new long[requests];
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                long submitted = System.nanoTime();
+                futures.add(requestPool.submit(() -> {
+                    service.generateComment(request, "bench-persona", "bench-user");
+                    latencies[index] = System.nanoTime() - submitted;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (report) {
+                report("blocking", elapsed, latencies, threads.getPeakThreadCount());
+            }
+        } finally {
+            requestPool.shutdownNow();
+            contextExecutor.shutdownNow();
+            deleteSpillDir(spillDir);
+        }
+    }
+
+    private void runReactive(boolean report) throws Exception {
+        Path spillDir = Files.createTempDirectory("memory-spill");
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            BulkheadRegistry bulkheads = BulkheadRegistry.of(BulkheadConfig.custom()
+                    .maxConcurrentCalls(Integer.MAX_VALUE)
+                    .build());
+            ReactiveResilience resilience = new ReactiveResilience(CircuitBreakerRegistry.ofDefaults(), bulkheads);
+            WebClient webClient = WebClient.builder()
+                    .exchangeFunction(this::exchange)
+                    .build();
+            ChatClient chatClient = ChatClient.create(chatModel());
+            MemoryServiceClient memoryWriteClient = Stubs.of(MemoryServiceClient.class, Map.of());
+            CompanionPipeline pipeline = new CompanionPipeline(
+                    personaService(),
+                    userSettingsService(),
+                    scenarioClassifier(),
+                    new JointClassifier(chatClient),
+                    new ClassificationProperties(),
+                    new PersonaPromptRegistry(10_000),
+                    new ContextPacker(new ContextPackingProperties(), meterRegistry),
+                    new SemanticCommentCache(Stubs.of(EmbeddingModel.class, Map.of()), new SemanticCacheProperties(), meterRegistry),
+                    memoryQueue(memoryWriteClient, meterRegistry, spillDir),
+                    new ContextPrefetchCache(new PrefetchProperties(), meterRegistry),
+                    4000,
+                    meterRegistry,
+                    new CommentPipelineMetrics(meterRegistry));
+            CompanionService service = new ReactiveCompanionServiceImpl(
+                    chatClient,
+                    pipeline,
+                    new ReactiveMemoryClient(webClient, resilience),
+                    new ReactiveKnowledgeClient(webClient, resilience),
+                    new ReactiveEmotionClient(webClient, resilience),
+                    new ReactiveVisionClient(webClient, resilience),
+                    5000,
+                    new CallCoalescer(meterRegistry));
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            long[] latencies = new long[requests];
+            AtomicInteger failures = new AtomicInteger();
+            long start = System.nanoTime();
+            Flux.range(0, requests)
+                    .flatMap(index -> {
+                        long submitted = System.nanoTime();
+                        return service.generateCommentAsync(request, "bench-persona", "bench-user")
+                                .doOnNext(result -> latencies[index] = System.nanoTime() - submitted)
+                                .doOnError(e -> failures.incrementAndGet())
+                                .onErrorResume(e -> Mono.empty());
+                    }, requests)
+                    .blockLast();
+            long elapsed = System.nanoTime() - start;
+            if (failures.get() > 0) {
+                System.out.printf("reactive: %d requests failed%n", failures.get());
+            }
+            if (report) {
+                report("reactive", elapsed, latencies, threads.getPeakThreadCount());
+            }
+        } finally {
+            deleteSpillDir(spillDir);
+        }
+    }
+
+    /**
+     * 桩 ExchangeFunction：按请求路径返回对应的 JSON，延迟 {@code downstreamMs} 后才发出响应。
+     */
+    private Mono<ClientResponse> exchange(ClientRequest clientRequest) {
+        String path = clientRequest.url().getPath();
+        Object body;
+        if (path.startsWith("/api/v1/emotions")) {
+            body = emotion;
+        } else if (path.endsWith("/insights")) {
+            body = insights;
+        } else if (path.startsWith("/api/v1/memory")) {
+            body = Fixtures.memories(5);
+        } else if (path.startsWith("/api/v1/knowledge-bases")) {
+            body = Fixtures.knowledge(5);
+        } else {
+            return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+        }
+        String json = toJson(body);
+        return Mono.delay(Duration.ofMillis(downstreamMs))
+                .map(ignored -> ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(json)
+                        .build());
+    }
+
+    /**
+     * 同一个桩模型同时支持阻塞与流式调用，两者的总耗时相同（{@code llmMs}）。
+     */
+    private ChatModel chatModel() {
+        ChatResponse response = new ChatResponse(List.of(new Generation(new AssistantMessage(COMMENT))));
+        int tokenLength = Math.max(1, COMMENT.length() / TOKENS);
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return sleepThen(response, llmMs);
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.range(0, TOKENS)
+                        .delayElements(Duration.ofMillis(llmMs / TOKENS))
+                        .map(i -> {
+                            int from = Math.min(i * tokenLength, COMMENT.length());
+                            int to = i == TOKENS - 1 ? COMMENT.length() : Math.min(from + tokenLength, COMMENT.length());
+                            return new ChatResponse(List.of(new Generation(new AssistantMessage(COMMENT.substring(from, to)))));
+                        });
+            }
+        };
+    }
+
+    private PersonaManagementService personaService() {
+        return Stubs.of(PersonaManagementService.class, Map.of("getPersonaById", args -> persona));
+    }
+
+    private static UserSettingsService userSettingsService() {
+        return Stubs.of(UserSettingsService.class, Map.of("findDefaultPersonaIdForUser", args -> Optional.empty()));
+    }
+
+    private static ScenarioClassifier scenarioClassifier() {
+        return (post, image, emo) -> new ScenarioPrediction("comfort", 0.9, "local");
+    }
+
+    private static MemoryWriteBehindQueue memoryQueue(MemoryServiceClient memoryClient, SimpleMeterRegistry meterRegistry,
+                                                      Path spillDir) {
+        return new MemoryWriteBehindQueue(memoryClient, new ObjectMapper(), meterRegistry,
+                Integer.MAX_VALUE, 50, spillDir.resolve("spill.jsonl"), 0);
+    }
+
+    private <T> T sleepThen(T result) {
+        return sleepThen(result, downstreamMs);
+    }
+
+    private static <T> T sleepThen(T result, long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void report(String engine, long elapsedNanos, long[] latencies, int peakThreads) {
+        long[] sorted = Arrays.stream(latencies).filter(l -> l > 0).sorted().toArray();
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%-8s throughput=%.1f req/s, p50=%dms, p99=%dms, max=%dms, peak platform threads=%d%n",
+                engine,
+                sorted.length / seconds,
+                TimeUnit.NANOSECONDS.toMillis(percentile(sorted, 0.50)),
+                TimeUnit.NANOSECONDS.toMillis(percentile(sorted, 0.99)),
+                TimeUnit.NANOSECONDS.toMillis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]),
+                peakThreads);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static void deleteSpillDir(Path spillDir) throws IOException {
+        Files.deleteIfExists(spillDir.resolve("spill.jsonl"));
+        Files.deleteIfExists(spillDir);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.benchmarks;
+
+import com.example.aichatservice.entity.Persona;
+import com.example.dto.AI.KnowledgeSearchResult;
+import com.example.dto.AI.SearchMemoryResponse;
+import com.example.dto.post.CommentReq;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试共用的样例数据。
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * 一个模板库同时包含嵌套（场景 -> 情绪 -> 模板）和扁平结构的人格，贴近线上数据。
+     */
+    static Persona persona() {
+        Map<String, Object> templates = new LinkedHashMap<>();
+        templates.put("comfort", Map.of(
+                "SADNESS", "{name}，抱抱你。我读到你的{specific_detail}，能想象这段时间不容易。先允许自己慢一点，不妨从{micro_step}开始。{emoji}",
+                "FEAR", "{name}，担心是正常的。{specific_detail} 让人不安，我们先把能控制的部分列出来，比如{micro_step}。{emoji}",
+                "default", "{name}，辛苦了。看到你的{specific_detail}，想告诉你：你并不孤单。{emoji}"));
+        templates.put("celebrate", Map.of(
+                "JOY", "{name}，看完你这段分享替你开心！{specific_detail} 来之不易，愿好状态延续～{emoji}",
+                "default", "{name}，恭喜！{specific_detail} 值得好好庆祝。{emoji}"));
+        templates.put("encourage", "{name}，能把心情写下来本身就很不容易。我注意到{specific_detail}，先做{micro_step}，我会在这里陪你。{emoji}");
+        templates.put("gentle_reminder", "{name}，读到你的{specific_detail}，或许可以提前准备{prep_suggestion}，把不确定降到最低。{emoji}");
+        templates.put("neutral_reply", "{name}，我看见你分享了{specific_detail}，很有生活气息。哪个瞬间最让你难忘？{emoji}");
+
+        Persona persona = new Persona();
+        persona.setId("bench-persona");
+        persona.setUserId("bench-user");
+        persona.setName("温情陪伴者");
+        persona.setRole("温情、可靠、边界清晰的长情陪伴者");
+        persona.setTone("温柔、尊重、不过度干预；像长期朋友");
+        persona.setStyle("先共情再建议；多用第二人称；短句+分点；不过度热情");
+        persona.setCommentTemplates(templates);
+        return persona;
+    }
+
+    static CommentReq request(Integer maxLength) {
+        return new CommentReq("小林", "今天加班到十点，项目还是没过评审，感觉自己好累，不知道还能坚持多久。",
+                List.of(), null, null, null, maxLength);
+    }
+
+    static List<SearchMemoryResponse> memories(int n) {
+        List<SearchMemoryResponse> memories = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            memories.add(new SearchMemoryResponse("用户提问/帖子内容摘要: 第" + i + "次提到工作压力大、经常加班\n我的回答: 记得照顾好自己", 0.8 - i * 0.01));
+        }
+        return memories;
+    }
+
+    static List<KnowledgeSearchResult> knowledge(int n) {
+        List<KnowledgeSearchResult> chunks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            KnowledgeSearchResult chunk = new KnowledgeSearchResult();
+            chunk.setContent("压力管理第" + i + "条：规律作息、拆分任务、适度运动可以显著缓解长期疲劳感。");
+            chunk.setDocumentId((long) i);
+            chunk.setDistance(0.3 + i * 0.01);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.example.aichatservice.prompt.CommentPromptBuilder;
+import com.example.aichatservice.prompt.CompiledPersonaPrompt;
+import com.example.dto.post.CommentReq;
+import com.example.logging.LogPayload;
+import com.example.logging.LogSampling;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热路径日志改造前后的开销对比，分别对应评论生成与记忆检索中的三类日志：
+ * <ul>
+ *     <li>prompt*：完整 System/User Prompt 的 DEBUG 日志。改造前 DEBUG 打开即每次输出，改造后只输出被抽样的请求（这里未抽中）；</li>
+ *     <li>comment*：模型回复的 INFO 日志。改造前输出全文，改造后截断为 {@link LogPayload#DEFAULT_MAX_CHARS} 字；</li>
+ *     <li>preview*：DEBUG 关闭时的查询预览。改造前 {@code substring} 在调用处就已执行，改造后只创建一个延迟对象。</li>
+ * </ul>
+ * 日志同步写入一个丢弃所有字节的输出流，测得的是格式化与编码的 CPU 开销；
+ * 线上的异步 appender 会把这部分开销移到后台线程，但不会消除它。
+ * 配合 {@code -prof gc} 运行可以看到每次操作的分配字节数（gc.alloc.rate.norm）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathLoggingBenchmark {
+
+    private LoggerContext loggerContext;
+    private Logger debugLogger;
+    private Logger infoLogger;
+    private String systemPrompt;
+    private String userPrompt;
+    private String comment;
+    private String query;
+
+    @Setup
+    public void setUp() {
+        loggerContext = new LoggerContext();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p [%t] %logger{39} : %m%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(loggerContext);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+
+        debugLogger = loggerContext.getLogger("bench.debug");
+        debugLogger.setLevel(Level.DEBUG);
+        debugLogger.addAppender(appender);
+        infoLogger = loggerContext.getLogger("bench.info");
+        infoLogger.setLevel(Level.INFO);
+        infoLogger.addAppender(appender);
+
+        CommentReq request = Fixtures.request(null);
+        systemPrompt = CompiledPersonaPrompt.compile(Fixtures.persona()).select("comfort", "SADNESS")
+                .prompt(CompiledPersonaPrompt.DEFAULT_MAX_LENGTH);
+        userPrompt = CommentPromptBuilder.userPrompt(request,
+                CommentPromptBuilder.section("相关记忆", Fixtures.memories(5), m -> m.getContent()));
+        comment = "小林，抱抱你。加班到十点、项目又没过评审，换谁都会觉得累。".repeat(6);
+        query = request.postContent();
+    }
+
+    @TearDown
+    public void tearDown() {
+        loggerContext.stop();
+    }
+
+    @Benchmark
+    public void promptBefore() {
+        debugLogger.debug("【评论生成-步骤4】构建完成的 System Prompt:\n---\n{}\n---", systemPrompt);
+        debugLogger.debug("【评论生成-步骤4】构建完成的 User Prompt (含上下文):\n---\n{}\n---", userPrompt);
+    }
+
+    @Benchmark
+    public void promptAfter() {
+        if (debugLogger.isDebugEnabled() && LogSampling.isSampled()) {
+            debugLogger.debug("【评论生成-步骤4】构建完成的 System Prompt:\n---\n{}\n---", LogPayload.redact(systemPrompt, 4000));
+            debugLogger.debug("【评论生成-步骤4】构建完成的 User Prompt (含上下文):\n---\n{}\n---", LogPayload.redact(userPrompt, 4000));
+        }
+    }
+
+    @Benchmark
+    public void commentBefore() {
+        infoLogger.info("【评论生成-步骤5】AI 模型成功返回评论: '{}'", comment);
+    }
+
+    @Benchmark
+    public void commentAfter() {
+        infoLogger.info("【评论生成-步骤5】AI 模型成功返回评论: '{}'", LogPayload.truncate(comment));
+    }
+
+    @Benchmark
+    public void previewBefore() {
+        infoLogger.debug("【AI调用】准备调用 EmbeddingModel.embed(String)，输入文本: '{}...'", query.substring(0, Math.min(30, query.length())));
+    }
+
+    @Benchmark
+    public void previewAfter() {
+        infoLogger.debug("【AI调用】准备调用 EmbeddingModel.embed(String)，输入文本: '{}'", LogPayload.redact(query, 30));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Persona.commentTemplates} 的 Jackson 序列化/反序列化基准测试（人格的创建、更新与克隆都会经过这里）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonaTemplatesJsonBenchmark {
+
+    private static final TypeReference<Map<String, Object>> TEMPLATES_TYPE = new TypeReference<>() {
+    };
+
+    private ObjectMapper objectMapper;
+    private Map<String, Object> templates;
+    private String json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = new ObjectMapper();
+        templates = Fixtures.persona().getCommentTemplates();
+        json = objectMapper.writeValueAsString(templates);
+    }
+
+    @Benchmark
+    public String serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(templates);
+    }
+
+    @Benchmark
+    public Map<String, Object> deserialize() throws JsonProcessingException {
+        return objectMapper.readValue(json, TEMPLATES_TYPE);
+    }
+}
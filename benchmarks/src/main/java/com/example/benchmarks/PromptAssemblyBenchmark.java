@@ -0,0 +1,138 @@
+package com.example.benchmarks;
+
+import com.example.aichatservice.entity.Persona;
+import com.example.aichatservice.prompt.CommentPromptBuilder;
+import com.example.aichatservice.prompt.CompiledPersonaPrompt;
+import com.example.aichatservice.prompt.ContextPacker;
+import com.example.aichatservice.prompt.ContextPackingProperties;
+import com.example.dto.AI.KnowledgeSearchResult;
+import com.example.dto.AI.SearchMemoryResponse;
+import com.example.dto.post.CommentReq;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt 拼装热路径的基准测试。
+ * <p>
+ * 建议带上 GC profiler 运行，以便同时观察每次操作的分配量（gc.alloc.rate.norm）：
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar PromptAssembly -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+
+    /**
+     * 上下文中记忆与知识片段各自的条数。
+     */
+    @Param({"0", "5", "20"})
+    public int chunks;
+
+    private Persona persona;
+    private CompiledPersonaPrompt compiled;
+    private CommentReq defaultLengthRequest;
+    private CommentReq customLengthRequest;
+    private List<SearchMemoryResponse> memories;
+    private List<KnowledgeSearchResult> knowledge;
+    private String context;
+    private ContextPacker contextPacker;
+
+    @Setup
+    public void setUp() {
+        persona = Fixtures.persona();
+        compiled = CompiledPersonaPrompt.compile(persona);
+        defaultLengthRequest = Fixtures.request(null);
+        customLengthRequest = Fixtures.request(80);
+        memories = Fixtures.memories(chunks);
+        contextPacker = new ContextPacker(new ContextPackingProperties(), new SimpleMeterRegistry());
+        knowledge = Fixtures.knowledge(chunks);
+        context = buildContext();
+    }
+
+    /**
+     * 人格模板编译：人格首次使用或变更后才会发生。
+     */
+    @Benchmark
+    public CompiledPersonaPrompt compileTemplates() {
+        return CompiledPersonaPrompt.compile(persona);
+    }
+
+    /**
+     * 模板查找（原 findTemplateForScenarioAndEmotion）：命中情绪专属模板。
+     */
+    @Benchmark
+    public CompiledPersonaPrompt.Selection selectTemplateByEmotion() {
+        return compiled.select("comfort", "SADNESS");
+    }
+
+    /**
+     * 模板查找：回退到场景默认模板。
+     */
+    @Benchmark
+    public CompiledPersonaPrompt.Selection selectTemplateFallback() {
+        return compiled.select("comfort", "SURPRISE");
+    }
+
+    /**
+     * System Prompt（原 buildSystemPromptWithEmotionAndInsight），默认字数限制。
+     */
+    @Benchmark
+    public String systemPromptDefaultLength() {
+        return compiled.select("comfort", "SADNESS").prompt(CompiledPersonaPrompt.DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * System Prompt，自定义字数限制。
+     */
+    @Benchmark
+    public String systemPromptCustomLength() {
+        return compiled.select("comfort", "SADNESS").prompt(customLengthRequest.maxLength());
+    }
+
+    /**
+     * 上下文拼接：N 条记忆 + N 条知识片段。
+     */
+    @Benchmark
+    public String contextSections() {
+        return buildContext();
+    }
+
+    /**
+     * 带 token 预算、去重与排序的上下文打包：N 条记忆 + N 条知识片段。
+     */
+    @Benchmark
+    public String packedContextSections() {
+        return contextPacker.packMemories(memories) + contextPacker.packKnowledge(knowledge);
+    }
+
+    /**
+     * User Prompt（原 buildUserPromptWithContext）。
+     */
+    @Benchmark
+    public String userPrompt() {
+        return CommentPromptBuilder.userPrompt(defaultLengthRequest, context);
+    }
+
+    private String buildContext() {
+        return CommentPromptBuilder.section("相关记忆", memories, SearchMemoryResponse::getContent)
+                + CommentPromptBuilder.section("相关专业知识", knowledge, KnowledgeSearchResult::getContent);
+    }
+}
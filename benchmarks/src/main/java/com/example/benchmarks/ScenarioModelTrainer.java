@@ -0,0 +1,130 @@
+package com.example.benchmarks;
+
+import com.example.aichatservice.classifier.LocalScenarioClassifier;
+import com.example.aichatservice.classifier.ScenarioClassifier;
+import com.example.aichatservice.classifier.ScenarioFeatures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 本地场景分类模型的离线训练器。
+ * <p>
+ * 输入是 ai-chat-service 在 {@code scenario-training} profile 下写出的 {@code scenario.training} 日志
+ * （即大模型给出的场景判定），输出是 {@link LocalScenarioClassifier} 可直接加载的 TSV 模型文件。
+ * 训练方式为带 L2 正则的多分类逻辑回归 (SGD)，特征抽取与线上推理共用 {@link ScenarioFeatures}。
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.benchmarks.ScenarioModelTrainer scenario-training.tsv scenario-model.tsv [轮数]
+ * </pre>
+ */
+public final class ScenarioModelTrainer {
+
+    private static final double LEARNING_RATE = 0.1;
+    private static final double L2 = 1e-4;
+
+    private ScenarioModelTrainer() {
+    }
+
+    record Sample(List<String> features, int label) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: ScenarioModelTrainer <训练日志> <输出模型文件> [轮数]");
+            System.exit(1);
+        }
+        int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<Sample> samples = readSamples(Path.of(args[0]));
+        System.out.printf("读取到 %d 条训练样本，开始训练 %d 轮...%n", samples.size(), epochs);
+        Map<String, double[]> model = train(samples, epochs);
+
+        List<String> lines = new ArrayList<>();
+        lines.add("# 由 ScenarioModelTrainer 基于 " + samples.size() + " 条大模型判定记录训练生成");
+        lines.addAll(LocalScenarioClassifier.toLines(model));
+        Files.write(Path.of(args[1]), lines, StandardCharsets.UTF_8);
+        System.out.printf("训练完成，共 %d 个特征，模型已写入 %s%n", model.size(), args[1]);
+    }
+
+    /**
+     * 解析训练日志。每行的最后四个 TAB 分隔字段为：场景、情绪、帖子文本、图片描述，
+     * 场景字段前面可能带有日志框架输出的时间戳等前缀，取其最后一个空白之后的部分。
+     */
+    static List<Sample> readSamples(Path path) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\t", -1);
+            if (parts.length < 4) {
+                continue;
+            }
+            String head = parts[parts.length - 4].trim();
+            int label = ScenarioClassifier.SCENARIOS.indexOf(head.substring(head.lastIndexOf(' ') + 1));
+            if (label < 0) {
+                continue;
+            }
+            String emotion = parts[parts.length - 3];
+            String postContent = parts[parts.length - 2];
+            String imageDescription = parts[parts.length - 1];
+            samples.add(new Sample(ScenarioFeatures.extract(postContent, imageDescription, emotion), label));
+        }
+        return samples;
+    }
+
+    static Map<String, double[]> train(List<Sample> samples, int epochs) {
+        int classes = ScenarioClassifier.SCENARIOS.size();
+        Map<String, double[]> weights = new HashMap<>();
+        List<Sample> order = new ArrayList<>(samples);
+        Random random = new Random(42);
+
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            Collections.shuffle(order, random);
+            double loss = 0;
+            for (Sample sample : order) {
+                double[] scores = new double[classes];
+                for (String feature : sample.features()) {
+                    double[] w = weights.computeIfAbsent(feature, k -> new double[classes]);
+                    for (int c = 0; c < classes; c++) {
+                        scores[c] += w[c];
+                    }
+                }
+                double[] probs = softmax(scores);
+                loss -= Math.log(Math.max(probs[sample.label()], 1e-12));
+
+                for (String feature : sample.features()) {
+                    double[] w = weights.get(feature);
+                    for (int c = 0; c < classes; c++) {
+                        double gradient = probs[c] - (c == sample.label() ? 1.0 : 0.0);
+                        w[c] -= LEARNING_RATE * (gradient + L2 * w[c]);
+                    }
+                }
+            }
+            System.out.printf("第 %d 轮，平均损失: %.4f%n", epoch + 1, order.isEmpty() ? 0 : loss / order.size());
+        }
+        return weights;
+    }
+
+    private static double[] softmax(double[] scores) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double score : scores) {
+            max = Math.max(max, score);
+        }
+        double sum = 0;
+        double[] probs = new double[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            probs[i] = Math.exp(scores[i] - max);
+            sum += probs[i];
+        }
+        for (int i = 0; i < probs.length; i++) {
+            probs[i] /= sum;
+        }
+        return probs;
+    }
+}
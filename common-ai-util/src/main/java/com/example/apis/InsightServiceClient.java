@@ -6,7 +6,7 @@ import com.example.dto.AI.InsightJobStatusResponse;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.*;
 
-@FeignClient(name = "insight-service", url = "http://localhost:1238")
+@FeignClient(name = "insight-service", url = "${services.insight.url:http://localhost:1238}")
 public interface InsightServiceClient {
 
     @PostMapping("/api/v1/insight/jobs")
@@ -10,7 +10,7 @@ import org.springframework.web.bind.annotation.RequestHeader;
 
 import java.util.List;
 
-@FeignClient(name = "knowledge-service", url = "http://localhost:1237")
+@FeignClient(name = "knowledge-service", url = "${services.knowledge.url:http://localhost:1237}")
 public interface KnowledgeServiceClient {
 
     @PostMapping("/api/v1/knowledge-bases/{kbId}/search")
@@ -1,6 +1,7 @@
 package com.example.apis;
 
 import com.example.dto.AI.AddMemoryRequest;
+import com.example.dto.AI.BatchAddMemoryRequest;
 import com.example.dto.AI.InsightResponse;
 import com.example.dto.AI.SearchMemoryRequest;
 import com.example.dto.AI.SearchMemoryResponse;
@@ -12,12 +13,15 @@ import org.springframework.web.bind.annotation.RequestBody;
 
 import java.util.List;
 
-@FeignClient(name = "memory-service", url = "http://localhost:1236", path = "/api/v1/memory")
+@FeignClient(name = "memory-service", url = "${services.memory.url:http://localhost:1236}", path = "/api/v1/memory")
 public interface MemoryServiceClient {
 
     @PostMapping("/{userId}/{personaId}")
     void addMemory(@PathVariable("userId") String userId, @PathVariable("personaId") String personaId, @RequestBody AddMemoryRequest request);
 
+    @PostMapping("/{userId}/{personaId}/batch")
+    void addMemories(@PathVariable("userId") String userId, @PathVariable("personaId") String personaId, @RequestBody BatchAddMemoryRequest request);
+
     @PostMapping("/{userId}/{personaId}/search")
     List<SearchMemoryResponse> searchMemory(@PathVariable("userId") String userId, @PathVariable("personaId") String personaId, @RequestBody SearchMemoryRequest request);
 
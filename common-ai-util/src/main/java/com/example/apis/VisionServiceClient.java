@@ -1,5 +1,7 @@
 package com.example.apis;
 
+import com.example.dto.AI.BatchVisionAnalysisRequest;
+import com.example.dto.AI.BatchVisionAnalysisResponse;
 import com.example.dto.AI.VisionAnalysisRequest;
 import com.example.dto.AI.VisionAnalysisResponse;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -9,7 +11,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 /**
  * 用于调用 vision-analysis-service 的 OpenFeign 客户端。
  */
-@FeignClient(name = "vision-service", url = "http://localhost:1242", path = "/api/v1")
+@FeignClient(name = "vision-service", url = "${services.vision.url:http://localhost:1242}", path = "/api/v1")
 public interface VisionServiceClient {
 
     /**
@@ -20,4 +22,13 @@ public interface VisionServiceClient {
      */
     @PostMapping("/vision/analyze")
     VisionAnalysisResponse analyze(@RequestBody VisionAnalysisRequest request);
+
+    /**
+     * 调用视觉分析服务的 /api/v1/vision/analyze/batch 端点，并发分析一个帖子中的多张图片。
+     *
+     * @param request 图片URL列表及整批的截止时间
+     * @return 与请求顺序一致的逐图结果，超时或失败的图片带有对应状态
+     */
+    @PostMapping("/vision/analyze/batch")
+    BatchVisionAnalysisResponse analyzeBatch(@RequestBody BatchVisionAnalysisRequest request);
 }
@@ -0,0 +1,87 @@
+package com.example.concurrency;
+
+import feign.RequestInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * 虚拟线程运行模式的自动配置，所有依赖 common-ai-util 的服务都会自动启用：
+ * <ul>
+ *     <li>{@link VirtualThreadsEnvironmentPostProcessor} 默认开启 {@code spring.threads.virtual.enabled}；</li>
+ *     <li>虚拟线程模式下用 JFR 检测并上报钉住载体线程的 {@code synchronized} 调用；</li>
+ *     <li>ChatModel / EmbeddingModel 的调用统一经过 {@link LlmDispatcher}：按 {@link LlmPriority} 排队、限速、
+ *     根据 429 与耗时自适应调整并发，避免无界的虚拟线程或后台任务把请求全部压向模型服务；</li>
+ *     <li>优先级通过 {@value LlmPriority#HEADER} 请求头在服务之间传递。</li>
+ * </ul>
+ * 配置项见 {@link ConcurrencyProperties}。
+ */
+@AutoConfiguration
+@EnableConfigurationProperties(ConcurrencyProperties.class)
+public class ConcurrencyAutoConfiguration {
+
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    @ConditionalOnProperty(prefix = ConcurrencyProperties.PREFIX + ".pinning-monitor", name = "enabled", matchIfMissing = true)
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(ConcurrencyProperties properties, MeterRegistry meterRegistry) {
+        return new VirtualThreadPinningMonitor(meterRegistry,
+                Duration.ofMillis(properties.getPinningMonitor().getThresholdMs()));
+    }
+
+    /**
+     * BeanPostProcessor 需要在其它 Bean 之前创建，因此声明为静态方法，并直接从 Environment 绑定配置。
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.ai.chat.model.ChatModel")
+    static class LlmConcurrencyConfiguration {
+
+        @Bean
+        static LlmConcurrencyPostProcessor llmConcurrencyPostProcessor(Environment environment,
+                                                                       ObjectProvider<MeterRegistry> meterRegistry) {
+            ConcurrencyProperties.Llm llm = Binder.get(environment)
+                    .bind(ConcurrencyProperties.PREFIX + ".llm", ConcurrencyProperties.Llm.class)
+                    .orElseGet(ConcurrencyProperties.Llm::new);
+            return new LlmConcurrencyPostProcessor(llm, meterRegistry,
+                    environment.getProperty("spring.application.name", "unknown"));
+        }
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<LlmPriorityFilter> llmPriorityFilter() {
+        FilterRegistrationBean<LlmPriorityFilter> registration = new FilterRegistrationBean<>(new LlmPriorityFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    /**
+     * 显式设置了优先级的调用在请求下游服务时携带优先级请求头，使下游的模型调用按同一优先级排队。
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(RequestInterceptor.class)
+    static class FeignPropagation {
+
+        @Bean
+        public RequestInterceptor llmPriorityRequestInterceptor() {
+            return template -> {
+                if (LlmPriority.isExplicit()) {
+                    template.header(LlmPriority.HEADER, LlmPriority.current().name());
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.concurrency;
+
+/**
+ * 在 {@code ai.concurrency.llm.acquire-timeout-ms} 内没有拿到大模型调用许可时抛出。
+ * 调用方应把它当作下游限流处理（降级或返回 429），而不是重试。
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    public ConcurrencyLimitExceededException(String guard, int limit, long waitedMs) {
+        super(String.format("LLM concurrency limit reached for '%s' (limit=%d, waited=%dms)", guard, limit, waitedMs));
+    }
+}
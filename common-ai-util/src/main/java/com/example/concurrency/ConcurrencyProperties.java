@@ -0,0 +1,84 @@
+package com.example.concurrency;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 线程模型与下游大模型并发配置，前缀 {@code ai.concurrency}，所有依赖 common-ai-util 的服务共用。
+ * <pre>
+ * ai:
+ *   concurrency:
+ *     virtual-threads: true        # 请求处理、@Async、@Scheduled 使用虚拟线程
+ *     pinning-monitor:
+ *       enabled: true
+ *       threshold-ms: 20           # 虚拟线程被钉住超过该时长才上报
+ *     llm:
+ *       acquire-timeout-ms:        # 各优先级等待许可的最长时间，超时抛出 ConcurrencyLimitExceededException
+ *         interactive: 10000
+ *         dialogue: 30000
+ *         background: 300000
+ *       chat:
+ *         max-concurrent: 16       # 自适应并发上限的范围 [min, max]，max 为 0 表示不调度
+ *         min-concurrent: 2
+ *         requests-per-second: 0   # 令牌桶限速，0 表示不限速
+ *         burst: 10
+ *         latency-threshold-ms: 30000  # 单次调用超过该耗时视为过载信号
+ *       embedding:
+ *         max-concurrent: 32
+ *         min-concurrent: 4
+ *         latency-threshold-ms: 5000
+ * </pre>
+ * 每个服务各自调度本进程内的调用；多个服务共用同一个服务商账号时，各服务的 {@code requests-per-second}
+ * 之和应不超过账号的配额。
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.concurrency")
+public class ConcurrencyProperties {
+
+    public static final String PREFIX = "ai.concurrency";
+
+    /**
+     * 是否默认开启 {@code spring.threads.virtual.enabled}。服务自己显式配置了该属性时以服务配置为准。
+     */
+    private boolean virtualThreads = true;
+
+    private PinningMonitor pinningMonitor = new PinningMonitor();
+
+    private Llm llm = new Llm();
+
+    @Data
+    public static class PinningMonitor {
+        private boolean enabled = true;
+        private long thresholdMs = 20;
+    }
+
+    @Data
+    public static class Llm {
+        private Map<LlmPriority, Long> acquireTimeoutMs = new EnumMap<>(Map.of(
+                LlmPriority.INTERACTIVE, 10_000L,
+                LlmPriority.DIALOGUE, 30_000L,
+                LlmPriority.BACKGROUND, 300_000L));
+        private Limits chat = Limits.of(16, 2, 30_000);
+        private Limits embedding = Limits.of(32, 4, 5_000);
+    }
+
+    @Data
+    public static class Limits {
+        private int maxConcurrent;
+        private int minConcurrent;
+        private double requestsPerSecond = 0;
+        private int burst = 10;
+        private long latencyThresholdMs;
+
+        static Limits of(int maxConcurrent, int minConcurrent, long latencyThresholdMs) {
+            Limits limits = new Limits();
+            limits.setMaxConcurrent(maxConcurrent);
+            limits.setMinConcurrent(minConcurrent);
+            limits.setLatencyThresholdMs(latencyThresholdMs);
+            return limits;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.concurrency;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把一类大模型调用（对话或向量化）交给 {@link LlmDispatcher} 调度的方法拦截器。
+ * <p>
+ * 使用虚拟线程后，线程池大小不再替我们限制同时发往模型服务的请求数，超过服务商配额的并发只会换来 429。
+ * 阻塞调用在调用线程上排队等待许可（虚拟线程等待不占用载体线程）；流式调用在订阅时获取许可，
+ * 在流结束、出错或取消时归还。调用的优先级取自发起调用时线程上的 {@link LlmPriority}。
+ */
+public class LlmConcurrencyGuard implements MethodInterceptor {
+
+    private final LlmDispatcher dispatcher;
+
+    public LlmConcurrencyGuard(LlmDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * 只拦截会真正发起远程调用的方法：ChatModel 的 call/stream 与 EmbeddingModel 的 call/embed*。
+     * 其余方法（如 getDefaultOptions、dimensions）直接放行。
+     */
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        LlmPriority priority = LlmPriority.current();
+        if ("stream".equals(method) && Flux.class.isAssignableFrom(invocation.getMethod().getReturnType())) {
+            return guardStream(invocation, priority);
+        }
+        if (!"call".equals(method) && !method.startsWith("embed")) {
+            return invocation.proceed();
+        }
+        dispatcher.acquire(priority);
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            dispatcher.release(System.nanoTime() - start, error);
+        }
+    }
+
+    private Flux<?> guardStream(MethodInvocation invocation, LlmPriority priority) {
+        AtomicLong start = new AtomicLong();
+        Mono<Boolean> permit = Mono.defer(() -> dispatcher.tryAcquire(priority)
+                ? Mono.just(true)
+                // 没有空闲许可时在 boundedElastic 上排队，避免阻塞事件循环线程
+                : Mono.fromCallable(() -> {
+                    dispatcher.acquire(priority);
+                    return true;
+                }).subscribeOn(Schedulers.boundedElastic()));
+        // usingWhen 保证拿到的许可在流结束、出错或被取消时都会归还
+        return Flux.usingWhen(permit,
+                ignored -> {
+                    start.set(System.nanoTime());
+                    return proceedStream(invocation);
+                },
+                ignored -> Mono.fromRunnable(() -> dispatcher.release(System.nanoTime() - start.get(), null)),
+                (ignored, error) -> Mono.fromRunnable(() -> dispatcher.release(System.nanoTime() - start.get(), error)),
+                ignored -> Mono.fromRunnable(() -> dispatcher.release(System.nanoTime() - start.get(), null)));
+    }
+
+    private static Flux<?> proceedStream(MethodInvocation invocation) {
+        try {
+            return (Flux<?>) invocation.proceed();
+        } catch (Throwable e) {
+            return Flux.error(e);
+        }
+    }
+}
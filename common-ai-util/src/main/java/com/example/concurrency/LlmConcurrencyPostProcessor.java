@@ -0,0 +1,69 @@
+package com.example.concurrency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.reflect.Modifier;
+
+/**
+ * 给容器中所有 {@link ChatModel} 与 {@link EmbeddingModel} 套上 {@link LlmConcurrencyGuard}，
+ * 使本服务内的所有模型调用（无论通过哪个 ChatClient 发起）都经过同一个 {@link LlmDispatcher} 调度。
+ * 同一类模型的所有 Bean 共用一个调度器，{@code max-concurrent} 为 0 时不做包装。
+ * 代理基于目标类生成，按具体类型（如 ZhiPuAiChatModel）注入的地方同样拿到受调度的实例。
+ */
+@Slf4j
+public class LlmConcurrencyPostProcessor implements BeanPostProcessor {
+
+    private final ConcurrencyProperties.Llm properties;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final String service;
+    private LlmConcurrencyGuard chatGuard;
+    private LlmConcurrencyGuard embeddingGuard;
+
+    public LlmConcurrencyPostProcessor(ConcurrencyProperties.Llm properties, ObjectProvider<MeterRegistry> meterRegistry,
+                                       String service) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.service = service;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof ChatModel && properties.getChat().getMaxConcurrent() > 0) {
+            return guard(bean, beanName, chatGuard());
+        }
+        if (bean instanceof EmbeddingModel && properties.getEmbedding().getMaxConcurrent() > 0) {
+            return guard(bean, beanName, embeddingGuard());
+        }
+        return bean;
+    }
+
+    private Object guard(Object bean, String beanName, LlmConcurrencyGuard guard) {
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(!Modifier.isFinal(bean.getClass().getModifiers()));
+        proxyFactory.addAdvice(guard);
+        log.info("【LLM调度】模型 Bean '{}' ({}) 的调用将经过调度器", beanName, bean.getClass().getSimpleName());
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    private synchronized LlmConcurrencyGuard chatGuard() {
+        if (chatGuard == null) {
+            chatGuard = new LlmConcurrencyGuard(new LlmDispatcher("chat", properties.getChat(),
+                    properties.getAcquireTimeoutMs(), meterRegistry.getObject(), service));
+        }
+        return chatGuard;
+    }
+
+    private synchronized LlmConcurrencyGuard embeddingGuard() {
+        if (embeddingGuard == null) {
+            embeddingGuard = new LlmConcurrencyGuard(new LlmDispatcher("embedding", properties.getEmbedding(),
+                    properties.getAcquireTimeoutMs(), meterRegistry.getObject(), service));
+        }
+        return embeddingGuard;
+    }
+}
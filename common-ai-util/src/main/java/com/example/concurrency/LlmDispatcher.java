@@ -0,0 +1,238 @@
+package com.example.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一类大模型调用（对话或向量化）的调度器：按优先级排队、令牌桶限速、自适应并发上限。
+ * <ul>
+ *     <li>优先级：有更高优先级的调用在排队时，低优先级调用不会被放行；同一优先级内大致先到先得；</li>
+ *     <li>限速：每秒最多发出 {@code requestsPerSecond} 个调用，允许 {@code burst} 个突发；</li>
+ *     <li>自适应并发（AIMD）：调用成功且耗时正常时上限缓慢增加（每个上限窗口 +1），
+ *     遇到服务商限流（429）时上限减半，耗时超过阈值时上限降低 10%，始终保持在 [min, max] 之间。</li>
+ * </ul>
+ * 等待超过对应优先级的超时时间抛出 {@link ConcurrencyLimitExceededException}。
+ */
+@Slf4j
+public class LlmDispatcher {
+
+    private static final LlmPriority[] PRIORITIES = LlmPriority.values();
+
+    private final String name;
+    private final int minConcurrent;
+    private final int maxConcurrent;
+    private final long latencyThresholdNanos;
+    private final Map<LlmPriority, Long> acquireTimeoutsMs;
+    private final TokenBucket tokenBucket;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Map<LlmPriority, Condition> ready = new EnumMap<>(LlmPriority.class);
+    private final AtomicIntegerArray waiting = new AtomicIntegerArray(PRIORITIES.length);
+    private volatile int inFlight;
+    private volatile double limit;
+
+    private final Map<LlmPriority, Timer> waitTimers = new EnumMap<>(LlmPriority.class);
+    private final Map<LlmPriority, Counter> rejected = new EnumMap<>(LlmPriority.class);
+    private final Counter rateLimited;
+
+    public LlmDispatcher(String name, ConcurrencyProperties.Limits limits, Map<LlmPriority, Long> acquireTimeoutsMs,
+                         MeterRegistry meterRegistry, String service) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, limits.getMaxConcurrent());
+        this.minConcurrent = Math.max(1, Math.min(limits.getMinConcurrent(), maxConcurrent));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(limits.getLatencyThresholdMs());
+        this.acquireTimeoutsMs = acquireTimeoutsMs;
+        this.tokenBucket = limits.getRequestsPerSecond() > 0
+                ? new TokenBucket(limits.getRequestsPerSecond(), Math.max(1, limits.getBurst()))
+                : null;
+        this.limit = maxConcurrent;
+
+        for (LlmPriority priority : PRIORITIES) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            ready.put(priority, lock.newCondition());
+            Gauge.builder("llm.dispatcher.queue.depth", waiting, w -> w.get(priority.ordinal()))
+                    .description("等待大模型调用许可的请求数")
+                    .tags("service", service, "guard", name, "priority", tag)
+                    .register(meterRegistry);
+            waitTimers.put(priority, Timer.builder("llm.dispatcher.wait")
+                    .description("等待大模型调用许可的耗时")
+                    .tags("service", service, "guard", name, "priority", tag)
+                    .register(meterRegistry));
+            rejected.put(priority, Counter.builder("llm.dispatcher.rejected")
+                    .description("等待许可超时而被拒绝的大模型调用数")
+                    .tags("service", service, "guard", name, "priority", tag)
+                    .register(meterRegistry));
+        }
+        Gauge.builder("llm.dispatcher.in_flight", this, d -> d.inFlight)
+                .description("正在进行中的大模型调用数")
+                .tags("service", service, "guard", name)
+                .register(meterRegistry);
+        Gauge.builder("llm.dispatcher.limit", this, d -> Math.floor(d.limit))
+                .description("当前的自适应并发上限")
+                .tags("service", service, "guard", name)
+                .register(meterRegistry);
+        this.rateLimited = Counter.builder("llm.dispatcher.rate_limited")
+                .description("被服务商限流 (429) 的大模型调用数")
+                .tags("service", service, "guard", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 不等待地尝试获取许可，供流式调用在事件循环线程上使用。
+     */
+    public boolean tryAcquire(LlmPriority priority) {
+        lock.lock();
+        try {
+            if (canProceed(priority) && (tokenBucket == null || tokenBucket.tryConsume(System.nanoTime()) == 0)) {
+                inFlight++;
+                waitTimers.get(priority).record(0, TimeUnit.NANOSECONDS);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按优先级排队等待许可，拿到许可后必须调用 {@link #release}。
+     */
+    public void acquire(LlmPriority priority) throws InterruptedException {
+        long start = System.nanoTime();
+        long timeoutMs = acquireTimeoutsMs.getOrDefault(priority, 10_000L);
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Condition condition = ready.get(priority);
+        lock.lockInterruptibly();
+        try {
+            waiting.incrementAndGet(priority.ordinal());
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long waitNanos = deadline - now;
+                    if (canProceed(priority)) {
+                        long tokenWait = tokenBucket == null ? 0 : tokenBucket.tryConsume(now);
+                        if (tokenWait == 0) {
+                            inFlight++;
+                            waitTimers.get(priority).record(now - start, TimeUnit.NANOSECONDS);
+                            return;
+                        }
+                        // 只差令牌：等到下一个令牌生成时再检查
+                        waitNanos = Math.min(waitNanos, tokenWait);
+                    }
+                    if (deadline - now <= 0) {
+                        rejected.get(priority).increment();
+                        log.warn("【LLM调度】{} 调用（{}）等待许可超过 {}ms，当前并发 {}/{}",
+                                name, priority, timeoutMs, inFlight, (int) limit);
+                        throw new ConcurrencyLimitExceededException(name, (int) limit, TimeUnit.NANOSECONDS.toMillis(now - start));
+                    }
+                    condition.awaitNanos(waitNanos);
+                }
+            } finally {
+                waiting.decrementAndGet(priority.ordinal());
+                // 离开队列后，原本被本调用挡住的低优先级调用可能可以继续
+                signalNext();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还许可，并根据本次调用的结果调整并发上限。
+     *
+     * @param latencyNanos 调用耗时
+     * @param error        调用抛出的异常，成功时为 null
+     */
+    public void release(long latencyNanos, Throwable error) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (error != null && RateLimitSignals.isRateLimited(error)) {
+                rateLimited.increment();
+                double previous = limit;
+                limit = Math.max(minConcurrent, limit / 2);
+                log.warn("【LLM调度】{} 调用被服务商限流，并发上限 {} -> {}", name, (int) previous, (int) limit);
+            } else if (error == null) {
+                if (latencyThresholdNanos > 0 && latencyNanos > latencyThresholdNanos) {
+                    limit = Math.max(minConcurrent, limit * 0.9);
+                } else {
+                    limit = Math.min(maxConcurrent, limit + 1.0 / limit);
+                }
+            }
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 有空闲并发，并且没有更高优先级的调用在排队。调用方必须持有锁。
+     */
+    private boolean canProceed(LlmPriority priority) {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (waiting.get(i) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 唤醒排在最前面的优先级上的等待者。调用方必须持有锁。
+     */
+    private void signalNext() {
+        for (LlmPriority priority : PRIORITIES) {
+            if (waiting.get(priority.ordinal()) > 0) {
+                ready.get(priority).signalAll();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 令牌桶，调用方持有调度器的锁，因此内部不再加锁。
+     */
+    static final class TokenBucket {
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double requestsPerSecond, int burst) {
+            this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = burst;
+            this.tokens = burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * 尝试取走一个令牌。
+         *
+         * @return 0 表示已取到；否则为距离下一个令牌生成还需等待的纳秒数
+         */
+        long tryConsume(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+        }
+    }
+}
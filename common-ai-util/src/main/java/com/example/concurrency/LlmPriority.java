@@ -0,0 +1,100 @@
+package com.example.concurrency;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * 大模型调用的优先级。同一服务内，{@link LlmDispatcher} 总是先放行高优先级的等待者。
+ * <p>
+ * 优先级保存在线程上下文中：入口处由 {@link LlmPriorityFilter} 按 {@value #HEADER} 请求头设置，
+ * 后台任务用 {@code LlmPriority.BACKGROUND.call(...)} 包住自己的逻辑；下游 Feign 调用会携带该请求头，
+ * 因此后台任务触发的其它服务上的模型调用同样按后台优先级排队。未设置时视为 {@link #INTERACTIVE}。
+ */
+public enum LlmPriority {
+
+    /**
+     * 用户正在等待结果的请求，如评论生成、情绪分析。
+     */
+    INTERACTIVE,
+    /**
+     * 多人格对话：用户在等待，但单轮可以比单条评论慢。
+     */
+    DIALOGUE,
+    /**
+     * 定时洞察分析、风格分析、文档向量化、记忆写回等后台任务。
+     */
+    BACKGROUND;
+
+    public static final String HEADER = "X-LLM-Priority";
+
+    private static final ThreadLocal<LlmPriority> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 当前线程上的优先级，未设置时为 {@link #INTERACTIVE}。
+     */
+    public static LlmPriority current() {
+        LlmPriority priority = CURRENT.get();
+        return priority != null ? priority : INTERACTIVE;
+    }
+
+    /**
+     * 当前线程是否显式设置了优先级；只有显式设置的优先级才会传递给下游服务。
+     */
+    static boolean isExplicit() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * 解析请求头中的优先级，无法识别时返回 null。
+     */
+    static LlmPriority parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 以本优先级执行一段逻辑，结束后恢复原来的优先级。
+     */
+    public <T> T call(Supplier<T> task) {
+        LlmPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public void run(Runnable task) {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 捕获当前线程的优先级，在任务执行的线程上恢复。用法与 {@code LogSampling.propagate} 相同。
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        LlmPriority captured = CURRENT.get();
+        return captured == null ? task : () -> captured.call(task);
+    }
+
+    static void restore(LlmPriority previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    static void set(LlmPriority priority) {
+        CURRENT.set(priority);
+    }
+}
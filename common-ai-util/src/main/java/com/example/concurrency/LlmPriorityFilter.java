@@ -0,0 +1,31 @@
+package com.example.concurrency;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 按 {@value LlmPriority#HEADER} 请求头设置本次请求中大模型调用的优先级。
+ */
+public class LlmPriorityFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        LlmPriority priority = LlmPriority.parse(request.getHeader(LlmPriority.HEADER));
+        if (priority == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        LlmPriority.set(priority);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            LlmPriority.restore(null);
+        }
+    }
+}
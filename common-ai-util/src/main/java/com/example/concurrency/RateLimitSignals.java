@@ -0,0 +1,44 @@
+package com.example.concurrency;
+
+import feign.FeignException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.util.regex.Pattern;
+
+/**
+ * 判断一次模型调用失败是否是服务商限流（HTTP 429）造成的。
+ * Spring AI 会把 HTTP 错误包装成 TransientAiException 等异常，状态码只出现在类名或消息中，因此沿 cause 链查找。
+ * 消息中只认 Spring AI 的 {@code "429 - ..."} 格式或 {@code "429 Too Many Requests"}，
+ * 请求ID、耗时、token 数里恰好出现的 429 不算——每次误判都会让并发上限减半。
+ */
+final class RateLimitSignals {
+
+    private static final Pattern STATUS_429 = Pattern.compile("\\b429\\b(?: - |\\s+Too Many Requests)",
+            Pattern.CASE_INSENSITIVE);
+
+    private RateLimitSignals() {
+    }
+
+    static boolean isRateLimited(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t.getClass().getSimpleName().contains("TooManyRequests")) {
+                return true;
+            }
+            if (t instanceof RestClientResponseException response && response.getStatusCode().value() == 429) {
+                return true;
+            }
+            if (t instanceof FeignException feign && feign.status() == 429) {
+                return true;
+            }
+            String message = t.getMessage();
+            if (message != null && (STATUS_429.matcher(message).find()
+                    || message.contains("Too Many Requests") || message.contains("rate limit"))) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+}
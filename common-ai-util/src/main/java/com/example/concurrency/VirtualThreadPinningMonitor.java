@@ -0,0 +1,126 @@
+package com.example.concurrency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 通过 JFR 的 {@code jdk.VirtualThreadPinned} 事件发现虚拟线程被钉住在载体线程上的位置。
+ * <p>
+ * Java 21 中虚拟线程在 {@code synchronized} 块内阻塞时无法让出载体线程，数据库驱动、连接池里的
+ * {@code synchronized} 会把虚拟线程的并发度打回平台线程数。每个事件按调用栈归类为
+ * jdbc / mongo / other，计入 {@code jvm.threads.virtual.pinned} 指标；同一个钉住位置只输出一次带调用栈的 WARN 日志。
+ */
+@Slf4j
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 12;
+
+    private static final List<String> JDBC_PACKAGES = List.of(
+            "org.postgresql.", "com.zaxxer.hikari.", "org.apache.ibatis.", "com.baomidou.", "org.springframework.jdbc.");
+    private static final List<String> MONGO_PACKAGES = List.of(
+            "com.mongodb.", "org.bson.", "org.springframework.data.mongodb.");
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+    private final Set<String> reportedLocations = ConcurrentHashMap.newKeySet();
+    private volatile RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry, Duration threshold) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void start() {
+        try {
+            RecordingStream recording = new RecordingStream();
+            recording.enable(EVENT).withThreshold(threshold).withStackTrace();
+            recording.onEvent(EVENT, this::onPinned);
+            recording.startAsync();
+            stream = recording;
+            log.info("【虚拟线程】已开启钉住检测，阈值 {}ms", threshold.toMillis());
+        } catch (RuntimeException e) {
+            // 部分精简 JRE 不带 JFR，检测失败不影响服务启动
+            log.warn("【虚拟线程】无法开启 JFR 钉住检测: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        RecordingStream recording = stream;
+        stream = null;
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = frames(event.getStackTrace());
+        String path = pathOf(frames);
+        meterRegistry.counter("jvm.threads.virtual.pinned", "path", path).increment();
+
+        String location = locationOf(frames);
+        if (reportedLocations.add(location)) {
+            log.warn("【虚拟线程】检测到虚拟线程被钉住 {}ms，路径: {}，位置: {}\n{}",
+                    event.getDuration().toMillis(), path, location, format(frames));
+        }
+    }
+
+    static String pathOf(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            String className = className(frame);
+            if (JDBC_PACKAGES.stream().anyMatch(className::startsWith)) {
+                return "jdbc";
+            }
+            if (MONGO_PACKAGES.stream().anyMatch(className::startsWith)) {
+                return "mongo";
+            }
+        }
+        return "other";
+    }
+
+    /**
+     * 以第一个非 JDK 栈帧作为钉住位置，同一位置的重复事件只计数不重复打印。
+     */
+    private static String locationOf(List<RecordedFrame> frames) {
+        for (RecordedFrame frame : frames) {
+            String className = className(frame);
+            if (!className.startsWith("java.") && !className.startsWith("jdk.") && !className.startsWith("sun.")) {
+                return className + "#" + frame.getMethod().getName();
+            }
+        }
+        return frames.isEmpty() ? "unknown" : className(frames.get(0)) + "#" + frames.get(0).getMethod().getName();
+    }
+
+    private static List<RecordedFrame> frames(RecordedStackTrace stackTrace) {
+        return stackTrace == null ? List.of() : stackTrace.getFrames();
+    }
+
+    private static String className(RecordedFrame frame) {
+        return frame.getMethod() == null ? "" : frame.getMethod().getType().getName();
+    }
+
+    private static String format(List<RecordedFrame> frames) {
+        return frames.stream()
+                .limit(LOGGED_FRAMES)
+                .map(frame -> "\tat " + className(frame) + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.concurrency;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * 在 Java 21+ 上为所有服务默认开启 {@code spring.threads.virtual.enabled}。
+ * <p>
+ * 开启后 Spring Boot 会让 Tomcat 请求线程、{@code @Async} 使用的 applicationTaskExecutor
+ * 和 {@code @Scheduled} 使用的 taskScheduler 都改用虚拟线程；WebFlux 服务不受影响。
+ * 默认值放在优先级最低的属性源中，服务在 application.yaml 中显式设置
+ * {@code spring.threads.virtual.enabled: false} 即可退出，也可以用 {@code ai.concurrency.virtual-threads: false} 关闭默认值。
+ */
+public class VirtualThreadsEnvironmentPostProcessor implements EnvironmentPostProcessor, Ordered {
+
+    static final String VIRTUAL_THREADS_PROPERTY = "spring.threads.virtual.enabled";
+    private static final String SOURCE_NAME = "aiConcurrencyDefaults";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE)) {
+            return;
+        }
+        boolean enabledByDefault = environment.getProperty(ConcurrencyProperties.PREFIX + ".virtual-threads", Boolean.class, true);
+        if (enabledByDefault && !environment.containsProperty(VIRTUAL_THREADS_PROPERTY)) {
+            environment.getPropertySources().addLast(new MapPropertySource(SOURCE_NAME, Map.of(VIRTUAL_THREADS_PROPERTY, "true")));
+        }
+    }
+
+    /**
+     * 在 application.yaml 加载之后执行，这样才能看到服务自己的配置。
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
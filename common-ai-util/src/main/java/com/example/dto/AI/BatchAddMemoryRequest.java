@@ -0,0 +1,29 @@
+package com.example.dto.AI;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量添加记忆的请求体 DTO。
+ * <p>
+ * 同一用户-人格对的多条记忆合并为一次请求，由记忆服务一次性完成向量化和入库。
+ * 调用方为每一批生成唯一的 {@code batchId}，重试同一批时保持不变，记忆服务据此丢弃重复提交的批次。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchAddMemoryRequest {
+
+    /**
+     * 需要被记住并向量化的文本内容，按发生顺序排列。
+     */
+    private List<String> contents;
+
+    /**
+     * 批次的幂等键。为空时不做去重。
+     */
+    private String batchId;
+}
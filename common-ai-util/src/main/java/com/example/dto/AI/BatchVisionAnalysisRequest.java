@@ -0,0 +1,27 @@
+package com.example.dto.AI;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量图片分析的请求体 DTO。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchVisionAnalysisRequest {
+
+    /**
+     * 需要分析的图片URL，按帖子中的顺序排列。
+     */
+    private List<String> imageUrls;
+
+    /**
+     * 整批分析的截止时间（毫秒）。到期仍未完成的图片标记为超时，已完成的结果照常返回。
+     * 为空时使用服务端的默认值。
+     */
+    private Long timeoutMs;
+}
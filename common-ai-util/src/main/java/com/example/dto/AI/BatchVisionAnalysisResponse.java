@@ -0,0 +1,41 @@
+package com.example.dto.AI;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量图片分析的响应体 DTO。结果与请求中的图片一一对应、顺序一致。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchVisionAnalysisResponse {
+
+    private List<ImageResult> results;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImageResult {
+
+        /**
+         * 图片在请求中的下标（从 0 开始）。
+         */
+        private int index;
+
+        private String imageUrl;
+
+        /**
+         * 图片描述，仅在 status 为 OK 时有值。
+         */
+        private String description;
+
+        /**
+         * 分析状态：OK / FAILED / TIMEOUT。
+         */
+        private String status;
+    }
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.OffsetDateTime;
+
 /**
  * 搜索记忆的响应体 DTO。
  * <p>
@@ -26,4 +28,19 @@ public class SearchMemoryResponse {
      * 分数越接近 1，表示语义上越相似。
      */
     private double distance;
+
+    /**
+     * 记忆的创建时间，调用方可据此在相关性之外兼顾时效性。
+     */
+    private OffsetDateTime createTime;
+
+    /**
+     * 是否为用户置顶的记忆。
+     */
+    private boolean pinned;
+
+    public SearchMemoryResponse(String content, double distance) {
+        this.content = content;
+        this.distance = distance;
+    }
 }
@@ -0,0 +1,90 @@
+package com.example.logging;
+
+import java.util.regex.Pattern;
+
+/**
+ * 日志中大段文本（Prompt、帖子内容、模型回复、检索查询）的延迟截断与脱敏。
+ * <p>
+ * 返回的对象只在日志框架真正格式化消息时才会调用 {@link Object#toString()}，
+ * 因此日志级别关闭时既不会截断字符串、也不会执行正则，调用方无需再包一层 {@code isDebugEnabled()}。
+ * <pre>
+ * log.info("模型返回评论: '{}'", LogPayload.truncate(comment));
+ * log.debug("User Prompt:\n{}", LogPayload.redact(userPrompt, 2000));
+ * </pre>
+ */
+public final class LogPayload {
+
+    /**
+     * 单行日志中默认保留的字符数。
+     */
+    public static final int DEFAULT_MAX_CHARS = 80;
+
+    private static final Pattern EMAIL = Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+    private static final Pattern ID_CARD = Pattern.compile("(?<!\\d)\\d{17}[\\dXx](?!\\d)");
+    private static final Pattern MOBILE = Pattern.compile("(?<!\\d)1[3-9]\\d{9}(?!\\d)");
+
+    private LogPayload() {
+    }
+
+    /**
+     * 按默认长度截断。
+     */
+    public static Object truncate(CharSequence text) {
+        return truncate(text, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * 超过 {@code maxChars} 的部分替换为 "…(共 N 字)"。
+     */
+    public static Object truncate(CharSequence text, int maxChars) {
+        return new Lazy(text, maxChars, false);
+    }
+
+    /**
+     * 先屏蔽邮箱、身份证号、手机号，再按默认长度截断。用于包含用户原文的内容。
+     */
+    public static Object redact(CharSequence text) {
+        return redact(text, DEFAULT_MAX_CHARS);
+    }
+
+    /**
+     * 先屏蔽邮箱、身份证号、手机号，再截断到 {@code maxChars}。
+     */
+    public static Object redact(CharSequence text, int maxChars) {
+        return new Lazy(text, maxChars, true);
+    }
+
+    static String render(CharSequence text, int maxChars, boolean redact) {
+        if (text == null) {
+            return "null";
+        }
+        String value = text.toString();
+        if (redact) {
+            value = EMAIL.matcher(value).replaceAll("<email>");
+            value = ID_CARD.matcher(value).replaceAll("<id>");
+            value = MOBILE.matcher(value).replaceAll("<phone>");
+        }
+        if (value.length() <= maxChars) {
+            return value;
+        }
+        return value.substring(0, maxChars) + "…(共 " + value.length() + " 字)";
+    }
+
+    private static final class Lazy {
+
+        private final CharSequence text;
+        private final int maxChars;
+        private final boolean redact;
+
+        private Lazy(CharSequence text, int maxChars, boolean redact) {
+            this.text = text;
+            this.maxChars = maxChars;
+            this.redact = redact;
+        }
+
+        @Override
+        public String toString() {
+            return render(text, maxChars, redact);
+        }
+    }
+}
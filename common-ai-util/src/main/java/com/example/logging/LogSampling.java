@@ -0,0 +1,74 @@
+package com.example.logging;
+
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 按请求抽样的详细日志开关。
+ * <p>
+ * 每个请求在入口处（{@link LogSamplingFilter}）决定一次是否被抽中，结果写入 MDC 的 {@value #MDC_KEY}，
+ * 并通过 {@value #HEADER} 请求头传递给下游服务，保证同一请求在整条调用链上要么完整记录、要么都不记录。
+ * 热路径上的大段内容（完整 Prompt、检索结果等）只在被抽中的请求中输出：
+ * <pre>
+ * if (log.isDebugEnabled() &amp;&amp; LogSampling.isSampled()) {
+ *     log.debug("System Prompt:\n{}", LogPayload.redact(systemPrompt, 4000));
+ * }
+ * </pre>
+ */
+public final class LogSampling {
+
+    /**
+     * 强制抽中当前请求的请求头，取值 {@code true}；下游调用会自动携带。
+     */
+    public static final String HEADER = "X-Log-Sample";
+
+    public static final String MDC_KEY = "sampled";
+
+    private LogSampling() {
+    }
+
+    /**
+     * 当前线程所处理的请求是否被抽中。
+     */
+    public static boolean isSampled() {
+        return "true".equals(MDC.get(MDC_KEY));
+    }
+
+    /**
+     * 为当前请求决定是否抽样：请求头强制开启时必定抽中，否则按 {@code rate} 随机抽取。
+     */
+    static boolean decide(String headerValue, double rate) {
+        if ("true".equalsIgnoreCase(headerValue)) {
+            return true;
+        }
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * 捕获当前线程的 MDC（抽样标记、traceId 等），在任务执行的线程上恢复。
+     * 用于把请求线程上的任务交给 Reactor 调度器或自建线程池执行的场景，下游 Feign 调用也因此能携带抽样请求头。
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            setContext(context);
+            try {
+                return task.get();
+            } finally {
+                setContext(previous);
+            }
+        };
+    }
+
+    private static void setContext(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.logging;
+
+import feign.RequestInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * 按请求抽样日志的自动配置，所有依赖 common-ai-util 的服务都会自动启用。
+ * <pre>
+ * logging:
+ *   sampling:
+ *     rate: 0.01   # 未携带 X-Log-Sample 请求头的请求中，被抽中输出详细日志的比例
+ * </pre>
+ */
+@AutoConfiguration
+public class LogSamplingAutoConfiguration {
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<LogSamplingFilter> logSamplingFilter(@Value("${logging.sampling.rate:0.0}") double rate) {
+        FilterRegistrationBean<LogSamplingFilter> registration = new FilterRegistrationBean<>(new LogSamplingFilter(rate));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    /**
+     * 被抽中的请求在调用下游服务时携带抽样请求头，使下游也输出同一请求的详细日志。
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(RequestInterceptor.class)
+    static class FeignPropagation {
+
+        @Bean
+        public RequestInterceptor logSamplingRequestInterceptor() {
+            return template -> {
+                if (LogSampling.isSampled()) {
+                    template.header(LogSampling.HEADER, "true");
+                }
+            };
+        }
+    }
+}
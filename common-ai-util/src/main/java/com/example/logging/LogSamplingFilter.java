@@ -0,0 +1,34 @@
+package com.example.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 在请求入口处决定本次请求是否输出详细日志，并写入 MDC。
+ */
+public class LogSamplingFilter extends OncePerRequestFilter {
+
+    private final double rate;
+
+    public LogSamplingFilter(double rate) {
+        this.rate = rate;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean sampled = LogSampling.decide(request.getHeader(LogSampling.HEADER), rate);
+        MDC.put(LogSampling.MDC_KEY, String.valueOf(sampled));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(LogSampling.MDC_KEY);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.concurrency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class LlmDispatcherTest {
+
+    private static final Map<LlmPriority, Long> TIMEOUTS = Map.of(
+            LlmPriority.INTERACTIVE, 5_000L,
+            LlmPriority.DIALOGUE, 5_000L,
+            LlmPriority.BACKGROUND, 5_000L);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private LlmDispatcher dispatcher(int max, int min, Map<LlmPriority, Long> timeouts) {
+        return new LlmDispatcher("chat", ConcurrencyProperties.Limits.of(max, min, 0), timeouts, meterRegistry, "test");
+    }
+
+    private double queueDepth(LlmPriority priority) {
+        return meterRegistry.get("llm.dispatcher.queue.depth")
+                .tag("priority", priority.name().toLowerCase(Locale.ROOT))
+                .gauge().value();
+    }
+
+    private double limit() {
+        return meterRegistry.get("llm.dispatcher.limit").gauge().value();
+    }
+
+    /**
+     * 在后台线程上排队等待许可，拿到后记录优先级并一直持有，直到 {@code done} 打开。
+     */
+    private Future<?> queue(LlmDispatcher dispatcher, LlmPriority priority, List<LlmPriority> order, CountDownLatch done) {
+        Future<?> future = executor.submit(() -> {
+            dispatcher.acquire(priority);
+            order.add(priority);
+            try {
+                done.await();
+            } finally {
+                dispatcher.release(0, null);
+            }
+            return null;
+        });
+        await().atMost(Duration.ofSeconds(5)).until(() -> queueDepth(priority) == 1);
+        return future;
+    }
+
+    @Test
+    void higherPriorityWaiterIsAdmittedFirst() throws Exception {
+        LlmDispatcher dispatcher = dispatcher(1, 1, TIMEOUTS);
+        List<LlmPriority> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+
+        // 后台调用先排队，交互调用后到
+        Future<?> background = queue(dispatcher, LlmPriority.BACKGROUND, order, done);
+        Future<?> dialogue = queue(dispatcher, LlmPriority.DIALOGUE, order, done);
+        Future<?> interactive = queue(dispatcher, LlmPriority.INTERACTIVE, order, done);
+
+        dispatcher.release(0, null);
+        await().atMost(Duration.ofSeconds(5)).until(() -> order.size() == 1);
+        done.countDown();
+        interactive.get(5, TimeUnit.SECONDS);
+        dialogue.get(5, TimeUnit.SECONDS);
+        background.get(5, TimeUnit.SECONDS);
+
+        assertThat(order).containsExactly(LlmPriority.INTERACTIVE, LlmPriority.DIALOGUE, LlmPriority.BACKGROUND);
+    }
+
+    @Test
+    void rateLimitedCallHalvesLimitDownToMinimum() throws Exception {
+        LlmDispatcher dispatcher = dispatcher(8, 2, TIMEOUTS);
+        RuntimeException tooManyRequests = new RuntimeException("HTTP 429 - Too Many Requests");
+        assertThat(limit()).isEqualTo(8);
+
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, new IllegalStateException("wrapped", tooManyRequests));
+        assertThat(limit()).isEqualTo(4);
+
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, tooManyRequests);
+        assertThat(limit()).isEqualTo(2);
+
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, tooManyRequests);
+        assertThat(limit()).isEqualTo(2);
+        assertThat(meterRegistry.get("llm.dispatcher.rate_limited").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void httpStatusAndSpringAiMessageCountAsRateLimited() throws Exception {
+        LlmDispatcher dispatcher = dispatcher(8, 1, TIMEOUTS);
+
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS));
+        assertThat(limit()).isEqualTo(4);
+
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, new RuntimeException("429 - {\"error\":{\"code\":\"1302\",\"message\":\"并发数过高\"}}"));
+        assertThat(limit()).isEqualTo(2);
+    }
+
+    @Test
+    void incidental429DigitsDoNotHalveLimit() throws Exception {
+        LlmDispatcher dispatcher = dispatcher(8, 2, TIMEOUTS);
+        List<RuntimeException> errors = List.of(
+                new RuntimeException("Read timed out after 4290ms"),
+                new RuntimeException("request 8f3a-429-c1 failed with 500 - internal error"),
+                new RuntimeException("prompt used 429 tokens, exceeding the limit"),
+                new HttpClientErrorException(HttpStatus.BAD_REQUEST, "request 429 rejected"));
+
+        for (RuntimeException error : errors) {
+            dispatcher.acquire(LlmPriority.INTERACTIVE);
+            dispatcher.release(0, error);
+        }
+
+        assertThat(limit()).isEqualTo(8);
+        assertThat(meterRegistry.get("llm.dispatcher.rate_limited").counter().count()).isZero();
+    }
+
+    @Test
+    void otherErrorsLeaveLimitAndSuccessesGrowItBack() throws Exception {
+        LlmDispatcher dispatcher = dispatcher(8, 2, TIMEOUTS);
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, new RuntimeException("HTTP 429 - Too Many Requests"));
+        assertThat(limit()).isEqualTo(4);
+
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, new IllegalStateException("connection reset"));
+        assertThat(limit()).isEqualTo(4);
+
+        // 加性增长：每个上限窗口 +1
+        for (int i = 0; i < 4; i++) {
+            dispatcher.acquire(LlmPriority.INTERACTIVE);
+            dispatcher.release(0, null);
+        }
+        assertThat(limit()).isEqualTo(4);
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+        dispatcher.release(0, null);
+        assertThat(limit()).isEqualTo(5);
+    }
+
+    @Test
+    void waiterTimesOutWhenNoPermitFreesUp() throws Exception {
+        LlmDispatcher dispatcher = dispatcher(1, 1, Map.of(LlmPriority.BACKGROUND, 50L));
+        dispatcher.acquire(LlmPriority.INTERACTIVE);
+
+        assertThatThrownBy(() -> dispatcher.acquire(LlmPriority.BACKGROUND))
+                .isInstanceOf(ConcurrencyLimitExceededException.class);
+        assertThat(queueDepth(LlmPriority.BACKGROUND)).isZero();
+        assertThat(meterRegistry.get("llm.dispatcher.rejected").tag("priority", "background").counter().count())
+                .isEqualTo(1);
+    }
+}
@@ -53,7 +53,8 @@ public class KnowledgeBaseController {
             @PathVariable("kbId") Long kbId,
             @RequestBody SearchRequest request,
             @RequestHeader("X-User-Id") String userId) {
-        log.info("【API入口】收到知识库搜索请求, KB_ID: {}", kbId);
+        // 搜索是评论生成的热路径，服务层已记录一条 INFO，这里不再重复
+        log.debug("【API入口】收到知识库搜索请求, KB_ID: {}", kbId);
         List<SearchResult> results = knowledgeBaseService.search(kbId, request, userId);
         return ResponseEntity.ok(results);
     }
@@ -1,5 +1,6 @@
 package com.example.knowledgeservice.service.impl;
 
+import com.example.concurrency.LlmPriority;
 import com.example.entity.ai.DocumentStatus;
 import com.example.entity.ai.KnowledgeDocument;
 import com.example.knowledgeservice.component.DocumentProcessor;
@@ -58,7 +59,7 @@ public class AsyncDocumentProcessor {
             log.info("【异步任务-新线程】[DOC_ID:{}] 准备向量化 {} 个文本片段...", docId, chunks.size());
             KnowledgeDocument doc = knowledgeDocumentMapper.selectById(docId);
             List<DocumentChunk> chunkEntities = chunks.stream().map(content -> {
-                float[] embedding = embeddingModel.embed(content);
+                float[] embedding = LlmPriority.BACKGROUND.call(() -> embeddingModel.embed(content)); // 文档向量化按后台优先级排队
                 DocumentChunk chunk = new DocumentChunk();
                 chunk.setDocId(docId);
                 chunk.setKbId(doc.getKbId());
@@ -10,6 +10,8 @@ import com.example.knowledgeservice.mapper.DocumentChunkMapper;
 import com.example.knowledgeservice.mapper.KnowledgeBaseMapper;
 import com.example.knowledgeservice.mapper.KnowledgeDocumentMapper;
 import com.example.knowledgeservice.service.KnowledgeBaseService;
+import com.example.logging.LogPayload;
+import com.example.logging.LogSampling;
 import com.pgvector.PGvector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -110,6 +112,12 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 
         // 2. 调用 Mapper 进行搜索
         List<DocumentChunk> results = documentChunkMapper.searchSimilarChunks(kbId, new PGvector(targetVector), request.getTopK());
+        // 查询原文与命中片段只在被抽样的请求中输出
+        if (log.isDebugEnabled() && LogSampling.isSampled()) {
+            log.debug("【知识库服务】[KB_ID:{}] 查询: '{}'，命中 {} 个片段，距离: {}", kbId,
+                    LogPayload.redact(request.getQuery()), results.size(),
+                    results.stream().map(DocumentChunk::getDistance).collect(Collectors.toList()));
+        }
 
         // 3. 转换为 DTO 返回
         return results.stream()
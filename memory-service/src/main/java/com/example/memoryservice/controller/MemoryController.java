@@ -56,6 +56,32 @@ public class MemoryController {
         }
     }
 
+    /**
+     * API: 为指定用户和人格批量添加记忆。
+     * 供 ai-chat-service 的记忆写回队列使用，同一用户-人格对的多次互动合并为一次请求。
+     *
+     * @param userId    用户ID，从URL路径中获取
+     * @param personaId 人格ID，从URL路径中获取
+     * @param request   包含多条记忆内容的JSON请求体
+     * @return HTTP 201 Created 状态码；失败时返回 500，调用方应保留这批数据稍后重试
+     */
+    @PostMapping("/{userId}/{personaId}/batch")
+    public ResponseEntity<Void> addMemories(
+            @PathVariable("userId") String userId,
+            @PathVariable("personaId") String personaId,
+            @RequestBody BatchAddMemoryRequest request) {
+
+        log.info("【API入口】收到批量添加记忆请求: UserID={}, PersonaID={}", userId, personaId);
+        try {
+            int added = memoryService.addMemories(userId, personaId, request);
+            log.info("【API入口】批量添加记忆请求处理完成: UserID={}, PersonaID={}, 写入 {} 条", userId, personaId, added);
+            return ResponseEntity.status(HttpStatus.CREATED).build();
+        } catch (Exception e) {
+            log.error("【API入口】处理批量添加记忆请求时发生异常: UserID={}, PersonaID={}", userId, personaId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * API: 在指定用户和人格的记忆库中进行语义搜索。
      *
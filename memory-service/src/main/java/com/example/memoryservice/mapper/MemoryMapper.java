@@ -5,6 +5,7 @@ import com.example.memoryservice.entity.Memory;
 import com.pgvector.PGvector;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 public interface MemoryMapper extends BaseMapper<Memory> {
@@ -23,4 +24,25 @@ public interface MemoryMapper extends BaseMapper<Memory> {
             @Param("targetVector") PGvector targetVector,
             @Param("topK") int topK
     );
+
+    /**
+     * 登记一个已处理的批量写入批次，用于幂等去重。
+     *
+     * @return 1 表示首次登记；0 表示该批次已经处理过（或正在被另一个事务处理）
+     */
+    int insertBatchMarker(@Param("batchId") String batchId,
+                          @Param("userId") String userId,
+                          @Param("personaId") String personaId);
+
+    /**
+     * 批次是否已经登记（只能看到已提交的登记，不会等待正在进行的事务）。
+     */
+    boolean existsBatchMarker(@Param("batchId") String batchId);
+
+    /**
+     * 删除早于指定时间的批次登记记录。
+     *
+     * @return 删除的行数
+     */
+    int deleteBatchMarkersBefore(@Param("before") OffsetDateTime before);
 }
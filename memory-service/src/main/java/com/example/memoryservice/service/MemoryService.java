@@ -23,6 +23,17 @@ public interface MemoryService {
      */
     void addMemory(String userId, String personaId, AddMemoryRequest request);
 
+    /**
+     * 为指定用户和人格批量添加记忆，所有内容一次性向量化并在同一事务中入库。
+     * 请求带有 {@code batchId} 时按它去重，同一批次重复提交不会重复入库。
+     *
+     * @param userId    用户ID
+     * @param personaId 人格ID
+     * @param request   包含多条记忆内容的请求
+     * @return 实际写入的记忆条数（空内容会被跳过，重复提交的批次返回 0）
+     */
+    int addMemories(String userId, String personaId, BatchAddMemoryRequest request);
+
     /**
      * 在指定用户和人格的记忆库中，根据查询文本搜索最相关的记忆。
      *
@@ -0,0 +1,54 @@
+package com.example.memoryservice.service.impl;
+
+import com.example.memoryservice.entity.Memory;
+import com.example.memoryservice.mapper.MemoryMapper;
+import com.pgvector.PGvector;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+
+/**
+ * 批量写入记忆的事务部分：批次登记与逐条入库。
+ * <p>
+ * 向量化由调用方在事务之外完成，事务内只有数据库写入，不会在等待模型调用许可时占用连接和批次行锁。
+ * 单独成为一个 Bean，{@link Transactional} 才能经由代理生效。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MemoryBatchWriter {
+
+    private final MemoryMapper memoryMapper;
+
+    /**
+     * 登记批次并写入全部记忆，任一失败则整批回滚（登记一并回滚），由调用方重试。
+     *
+     * @param batchId    幂等键，为空时不做去重
+     * @param embeddings 与 {@code contents} 一一对应的向量
+     * @return 写入的条数；批次已被处理过时为 0
+     */
+    @Transactional
+    public int write(String userId, String personaId, String batchId, List<String> contents, List<float[]> embeddings) {
+        // 并发的重复请求会在这里等待前一个事务结束，此时事务内已没有模型调用，等待很短
+        if (StringUtils.hasText(batchId) && memoryMapper.insertBatchMarker(batchId, userId, personaId) == 0) {
+            log.info("【记忆服务-批量】[用户:{}, 人格:{}] 批次 {} 已处理过，忽略重复提交。", userId, personaId, batchId);
+            return 0;
+        }
+        for (int i = 0; i < contents.size(); i++) {
+            Memory memory = new Memory();
+            memory.setUserId(userId);
+            memory.setPersonaId(personaId);
+            memory.setContent(contents.get(i));
+            memory.setEmbedding(new PGvector(embeddings.get(i)));
+            if (memoryMapper.insert(memory) <= 0) {
+                log.error("【记忆服务-批量】[用户:{}, 人格:{}] 第 {} 条记忆存入数据库失败！", userId, personaId, i + 1);
+                throw new RuntimeException("记忆数据写入数据库失败。");
+            }
+        }
+        return contents.size();
+    }
+}
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.example.dto.AI.*;
 import com.example.entity.ai.UserPersonaInsight;
+import com.example.logging.LogPayload;
 import com.example.memoryservice.entity.Memory;
 import com.example.memoryservice.mapper.MemoryMapper;
 import com.example.memoryservice.mapper.UserPersonaInsightMapper;
@@ -29,12 +30,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MemoryServiceImpl implements MemoryService {
 
+    // 日志中查询文本的预览长度，截断与脱敏都在日志真正输出时才执行
+    private static final int QUERY_LOG_MAX_CHARS = 30;
+
     // 注入 Spring AI 的 EmbeddingModel，用于将文本转换为向量
     private final EmbeddingModel embeddingModel;
     // 注入 MyBatis-Plus 的 Mapper 接口，用于数据库操作
     private final MemoryMapper memoryMapper;
     private final UserPersonaInsightMapper insightMapper;
     private final ObjectMapper objectMapper;
+    // 批量写入的事务部分（批次登记 + 入库）
+    private final MemoryBatchWriter batchWriter;
 
     @Override
     public void addMemory(String userId, String personaId, AddMemoryRequest request) {
@@ -50,7 +56,10 @@ public class MemoryServiceImpl implements MemoryService {
         try {
             // 【已更正】调用 generateEmbedding 方法，它现在直接处理 float[]
             embedding = generateEmbedding(request.getContent());
-            log.info("【记忆服务】[用户:{}, 人格:{}] 文本向量化成功，向量维度: {}", userId, personaId, embedding.toArray().length);
+            if (log.isDebugEnabled()) {
+                // toArray() 会复制整个向量，只在 DEBUG 打开时才计算维度
+                log.debug("【记忆服务】[用户:{}, 人格:{}] 文本向量化成功，向量维度: {}", userId, personaId, embedding.toArray().length);
+            }
         } catch (Exception e) {
             log.error("【记忆服务】[用户:{}, 人格:{}] 文本向量化失败！请检查AI服务配置、API Key和网络连接。", userId, personaId, e);
             throw new RuntimeException("AI模型调用失败，无法生成记忆向量。", e);
@@ -72,6 +81,45 @@ public class MemoryServiceImpl implements MemoryService {
         log.info("【记忆服务】[用户:{}, 人格:{}] 新记忆已成功存入数据库，ID: {}", userId, personaId, memory.getId());
     }
 
+    /**
+     * 向量化在事务之外进行：批量写入来自后台写回队列，向量化可能要按后台优先级长时间等待模型调用许可，
+     * 不能在此期间占用数据库连接和批次登记的行锁。登记与入库由 {@link MemoryBatchWriter} 在一个短事务中完成。
+     */
+    @Override
+    public int addMemories(String userId, String personaId, BatchAddMemoryRequest request) {
+        List<String> contents = request == null || request.getContents() == null
+                ? Collections.emptyList()
+                : request.getContents().stream().filter(StringUtils::hasText).collect(Collectors.toList());
+        if (contents.isEmpty()) {
+            log.warn("【记忆服务-批量】[用户:{}, 人格:{}] 批量添加记忆被忽略：没有有效内容。", userId, personaId);
+            return 0;
+        }
+        // 0. 幂等去重：调用方读超时后会用同一个 batchId 重试，已经入库的批次直接跳过，不再向量化。
+        //    这里只是不加锁的预检查，真正的去重由事务内的批次登记保证
+        String batchId = request.getBatchId();
+        if (StringUtils.hasText(batchId) && memoryMapper.existsBatchMarker(batchId)) {
+            log.info("【记忆服务-批量】[用户:{}, 人格:{}] 批次 {} 已处理过，忽略重复提交。", userId, personaId, batchId);
+            return 0;
+        }
+        log.info("【记忆服务-批量】[用户:{}, 人格:{}] 开始处理批量添加记忆请求，共 {} 条。", userId, personaId, contents.size());
+
+        // 1. 一次调用完成所有文本的向量化
+        List<float[]> embeddings;
+        try {
+            embeddings = embeddingModel.embed(contents);
+        } catch (Exception e) {
+            log.error("【记忆服务-批量】[用户:{}, 人格:{}] 文本向量化失败！", userId, personaId, e);
+            throw new RuntimeException("AI模型调用失败，无法生成记忆向量。", e);
+        }
+
+        // 2. 登记批次并逐条入库，任一失败则整批回滚，由调用方重试
+        int added = batchWriter.write(userId, personaId, batchId, contents, embeddings);
+        if (added > 0) {
+            log.info("【记忆服务-批量】[用户:{}, 人格:{}] {} 条新记忆已成功存入数据库。", userId, personaId, added);
+        }
+        return added;
+    }
+
     @Override
     public List<SearchMemoryResponse> searchMemory(String userId, String personaId, SearchMemoryRequest request) {
         // 【核心修复】在方法的最开始就进行防御性检查
@@ -80,8 +128,8 @@ public class MemoryServiceImpl implements MemoryService {
             // 直接返回空列表，而不是继续执行导致空指针
             return Collections.emptyList();
         }
-        log.info("【记忆服务】[用户:{}, 人格:{}] 开始处理搜索记忆请求, 查询: '{}...', TopK: {}",
-                userId, personaId, request.getQuery().substring(0, Math.min(30, request.getQuery().length())), request.getTopK());
+        log.info("【记忆服务】[用户:{}, 人格:{}] 开始处理搜索记忆请求, 查询: '{}', TopK: {}",
+                userId, personaId, LogPayload.redact(request.getQuery(), QUERY_LOG_MAX_CHARS), request.getTopK());
 
         if (!StringUtils.hasText(request.getQuery())) {
             log.warn("【记忆服务】[用户:{}, 人格:{}] 搜索记忆失败：查询内容为空。", userId, personaId);
@@ -93,7 +141,7 @@ public class MemoryServiceImpl implements MemoryService {
         try {
             // 【已更正】调用 generateEmbedding 方法，它现在直接处理 float[]
             targetVector = generateEmbedding(request.getQuery());
-            log.info("【记忆服务】[用户:{}, 人格:{}] 查询文本向量化成功。", userId, personaId);
+            log.debug("【记忆服务】[用户:{}, 人格:{}] 查询文本向量化成功。", userId, personaId);
         } catch (Exception e) {
             log.error("【记忆服务】[用户:{}, 人格:{}] 查询文本向量化失败！请检查AI服务配置、API Key和网络连接。", userId, personaId, e);
             throw new RuntimeException("AI模型调用失败，无法生成查询向量。", e);
@@ -107,7 +155,8 @@ public class MemoryServiceImpl implements MemoryService {
 
         // 3. 将查询结果转换为 DTO 列表返回
         return searchResults.stream()
-                .map(memory -> new SearchMemoryResponse(memory.getContent(), memory.getDistance()))
+                .map(memory -> new SearchMemoryResponse(memory.getContent(), memory.getDistance(),
+                        memory.getCreateTime(), Boolean.TRUE.equals(memory.getPinned())))
                 .collect(Collectors.toList());
     }
 
@@ -203,7 +252,7 @@ public class MemoryServiceImpl implements MemoryService {
      * @return PGvector 对象
      */
     private PGvector generateEmbedding(String text) {
-        log.debug("【AI调用】准备调用 EmbeddingModel.embed(String)，输入文本: '{}...'", text.substring(0, Math.min(30, text.length())));
+        log.debug("【AI调用】准备调用 EmbeddingModel.embed(String)，输入文本: '{}'", LogPayload.redact(text, QUERY_LOG_MAX_CHARS));
 
         // 【核心更正】embeddingModel.embed(text) 直接返回 float[]
         float[] embeddingArray = embeddingModel.embed(text);
@@ -2,6 +2,7 @@ package com.example.memoryservice.task;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.example.concurrency.LlmPriority;
 import com.example.dto.AI.InsightAnalysisResult;
 import com.example.entity.ai.UserPersonaInsight;
 import com.example.memoryservice.entity.Memory;
@@ -65,7 +66,8 @@ public class InsightAnalysisTask {
         for (Map<String, Object> pair : pairsToAnalyze) {
             String userId = (String) pair.get("userId");
             String personaId = (String) pair.get("personaId");
-            processSinglePair(userId, personaId);
+            // 洞察分析是后台任务，模型调用排在评论与对话之后
+            LlmPriority.BACKGROUND.run(() -> processSinglePair(userId, personaId));
         }
     }
 
@@ -0,0 +1,37 @@
+package com.example.memoryservice.task;
+
+import com.example.memoryservice.mapper.MemoryMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * 定时清理批量写入的幂等登记记录。
+ * 保留时长需要覆盖调用方落盘重试的最长时间（即记忆服务可能不可用的最长时间），过期后同一批次不再去重。
+ */
+@Component
+@Slf4j
+public class MemoryBatchCleanupTask {
+
+    private final MemoryMapper memoryMapper;
+    private final Duration retention;
+
+    public MemoryBatchCleanupTask(MemoryMapper memoryMapper,
+                                  @Value("${memory.batch-dedupe.retention:P7D}") Duration retention) {
+        this.memoryMapper = memoryMapper;
+        this.retention = retention;
+    }
+
+    /**
+     * 每天凌晨 3 点 30 分执行一次。
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void purgeExpiredBatchMarkers() {
+        int deleted = memoryMapper.deleteBatchMarkersBefore(OffsetDateTime.now().minus(retention));
+        log.info("【批次去重清理】已删除 {} 条超过 {} 的批次登记记录。", deleted, retention);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.personainsightservice.service;
 
 
+import com.example.concurrency.LlmPriority;
 import com.example.dto.AI.JobStatus;
 import com.example.dto.AI.SourceType;
 import com.example.dto.AI.StyleAnalysisResult;
@@ -45,10 +46,10 @@ public class AsyncStyleAnalyzer {
 
             // 3. 调用 LLM 并获取结构化输出
             log.info("【异步分析器】[JOB_ID:{}] 正在调用LLM进行风格分析...", jobId);
-            StyleAnalysisResult result = chatClient.prompt()
+            StyleAnalysisResult result = LlmPriority.BACKGROUND.call(() -> chatClient.prompt()
                     .user(prompt)
                     .call()
-                    .entity(StyleAnalysisResult.class); // Spring AI 自动将JSON结果转换为Java对象
+                    .entity(StyleAnalysisResult.class)); // Spring AI 自动将JSON结果转换为Java对象；后台任务按低优先级排队
 
             // 4. 保存结果
             String resultJson = objectMapper.writeValueAsString(result);
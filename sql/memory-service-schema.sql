@@ -35,6 +35,16 @@ USING hnsw (embedding vector_cosine_ops);
 -- CREATE INDEX IF NOT EXISTS idx_memories_embedding_ivfflat ON memories
 -- USING ivfflat (embedding vector_cosine_ops) WITH (lists = 100);
 
+-- 批量写入的幂等键：调用方重试或回放同一批记忆时按 batch_id 去重，过期记录由记忆服务定时清理
+CREATE TABLE IF NOT EXISTS memory_batches (
+    batch_id VARCHAR(64) PRIMARY KEY,
+    user_id VARCHAR(255) NOT NULL,
+    persona_id VARCHAR(255) NOT NULL,
+    create_time TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_memory_batches_create_time ON memory_batches(create_time);
+
 -- 创建用户人格洞察表
 CREATE TABLE IF NOT EXISTS user_persona_insights (
     id BIGSERIAL PRIMARY KEY,
@@ -57,5 +67,7 @@ COMMENT ON COLUMN memories.embedding IS '1536维向量嵌入，用于相似度
 COMMENT ON COLUMN memories.pinned IS '是否置顶，置顶的记忆会优先返回';
 COMMENT ON COLUMN memories.analyzed IS '是否已进行人格分析';
 
+COMMENT ON TABLE memory_batches IS '已处理的批量写入批次，用于幂等去重';
+
 COMMENT ON TABLE user_persona_insights IS '用户人格洞察数据表';
 COMMENT ON COLUMN user_persona_insights.insight_data IS 'JSON格式的洞察数据';
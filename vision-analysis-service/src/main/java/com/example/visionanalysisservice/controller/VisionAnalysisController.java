@@ -1,7 +1,10 @@
 package com.example.visionanalysisservice.controller;
 
+import com.example.dto.AI.BatchVisionAnalysisRequest;
+import com.example.dto.AI.BatchVisionAnalysisResponse;
 import com.example.dto.AI.VisionAnalysisRequest;
 import com.example.dto.AI.VisionAnalysisResponse;
+import com.example.visionanalysisservice.service.BatchVisionAnalysisService;
 import com.example.visionanalysisservice.service.VisionAnalysisService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +21,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class VisionAnalysisController {
 
     private final VisionAnalysisService visionAnalysisService;
+    private final BatchVisionAnalysisService batchVisionAnalysisService;
 
     @PostMapping("/analyze")
     public ResponseEntity<VisionAnalysisResponse> analyze(@RequestBody VisionAnalysisRequest request) {
@@ -27,4 +31,15 @@ public class VisionAnalysisController {
         log.info("【API入口】视觉分析请求处理完成。");
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * 并发分析一个帖子中的多张图片，结果按请求顺序返回；超时或失败的图片带有对应状态，不影响其它图片。
+     */
+    @PostMapping("/analyze/batch")
+    public ResponseEntity<BatchVisionAnalysisResponse> analyzeBatch(@RequestBody BatchVisionAnalysisRequest request) {
+        log.info("【API入口】收到批量视觉分析请求，图片数: {}", request.getImageUrls() == null ? 0 : request.getImageUrls().size());
+        BatchVisionAnalysisResponse response = batchVisionAnalysisService.analyzeImages(request.getImageUrls(), request.getTimeoutMs());
+        log.info("【API入口】批量视觉分析请求处理完成。");
+        return ResponseEntity.ok(response);
+    }
 }
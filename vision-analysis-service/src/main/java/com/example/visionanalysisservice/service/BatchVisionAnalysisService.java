@@ -0,0 +1,133 @@
+package com.example.visionanalysisservice.service;
+
+import com.example.dto.AI.BatchVisionAnalysisResponse;
+import com.example.dto.AI.BatchVisionAnalysisResponse.ImageResult;
+import com.example.dto.AI.VisionAnalysisResponse;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 批量图片分析。
+ * <p>
+ * 一个帖子中的多张图片在虚拟线程上并发分析，同时在途的模型调用数受全局信号量限制（跨请求共享，保护上游配额）。
+ * 整批共用一个截止时间：到期仍未完成的图片标记为 TIMEOUT，已完成的结果照常按原顺序返回。
+ * 超时的任务会被中断（等待许可或模型调用中的虚拟线程随即退出并归还许可），不会在截止之后继续占用配额。
+ */
+@Service
+@Slf4j
+public class BatchVisionAnalysisService {
+
+    public static final String STATUS_OK = "OK";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_TIMEOUT = "TIMEOUT";
+
+    private final VisionAnalysisService visionAnalysisService;
+    private final Semaphore inFlight;
+    private final int maxImages;
+    private final long defaultTimeoutMs;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public BatchVisionAnalysisService(VisionAnalysisService visionAnalysisService,
+                                      @Value("${vision.batch.max-concurrency:4}") int maxConcurrency,
+                                      @Value("${vision.batch.max-images:9}") int maxImages,
+                                      @Value("${vision.batch.timeout-ms:20000}") long defaultTimeoutMs) {
+        this.visionAnalysisService = visionAnalysisService;
+        this.inFlight = new Semaphore(maxConcurrency);
+        this.maxImages = maxImages;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+    }
+
+    /**
+     * 并发分析多张图片。
+     *
+     * @param imageUrls 图片URL列表，超过上限的部分会被忽略
+     * @param timeoutMs 整批的截止时间（毫秒），为空时使用默认值
+     * @return 与输入顺序一致的逐图结果
+     */
+    public BatchVisionAnalysisResponse analyzeImages(List<String> imageUrls, Long timeoutMs) {
+        if (imageUrls == null || imageUrls.isEmpty()) {
+            throw new IllegalArgumentException("图片URL列表不能为空。");
+        }
+        List<String> urls = imageUrls.size() > maxImages ? imageUrls.subList(0, maxImages) : imageUrls;
+        if (urls.size() < imageUrls.size()) {
+            log.warn("【批量视觉分析】请求包含 {} 张图片，超过上限 {}，多余的图片将被忽略。", imageUrls.size(), maxImages);
+        }
+        long budgetMs = timeoutMs != null && timeoutMs > 0 ? timeoutMs : defaultTimeoutMs;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        log.info("【批量视觉分析】开始并发分析 {} 张图片，截止时间 {}ms", urls.size(), budgetMs);
+
+        // 使用 submit 返回的 FutureTask：cancel(true) 会中断执行中的线程，CompletableFuture 的 cancel 做不到
+        List<Future<VisionAnalysisResponse>> futures = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            futures.add(executor.submit(() -> analyzeWithPermit(url, deadline)));
+        }
+
+        List<ImageResult> results = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            results.add(await(i, urls.get(i), futures.get(i), deadline));
+        }
+        long ok = results.stream().filter(r -> STATUS_OK.equals(r.getStatus())).count();
+        log.info("【批量视觉分析】完成：成功 {} / {} 张", ok, urls.size());
+        return new BatchVisionAnalysisResponse(results);
+    }
+
+    /**
+     * 在截止时间内获取调用许可后再调用模型；等不到许可视为超时。拿到许可时已过截止时间则直接放弃，不再调用模型。
+     */
+    private VisionAnalysisResponse analyzeWithPermit(String url, long deadline) {
+        boolean acquired = false;
+        try {
+            acquired = inFlight.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                throw new IllegalStateException("等待视觉模型调用许可超时");
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new IllegalStateException("已过截止时间，放弃视觉模型调用");
+            }
+            return visionAnalysisService.analyzeImage(url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("视觉分析被中断", e);
+        } finally {
+            if (acquired) {
+                inFlight.release();
+            }
+        }
+    }
+
+    private ImageResult await(int index, String url, Future<VisionAnalysisResponse> future, long deadline) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            VisionAnalysisResponse response = future.get(remaining, TimeUnit.NANOSECONDS);
+            return new ImageResult(index, url, response.getDescription(), STATUS_OK);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("【批量视觉分析】第 {} 张图片在截止时间内未完成，已放弃: {}", index + 1, url);
+            return new ImageResult(index, url, null, STATUS_TIMEOUT);
+        } catch (ExecutionException e) {
+            log.warn("【批量视觉分析】第 {} 张图片分析失败: {}", index + 1, url, e.getCause());
+            return new ImageResult(index, url, null, STATUS_FAILED);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return new ImageResult(index, url, null, STATUS_TIMEOUT);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
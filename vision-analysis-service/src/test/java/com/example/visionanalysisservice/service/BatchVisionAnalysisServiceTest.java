@@ -0,0 +1,65 @@
+package com.example.visionanalysisservice.service;
+
+import com.example.dto.AI.BatchVisionAnalysisResponse;
+import com.example.dto.AI.BatchVisionAnalysisResponse.ImageResult;
+import com.example.dto.AI.VisionAnalysisResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchVisionAnalysisServiceTest {
+
+    private final VisionAnalysisService vision = mock(VisionAnalysisService.class);
+    private final BatchVisionAnalysisService batch = new BatchVisionAnalysisService(vision, 1, 9, 20000);
+
+    @AfterEach
+    void shutdown() {
+        batch.shutdown();
+    }
+
+    @Test
+    void resultsKeepInputOrder() {
+        when(vision.analyzeImage(anyString())).thenAnswer(inv -> new VisionAnalysisResponse("desc-" + inv.getArgument(0)));
+
+        BatchVisionAnalysisResponse response = batch.analyzeImages(List.of("a", "b", "c"), null);
+
+        assertThat(response.getResults()).extracting(ImageResult::getDescription)
+                .containsExactly("desc-a", "desc-b", "desc-c");
+        assertThat(response.getResults()).extracting(ImageResult::getStatus)
+                .containsOnly(BatchVisionAnalysisService.STATUS_OK);
+    }
+
+    @Test
+    void timedOutCallIsInterruptedAndReleasesItsPermit() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(vision.analyzeImage("slow")).thenAnswer(inv -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return new VisionAnalysisResponse("too late");
+        });
+        when(vision.analyzeImage("fast")).thenReturn(new VisionAnalysisResponse("ok"));
+
+        BatchVisionAnalysisResponse timedOut = batch.analyzeImages(List.of("slow"), 200L);
+
+        assertThat(timedOut.getResults()).extracting(ImageResult::getStatus)
+                .containsExactly(BatchVisionAnalysisService.STATUS_TIMEOUT);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 唯一的许可已经归还，下一批不会因为上一批的超时任务而排不上队
+        BatchVisionAnalysisResponse next = batch.analyzeImages(List.of("fast"), 2000L);
+        assertThat(next.getResults()).extracting(ImageResult::getStatus)
+                .containsExactly(BatchVisionAnalysisService.STATUS_OK);
+    }
+}